@@ -0,0 +1,192 @@
+import javafx.application.Platform;
+import javafx.scene.layout.Pane;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Pattern;
+
+public class Benchmarks {
+
+    private interface Operation {
+
+        void run() throws Exception;
+    }
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final long warmupMillis;
+    private final long measureMillis;
+    private final Pattern filter;
+
+    Benchmarks(long warmupMillis, long measureMillis, Pattern filter) {
+        this.warmupMillis = warmupMillis;
+        this.measureMillis = measureMillis;
+        this.filter = filter;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put("states", "1000,10000");
+        options.put("alphabet", "2");
+        options.put("density", "1,1.5");
+        options.put("epsilon", "0,0.1");
+        options.put("word", "100000");
+        options.put("warmup", "2000");
+        options.put("measure", "5000");
+        options.put("filter", ".*");
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                System.err.println("Usage: java Benchmarks [--states=1000,10000] [--alphabet=2] [--density=1,1.5] " +
+                        "[--epsilon=0,0.1] [--word=100000] [--warmup=2000] [--measure=5000] [--filter=<regex>]");
+                System.exit(2);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        if (System.getProperty("glass.platform") == null && System.getenv("DISPLAY") == null
+                && System.getProperty("os.name").startsWith("Linux") && isMonocleAvailable()) {
+            System.setProperty("glass.platform", "Monocle");
+            System.setProperty("monocle.platform", "Headless");
+            System.setProperty("prism.order", "sw");
+        }
+        try {
+            Platform.startup(() -> {
+            });
+        } catch (RuntimeException e) {
+            System.err.println("JavaFX toolkit not started (" + e.getMessage() + "); without a display, put Monocle "
+                    + "on the class path or run with -Dglass.platform=Monocle -Dmonocle.platform=Headless "
+                    + "-Dprism.order=sw");
+            System.exit(1);
+        }
+        Benchmarks benchmarks = new Benchmarks(Long.parseLong(options.get("warmup")),
+                Long.parseLong(options.get("measure")), Pattern.compile(options.get("filter")));
+        int wordLength = Integer.parseInt(options.get("word"));
+        System.out.printf("%-28s %-52s %14s %12s %14s %8s %8s%n",
+                "benchmark", "parameters", "ops/s", "us/op", "bytes/op", "gc", "gc ms");
+        for (String states : options.get("states").split(",")) {
+            for (String density : options.get("density").split(",")) {
+                for (String epsilon : options.get("epsilon").split(",")) {
+                    SyntheticMachines generator = new SyntheticMachines(Integer.parseInt(states.trim()),
+                            Integer.parseInt(options.get("alphabet")), Double.parseDouble(density.trim()),
+                            Double.parseDouble(epsilon.trim()), 42);
+                    onFxThread(() -> benchmarks.runAll(generator, wordLength));
+                }
+            }
+        }
+        Platform.exit();
+    }
+
+    private static boolean isMonocleAvailable() {
+        try {
+            Class.forName("com.sun.glass.ui.monocle.MonoclePlatformFactory", false,
+                    Benchmarks.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static void onFxThread(Operation operation) throws Exception {
+        if (Platform.isFxApplicationThread()) {
+            operation.run();
+            return;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        Exception[] failure = new Exception[1];
+        Platform.runLater(() -> {
+            try {
+                operation.run();
+            } catch (Exception e) {
+                failure[0] = e;
+            } finally {
+                done.countDown();
+            }
+        });
+        done.await();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private void runAll(SyntheticMachines generator, int wordLength) throws Exception {
+        Diagram diagram = new Diagram(symbols -> null, () -> null, System.err::println);
+        diagram.setCancelRunning(() -> {
+        });
+        diagram.setOnTransitionChange(transitions -> {
+        });
+        Pane container = new Pane(diagram);
+        container.resize(1920, 1080);
+        diagram.load(generator.generate());
+        String word = generator.word(wordLength);
+        String parameters = generator.toString();
+
+        StateMachineRunner runner = new StateMachineRunner(diagram, states -> {
+        });
+        measure("runner.run", parameters, () -> runner.run(word));
+        String stepWord = word.substring(0, Math.min(word.length(), 1000));
+        measure("runner.stepForward+Back", parameters + " steps=" + stepWord.length(), () -> {
+            runner.setUp(stepWord);
+            for (int i = 0; i < stepWord.length(); ++i) {
+                runner.stepForward();
+            }
+            for (int i = 0; i < stepWord.length(); ++i) {
+                runner.stepBack();
+            }
+        });
+        measure("diagram.findNonDeterministic", parameters, diagram::findNonDeterministicStates);
+        File file = File.createTempFile("benchmark", ".fsm");
+        file.deleteOnExit();
+        measure("fileHandler.save", parameters, () -> FileHandler.save(file, diagram));
+        Diagram opened = new Diagram(symbols -> null, () -> null, System.err::println);
+        opened.setCancelRunning(() -> {
+        });
+        opened.setOnTransitionChange(transitions -> {
+        });
+        new Pane(opened).resize(1920, 1080);
+        measure("fileHandler.open", parameters, () -> FileHandler.open(file, opened));
+        measure("diagram.render", parameters, () -> {
+            diagram.update();
+            diagram.render();
+        });
+    }
+
+    private void measure(String name, String parameters, Operation operation) throws Exception {
+        if (!filter.matcher(name).matches()) {
+            return;
+        }
+        long deadline = System.nanoTime() + warmupMillis * 1_000_000;
+        while (System.nanoTime() < deadline) {
+            operation.run();
+        }
+        long gcCount = gcCount();
+        long gcTime = gcTime();
+        long thread = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        deadline = start + measureMillis * 1_000_000;
+        long ops = 0;
+        long now;
+        do {
+            operation.run();
+            ++ops;
+            now = System.nanoTime();
+        } while (now < deadline);
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        double seconds = (now - start) / 1e9;
+        System.out.printf("%-28s %-52s %14.2f %12.2f %14.0f %8d %8d%n", name, parameters, ops / seconds,
+                seconds * 1e6 / ops, (double) allocated / ops, gcCount() - gcCount, gcTime() - gcTime);
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.Arrays;
+import java.util.Random;
+
+public class SyntheticMachines {
+
+    private final int states;
+    private final int alphabetSize;
+    private final double density;
+    private final double epsilonRatio;
+    private final long seed;
+
+    SyntheticMachines(int states, int alphabetSize, double density, double epsilonRatio, long seed) {
+        this.states = states;
+        this.alphabetSize = alphabetSize;
+        this.density = density;
+        this.epsilonRatio = epsilonRatio;
+        this.seed = seed;
+    }
+
+    public Machine generate() {
+        Random random = new Random(seed);
+        String[] symbols = new String[alphabetSize];
+        for (int i = 0; i < alphabetSize; ++i) {
+            symbols[i] = Character.toString((char) ('a' + i));
+        }
+        String[] names = new String[states];
+        double[] x = new double[states];
+        double[] y = new double[states];
+        double[] radius = new double[states];
+        boolean[] accepting = new boolean[states];
+        int columns = (int) Math.ceil(Math.sqrt(states));
+        for (int i = 0; i < states; ++i) {
+            names[i] = "q" + i;
+            x[i] = 24 + (i % columns) * 96;
+            y[i] = 24 + (i / columns) * 96;
+            radius[i] = 24;
+            accepting[i] = random.nextInt(10) == 0;
+        }
+
+        int capacity = (int) (states * (alphabetSize * Math.ceil(density) + 1));
+        int[] edgeFrom = new int[capacity];
+        int[] edgeTo = new int[capacity];
+        int[] edgeSymbol = new int[capacity];
+        int edges = 0;
+        for (int from = 0; from < states; ++from) {
+            for (int symbol = 0; symbol < alphabetSize; ++symbol) {
+                int targets = (int) density + (random.nextDouble() < density - (int) density ? 1 : 0);
+                for (int i = 0; i < targets; ++i) {
+                    edgeFrom[edges] = from;
+                    edgeTo[edges] = random.nextInt(states);
+                    edgeSymbol[edges++] = symbol;
+                }
+            }
+            if (random.nextDouble() < epsilonRatio) {
+                edgeFrom[edges] = from;
+                edgeTo[edges] = random.nextInt(states);
+                edgeSymbol[edges++] = Machine.EPSILON;
+            }
+        }
+        return new Machine(symbols, names, x, y, radius, accepting, 0,
+                Arrays.copyOf(edgeFrom, edges), Arrays.copyOf(edgeTo, edges), Arrays.copyOf(edgeSymbol, edges));
+    }
+
+    public String word(int length) {
+        Random random = new Random(seed + 1);
+        char[] word = new char[length];
+        for (int i = 0; i < length; ++i) {
+            word[i] = (char) ('a' + random.nextInt(alphabetSize));
+        }
+        return new String(word);
+    }
+
+    @Override
+    public String toString() {
+        return "states=" + states + " alphabet=" + alphabetSize + " density=" + density + " epsilon=" + epsilonRatio;
+    }
+}
@@ -0,0 +1,87 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+public class BatchRunner {
+
+    private static final int BATCH_SIZE = 1 << 16;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: java BatchRunner <machine.fsm> [<words>|-] [<results>|-]");
+            System.exit(2);
+        }
+        Machine machine = FileHandler.load(new File(args[0]));
+        if (machine.getStart() < 0) {
+            System.err.println("No starting state specified");
+            System.exit(1);
+        }
+        InputStream in = args.length > 1 && !args[1].equals("-") ? new FileInputStream(args[1]) : System.in;
+        OutputStream out = args.length > 2 && !args[2].equals("-") ? new FileOutputStream(args[2]) : System.out;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            new BatchRunner(machine, Runtime.getRuntime().availableProcessors()).run(reader, writer);
+        }
+    }
+
+    private final Predicate<String> acceptor;
+    private final int parallelism;
+    private long words;
+    private long accepted;
+    private long chars;
+
+    BatchRunner(Machine machine, int parallelism) {
+        this.parallelism = parallelism;
+        CompiledDfa dfa = CompiledDfa.compile(machine);
+        if (dfa != null) {
+            CompiledDfa minimal = dfa.minimize();
+            acceptor = minimal::accepts;
+        } else {
+            BitsetNfa nfa = BitsetNfa.compile(machine);
+            ThreadLocal<long[][]> scratch = ThreadLocal.withInitial(() -> new long[][]{nfa.newSet(), nfa.newSet()});
+            acceptor = word -> {
+                long[][] sets = scratch.get();
+                return nfa.accepts(word, sets[0], sets[1]);
+            };
+        }
+    }
+
+    public void run(BufferedReader reader, Writer writer) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long startTime = System.nanoTime();
+        try {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            boolean[] results = new boolean[BATCH_SIZE];
+            String line;
+            do {
+                batch.clear();
+                while (batch.size() < BATCH_SIZE && (line = reader.readLine()) != null) {
+                    batch.add(line);
+                }
+                pool.submit(() -> IntStream.range(0, batch.size()).parallel()
+                        .forEach(i -> results[i] = acceptor.test(batch.get(i)))).get();
+                for (int i = 0; i < batch.size(); ++i) {
+                    writer.write(results[i] ? "accept\t" : "reject\t");
+                    writer.write(batch.get(i));
+                    writer.write('\n');
+                    chars += batch.get(i).length();
+                    if (results[i]) {
+                        ++accepted;
+                    }
+                }
+                words += batch.size();
+            } while (batch.size() == BATCH_SIZE);
+            writer.flush();
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.err.printf("%d words, %d accepted, %d rejected%n", words, accepted, words - accepted);
+        System.err.printf("%.3f s on %d threads, %.0f words/s, %.0f chars/s%n", seconds, parallelism,
+                words / seconds, chars / seconds);
+    }
+}
@@ -0,0 +1,308 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+public class BitsetNfa implements Stepper {
+
+    private final Machine machine;
+    private final int stateCount;
+    private final int alphabetSize;
+    private final int words;
+    private final int[][] sparseSuccessors;
+    private final long[][] denseSuccessors;
+    private final long[] accepting;
+    private final long[] initial;
+
+    private BitsetNfa(Machine machine, int[][] sparseSuccessors, long[][] denseSuccessors, long[] accepting,
+                      long[] initial) {
+        this.machine = machine;
+        this.stateCount = machine.getStateCount();
+        this.alphabetSize = machine.getAlphabetSize();
+        this.words = (stateCount + 63) >>> 6;
+        this.sparseSuccessors = sparseSuccessors;
+        this.denseSuccessors = denseSuccessors;
+        this.accepting = accepting;
+        this.initial = initial;
+    }
+
+    public static BitsetNfa compile(Machine machine) {
+        int stateCount = machine.getStateCount();
+        int alphabetSize = machine.getAlphabetSize();
+        int words = (stateCount + 63) >>> 6;
+
+        int[] epsilonStart = new int[stateCount + 1];
+        int[] symbolStart = new int[stateCount * alphabetSize + 1];
+        for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+            int symbol = machine.getEdgeSymbol(edge);
+            if (symbol == Machine.EPSILON) {
+                ++epsilonStart[machine.getEdgeFrom(edge) + 1];
+            } else {
+                ++symbolStart[machine.getEdgeFrom(edge) * alphabetSize + symbol + 1];
+            }
+        }
+        for (int i = 0; i < stateCount; ++i) {
+            epsilonStart[i + 1] += epsilonStart[i];
+        }
+        for (int i = 0; i < stateCount * alphabetSize; ++i) {
+            symbolStart[i + 1] += symbolStart[i];
+        }
+        int[] epsilonTargets = new int[epsilonStart[stateCount]];
+        int[] symbolTargets = new int[symbolStart[stateCount * alphabetSize]];
+        int[] epsilonFill = epsilonStart.clone();
+        int[] symbolFill = symbolStart.clone();
+        for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+            int symbol = machine.getEdgeSymbol(edge);
+            if (symbol == Machine.EPSILON) {
+                epsilonTargets[epsilonFill[machine.getEdgeFrom(edge)]++] = machine.getEdgeTo(edge);
+            } else {
+                symbolTargets[symbolFill[machine.getEdgeFrom(edge) * alphabetSize + symbol]++] = machine.getEdgeTo(edge);
+            }
+        }
+
+        int[][] sparseClosures = new int[stateCount][];
+        long[][] denseClosures = new long[stateCount][];
+        int[] members = new int[stateCount];
+        int[] marks = new int[stateCount];
+        int mark = 0;
+        for (int state = 0; state < stateCount; ++state) {
+            marks[state] = ++mark;
+            members[0] = state;
+            int count = 1;
+            for (int i = 0; i < count; ++i) {
+                int current = members[i];
+                for (int j = epsilonStart[current]; j < epsilonStart[current + 1]; ++j) {
+                    int target = epsilonTargets[j];
+                    if (marks[target] != mark) {
+                        marks[target] = mark;
+                        members[count++] = target;
+                    }
+                }
+            }
+            if (count < 2 * words) {
+                sparseClosures[state] = Arrays.copyOf(members, count);
+            } else {
+                denseClosures[state] = toSet(members, count, words);
+            }
+        }
+
+        int[][] sparseSuccessors = new int[stateCount * alphabetSize][];
+        long[][] denseSuccessors = new long[stateCount * alphabetSize][];
+        for (int slot = 0; slot < sparseSuccessors.length; ++slot) {
+            int from = symbolStart[slot];
+            int to = symbolStart[slot + 1];
+            if (to - from == 1) {
+                sparseSuccessors[slot] = sparseClosures[symbolTargets[from]];
+                denseSuccessors[slot] = denseClosures[symbolTargets[from]];
+            } else if (to - from > 1) {
+                ++mark;
+                int count = 0;
+                for (int i = from; i < to; ++i) {
+                    int[] closure = sparseClosures[symbolTargets[i]];
+                    if (closure == null) {
+                        closure = toMembers(denseClosures[symbolTargets[i]]);
+                    }
+                    for (int state : closure) {
+                        if (marks[state] != mark) {
+                            marks[state] = mark;
+                            members[count++] = state;
+                        }
+                    }
+                }
+                if (count < 2 * words) {
+                    sparseSuccessors[slot] = Arrays.copyOf(members, count);
+                } else {
+                    denseSuccessors[slot] = toSet(members, count, words);
+                }
+            }
+        }
+
+        long[] accepting = new long[words];
+        for (int state = 0; state < stateCount; ++state) {
+            if (machine.isAccepting(state)) {
+                accepting[state >>> 6] |= 1L << state;
+            }
+        }
+        int start = machine.getStart();
+        long[] initial = start < 0 ? new long[words] : denseClosures[start] != null ? denseClosures[start]
+                : toSet(sparseClosures[start], sparseClosures[start].length, words);
+        return new BitsetNfa(machine, sparseSuccessors, denseSuccessors, accepting, initial);
+    }
+
+    private static long[] toSet(int[] members, int count, int words) {
+        long[] set = new long[words];
+        for (int i = 0; i < count; ++i) {
+            set[members[i] >>> 6] |= 1L << members[i];
+        }
+        return set;
+    }
+
+    private static int[] toMembers(long[] set) {
+        int count = 0;
+        for (long word : set) {
+            count += Long.bitCount(word);
+        }
+        int[] members = new int[count];
+        count = 0;
+        for (int i = 0; i < set.length; ++i) {
+            long word = set[i];
+            while (word != 0) {
+                members[count++] = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return members;
+    }
+
+    private static void or(long[] target, long[] source) {
+        for (int i = 0; i < target.length; ++i) {
+            target[i] |= source[i];
+        }
+    }
+
+    @Override
+    public long[] newSet() {
+        return new long[words];
+    }
+
+    @Override
+    public void start(long[] set) {
+        System.arraycopy(initial, 0, set, 0, words);
+    }
+
+    @Override
+    public void step(long[] from, int symbol, long[] to) {
+        for (int i = 0; i < words; ++i) {
+            to[i] = 0;
+        }
+        if (symbol == Machine.NO_SYMBOL) {
+            return;
+        }
+        for (int i = 0; i < words; ++i) {
+            long word = from[i];
+            while (word != 0) {
+                int state = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int slot = state * alphabetSize + symbol;
+                long[] mask = denseSuccessors[slot];
+                if (mask != null) {
+                    or(to, mask);
+                } else if (sparseSuccessors[slot] != null) {
+                    for (int target : sparseSuccessors[slot]) {
+                        to[target >>> 6] |= 1L << target;
+                    }
+                }
+            }
+        }
+    }
+
+    public boolean accepts(CharSequence word) {
+        return accepts(word, newSet(), newSet());
+    }
+
+    public boolean accepts(CharSequence word, long[] current, long[] next) {
+        Tokenizer tokenizer = machine.getTokenizer();
+        if (!tokenizer.isPrefixFree()) {
+            try {
+                return accepts(tokenizer.tokenize(word, null), current, next);
+            } catch (TokenizationException ex) {
+                return false;
+            }
+        }
+        start(current);
+        for (int i = 0, length = word.length(); i < length && !isEmpty(current); ) {
+            long match = tokenizer.match(word, i);
+            if (match == Tokenizer.NO_MATCH) {
+                return false;
+            }
+            step(current, Tokenizer.symbol(match), next);
+            long[] swap = current;
+            current = next;
+            next = swap;
+            i += Tokenizer.length(match);
+        }
+        return isAccepting(current);
+    }
+
+    public boolean accepts(int[] symbols, long[] current, long[] next) {
+        start(current);
+        for (int i = 0; i < symbols.length && !isEmpty(current); ++i) {
+            step(current, symbols[i], next);
+            long[] swap = current;
+            current = next;
+            next = swap;
+        }
+        return isAccepting(current);
+    }
+
+    public Cursor cursor() {
+        return new Cursor() {
+
+            private long[] current = newSet();
+            private long[] next = newSet();
+            private boolean empty;
+
+            {
+                reset();
+            }
+
+            @Override
+            public void reset() {
+                start(current);
+                empty = isEmpty(current);
+            }
+
+            @Override
+            public boolean step(int symbol) {
+                if (!empty) {
+                    BitsetNfa.this.step(current, symbol, next);
+                    long[] swap = current;
+                    current = next;
+                    next = swap;
+                    empty = isEmpty(current);
+                }
+                return !empty;
+            }
+
+            @Override
+            public boolean isAccepting() {
+                return BitsetNfa.this.isAccepting(current);
+            }
+        };
+    }
+
+    public boolean isAccepting(long[] set) {
+        for (int i = 0; i < words; ++i) {
+            if ((set[i] & accepting[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty(long[] set) {
+        for (int i = 0; i < words; ++i) {
+            if (set[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void forEach(long[] set, IntConsumer action) {
+        for (int i = 0; i < words; ++i) {
+            long word = set[i];
+            while (word != 0) {
+                action.accept((i << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public Machine getMachine() {
+        return machine;
+    }
+}
@@ -0,0 +1,211 @@
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+public class CompiledDfa implements Stepper {
+
+    public static final int DEAD = -1;
+
+    private final Machine machine;
+    private final int stateCount;
+    private final int alphabetSize;
+    private final int[] table;
+    private final long[] accepting;
+    private final int start;
+    private final int[] representatives;
+
+    CompiledDfa(Machine machine, int stateCount, int alphabetSize, int[] table, long[] accepting, int start,
+                int[] representatives) {
+        this.machine = machine;
+        this.stateCount = stateCount;
+        this.alphabetSize = alphabetSize;
+        this.table = table;
+        this.accepting = accepting;
+        this.start = start;
+        this.representatives = representatives;
+    }
+
+    public static CompiledDfa compile(Machine machine) {
+        int stateCount = machine.getStateCount();
+        int alphabetSize = machine.getAlphabetSize();
+        int[] table = new int[stateCount * alphabetSize];
+        Arrays.fill(table, DEAD);
+        for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+            int from = machine.getEdgeFrom(edge);
+            int symbol = machine.getEdgeSymbol(edge);
+            if (symbol == Machine.EPSILON) {
+                return null;
+            }
+            int slot = from * alphabetSize + symbol;
+            if (table[slot] != DEAD) {
+                return null;
+            }
+            table[slot] = machine.getEdgeTo(edge);
+        }
+        long[] accepting = new long[(stateCount + 63) >>> 6];
+        for (int state = 0; state < stateCount; ++state) {
+            if (machine.isAccepting(state)) {
+                accepting[state >>> 6] |= 1L << state;
+            }
+        }
+        return new CompiledDfa(machine, stateCount, alphabetSize, table, accepting, machine.getStart(), null);
+    }
+
+    public static CompiledDfa determinize(BitsetNfa nfa, int maxStates, BooleanSupplier cancelled) {
+        int alphabetSize = nfa.getMachine().getAlphabetSize();
+        Map<LazyDfa.SetKey, Integer> ids = new HashMap<>();
+        List<long[]> sets = new ArrayList<>();
+        long[] start = nfa.newSet();
+        nfa.start(start);
+        ids.put(new LazyDfa.SetKey(start), 0);
+        sets.add(start);
+        int[] table = new int[16 * alphabetSize];
+        for (int state = 0; state < sets.size(); ++state) {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            if ((state + 1) * alphabetSize > table.length) {
+                table = Arrays.copyOf(table, 2 * table.length);
+            }
+            for (int symbol = 0; symbol < alphabetSize; ++symbol) {
+                long[] next = nfa.newSet();
+                nfa.step(sets.get(state), symbol, next);
+                if (nfa.isEmpty(next)) {
+                    table[state * alphabetSize + symbol] = DEAD;
+                    continue;
+                }
+                Integer id = ids.putIfAbsent(new LazyDfa.SetKey(next), sets.size());
+                if (id == null) {
+                    if (sets.size() == maxStates) {
+                        throw new IllegalStateException("Determinization exceeds " + maxStates + " states");
+                    }
+                    id = sets.size();
+                    sets.add(next);
+                }
+                table[state * alphabetSize + symbol] = id;
+            }
+        }
+        long[] accepting = new long[(sets.size() + 63) >>> 6];
+        for (int state = 0; state < sets.size(); ++state) {
+            if (nfa.isAccepting(sets.get(state))) {
+                accepting[state >>> 6] |= 1L << state;
+            }
+        }
+        return new CompiledDfa(nfa.getMachine(), sets.size(), alphabetSize,
+                Arrays.copyOf(table, sets.size() * alphabetSize), accepting, 0, null);
+    }
+
+    public CompiledDfa minimize() {
+        return DfaMinimizer.minimize(this);
+    }
+
+    public CompiledDfa minimize(BooleanSupplier cancelled) {
+        return DfaMinimizer.minimize(this, cancelled);
+    }
+
+    public boolean accepts(CharSequence word) {
+        Tokenizer tokenizer = machine.getTokenizer();
+        if (!tokenizer.isPrefixFree()) {
+            try {
+                return accepts(tokenizer.tokenize(word, null));
+            } catch (TokenizationException ex) {
+                return false;
+            }
+        }
+        int state = start;
+        for (int i = 0, length = word.length(); i < length && state != DEAD; ) {
+            long match = tokenizer.match(word, i);
+            if (match == Tokenizer.NO_MATCH) {
+                return false;
+            }
+            state = table[state * alphabetSize + Tokenizer.symbol(match)];
+            i += Tokenizer.length(match);
+        }
+        return state != DEAD && isAccepting(state);
+    }
+
+    public boolean accepts(int[] symbols) {
+        int state = start;
+        for (int i = 0; i < symbols.length && state != DEAD; ++i) {
+            state = table[state * alphabetSize + symbols[i]];
+        }
+        return state != DEAD && isAccepting(state);
+    }
+
+    public Cursor cursor() {
+        return new Cursor() {
+
+            private int state = start;
+
+            @Override
+            public void reset() {
+                state = start;
+            }
+
+            @Override
+            public boolean step(int symbol) {
+                if (state != DEAD) {
+                    state = symbol != Machine.NO_SYMBOL ? table[state * alphabetSize + symbol] : DEAD;
+                }
+                return state != DEAD;
+            }
+
+            @Override
+            public boolean isAccepting() {
+                return state != DEAD && CompiledDfa.this.isAccepting(state);
+            }
+        };
+    }
+
+    @Override
+    public long[] newSet() {
+        return new long[1];
+    }
+
+    @Override
+    public void start(long[] set) {
+        set[0] = start;
+    }
+
+    @Override
+    public void step(long[] from, int symbol, long[] to) {
+        int state = (int) from[0];
+        to[0] = state != DEAD && symbol != Machine.NO_SYMBOL ? table[state * alphabetSize + symbol] : DEAD;
+    }
+
+    @Override
+    public void forEach(long[] set, IntConsumer action) {
+        if (set[0] != DEAD) {
+            action.accept((int) set[0]);
+        }
+    }
+
+    public int step(int state, int symbol) {
+        return table[state * alphabetSize + symbol];
+    }
+
+    public boolean isAccepting(int state) {
+        return (accepting[state >>> 6] & 1L << state) != 0;
+    }
+
+    public int getRepresentative(int state) {
+        return representatives != null ? representatives[state] : state;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public int getAlphabetSize() {
+        return alphabetSize;
+    }
+
+    public Machine getMachine() {
+        return machine;
+    }
+}
@@ -0,0 +1,8 @@
+public interface Cursor {
+
+    void reset();
+
+    boolean step(int symbol);
+
+    boolean isAccepting();
+}
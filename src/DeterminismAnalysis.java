@@ -0,0 +1,154 @@
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+public class DeterminismAnalysis {
+
+    private static final int CHUNK_SIZE = 1024;
+    private static final int PARALLEL_THRESHOLD = 4 * CHUNK_SIZE;
+
+    private final Machine machine;
+    private final int[] offsets;
+    private final int[] edges;
+
+    DeterminismAnalysis(Machine machine) {
+        this.machine = machine;
+        int stateCount = machine.getStateCount();
+        offsets = new int[stateCount + 1];
+        for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+            ++offsets[machine.getEdgeFrom(edge) + 1];
+        }
+        for (int state = 0; state < stateCount; ++state) {
+            offsets[state + 1] += offsets[state];
+        }
+        edges = new int[machine.getEdgeCount()];
+        int[] next = Arrays.copyOf(offsets, stateCount);
+        for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+            edges[next[machine.getEdgeFrom(edge)]++] = edge;
+        }
+    }
+
+    public static List<Diagnostic> analyze(Machine machine) {
+        List<Diagnostic> diagnostics = Collections.synchronizedList(new ArrayList<>());
+        new DeterminismAnalysis(machine).run(diagnostics::addAll, () -> false);
+        diagnostics.sort(Comparator.comparingInt(Diagnostic::getState));
+        return diagnostics;
+    }
+
+    public int getChunkCount() {
+        return (machine.getStateCount() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    public void run(Consumer<List<Diagnostic>> onChunk, BooleanSupplier cancelled) {
+        IntStream chunks = IntStream.range(0, getChunkCount());
+        if (machine.getStateCount() >= PARALLEL_THRESHOLD) {
+            chunks = chunks.parallel();
+        }
+        chunks.forEach(chunk -> {
+            if (!cancelled.getAsBoolean()) {
+                onChunk.accept(analyze(chunk * CHUNK_SIZE, Math.min(machine.getStateCount(), (chunk + 1) * CHUNK_SIZE)));
+            }
+        });
+    }
+
+    private List<Diagnostic> analyze(int from, int to) {
+        int alphabetSize = machine.getAlphabetSize();
+        long[] seen = new long[(alphabetSize + 63) >>> 6];
+        long[] duplicated = new long[seen.length];
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        for (int state = from; state < to; ++state) {
+            boolean epsilon = false;
+            boolean anyDuplicated = false;
+            for (int i = offsets[state]; i < offsets[state + 1]; ++i) {
+                int symbol = machine.getEdgeSymbol(edges[i]);
+                if (symbol == Machine.EPSILON) {
+                    epsilon = true;
+                } else if ((seen[symbol >>> 6] & 1L << symbol) != 0) {
+                    duplicated[symbol >>> 6] |= 1L << symbol;
+                    anyDuplicated = true;
+                } else {
+                    seen[symbol >>> 6] |= 1L << symbol;
+                }
+            }
+            int seenCount = 0;
+            for (long word : seen) {
+                seenCount += Long.bitCount(word);
+            }
+            if (epsilon || anyDuplicated || seenCount < alphabetSize) {
+                diagnostics.add(new Diagnostic(state, machine.getName(state), symbols(duplicated, true),
+                        symbols(seen, false), epsilon));
+            }
+            for (int i = offsets[state]; i < offsets[state + 1]; ++i) {
+                int symbol = machine.getEdgeSymbol(edges[i]);
+                if (symbol != Machine.EPSILON) {
+                    seen[symbol >>> 6] = 0;
+                    duplicated[symbol >>> 6] = 0;
+                }
+            }
+        }
+        return diagnostics;
+    }
+
+    private List<String> symbols(long[] bits, boolean set) {
+        List<String> symbols = new ArrayList<>();
+        for (int symbol = 0; symbol < machine.getAlphabetSize(); ++symbol) {
+            if (((bits[symbol >>> 6] & 1L << symbol) != 0) == set) {
+                symbols.add(machine.getSymbol(symbol));
+            }
+        }
+        return symbols;
+    }
+
+    public static class Diagnostic {
+
+        private final int state;
+        private final String name;
+        private final List<String> duplicated;
+        private final List<String> missing;
+        private final boolean epsilon;
+
+        Diagnostic(int state, String name, List<String> duplicated, List<String> missing, boolean epsilon) {
+            this.state = state;
+            this.name = name;
+            this.duplicated = duplicated;
+            this.missing = missing;
+            this.epsilon = epsilon;
+        }
+
+        public int getState() {
+            return state;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getDuplicated() {
+            return duplicated;
+        }
+
+        public List<String> getMissing() {
+            return missing;
+        }
+
+        public boolean hasEpsilon() {
+            return epsilon;
+        }
+
+        @Override
+        public String toString() {
+            List<String> problems = new ArrayList<>();
+            if (!duplicated.isEmpty()) {
+                problems.add("duplicated " + String.join(", ", duplicated));
+            }
+            if (!missing.isEmpty()) {
+                problems.add("missing " + String.join(", ", missing));
+            }
+            if (epsilon) {
+                problems.add("ε-transitions");
+            }
+            return name + ": " + String.join("; ", problems);
+        }
+    }
+}
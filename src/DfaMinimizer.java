@@ -0,0 +1,287 @@
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+public class DfaMinimizer {
+
+    private final int stateCount;
+    private final int[] elements;
+    private final int[] location;
+    private final int[] blockOf;
+    private final int[] blockStart;
+    private final int[] blockEnd;
+    private final int[] marked;
+    private final boolean[] pending;
+    private final int[] touched;
+    private final int[] worklist;
+    private int blockCount;
+    private int touchedCount;
+    private int worklistSize;
+
+    private DfaMinimizer(int stateCount) {
+        this.stateCount = stateCount;
+        elements = new int[stateCount];
+        location = new int[stateCount];
+        blockOf = new int[stateCount];
+        blockStart = new int[stateCount];
+        blockEnd = new int[stateCount];
+        marked = new int[stateCount];
+        pending = new boolean[stateCount];
+        touched = new int[stateCount];
+        worklist = new int[stateCount];
+    }
+
+    public static CompiledDfa minimize(CompiledDfa dfa) {
+        return minimize(dfa, () -> false);
+    }
+
+    public static CompiledDfa minimize(CompiledDfa dfa, BooleanSupplier cancelled) {
+        int alphabetSize = dfa.getAlphabetSize();
+        if (dfa.getStart() == CompiledDfa.DEAD) {
+            return new CompiledDfa(dfa.getMachine(), 0, alphabetSize, new int[0], new long[0], CompiledDfa.DEAD,
+                    new int[0]);
+        }
+
+        int[] reachable = new int[dfa.getStateCount()];
+        int[] index = new int[dfa.getStateCount()];
+        Arrays.fill(index, -1);
+        int reachableCount = 0;
+        boolean needsSink = false;
+        reachable[reachableCount++] = dfa.getStart();
+        index[dfa.getStart()] = 0;
+        for (int i = 0; i < reachableCount; ++i) {
+            for (int symbol = 0; symbol < alphabetSize; ++symbol) {
+                int target = dfa.step(reachable[i], symbol);
+                if (target == CompiledDfa.DEAD) {
+                    needsSink = true;
+                } else if (index[target] < 0) {
+                    index[target] = reachableCount;
+                    reachable[reachableCount++] = target;
+                }
+            }
+        }
+
+        int n = needsSink ? reachableCount + 1 : reachableCount;
+        int sink = needsSink ? reachableCount : -1;
+        int[] table = new int[n * alphabetSize];
+        for (int state = 0; state < n; ++state) {
+            for (int symbol = 0; symbol < alphabetSize; ++symbol) {
+                int target = state == sink ? CompiledDfa.DEAD : dfa.step(reachable[state], symbol);
+                table[state * alphabetSize + symbol] = target == CompiledDfa.DEAD ? sink : index[target];
+            }
+        }
+
+        int[] inverseStart = new int[n * alphabetSize + 1];
+        for (int state = 0; state < n; ++state) {
+            for (int symbol = 0; symbol < alphabetSize; ++symbol) {
+                ++inverseStart[symbol * n + table[state * alphabetSize + symbol] + 1];
+            }
+        }
+        for (int i = 0; i < n * alphabetSize; ++i) {
+            inverseStart[i + 1] += inverseStart[i];
+        }
+        int[] inverse = new int[n * alphabetSize];
+        int[] fill = Arrays.copyOf(inverseStart, n * alphabetSize);
+        for (int state = 0; state < n; ++state) {
+            for (int symbol = 0; symbol < alphabetSize; ++symbol) {
+                inverse[fill[symbol * n + table[state * alphabetSize + symbol]]++] = state;
+            }
+        }
+
+        DfaMinimizer minimizer = new DfaMinimizer(n);
+        minimizer.refine(state -> state != sink && dfa.isAccepting(reachable[state]), alphabetSize, inverseStart,
+                inverse, cancelled);
+        return minimizer.build(dfa, table, reachable, sink);
+    }
+
+    public static Machine minimize(Machine machine, BooleanSupplier cancelled) {
+        CompiledDfa dfa = CompiledDfa.compile(machine);
+        if (dfa == null) {
+            throw new IllegalArgumentException("Only deterministic state machines can be minimized");
+        }
+        CompiledDfa minimal = minimize(dfa, cancelled);
+        int count = minimal.getStateCount();
+        int alphabetSize = minimal.getAlphabetSize();
+        String[] names = new String[count];
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double[] radius = new double[count];
+        boolean[] accepting = new boolean[count];
+        int edges = 0;
+        for (int state = 0; state < count; ++state) {
+            int representative = minimal.getRepresentative(state);
+            names[state] = machine.getName(representative);
+            x[state] = machine.getX(representative);
+            y[state] = machine.getY(representative);
+            radius[state] = machine.getRadius(representative);
+            accepting[state] = minimal.isAccepting(state);
+            for (int symbol = 0; symbol < alphabetSize; ++symbol) {
+                if (minimal.step(state, symbol) != CompiledDfa.DEAD) {
+                    ++edges;
+                }
+            }
+        }
+        int[] from = new int[edges];
+        int[] to = new int[edges];
+        int[] symbols = new int[edges];
+        int edge = 0;
+        for (int state = 0; state < count; ++state) {
+            for (int symbol = 0; symbol < alphabetSize; ++symbol) {
+                int target = minimal.step(state, symbol);
+                if (target != CompiledDfa.DEAD) {
+                    from[edge] = state;
+                    to[edge] = target;
+                    symbols[edge++] = symbol;
+                }
+            }
+        }
+        String[] alphabet = new String[alphabetSize];
+        for (int symbol = 0; symbol < alphabetSize; ++symbol) {
+            alphabet[symbol] = machine.getSymbol(symbol);
+        }
+        return new Machine(alphabet, names, x, y, radius, accepting, count > 0 ? minimal.getStart() : -1, from, to,
+                symbols);
+    }
+
+    private interface StatePredicate {
+
+        boolean test(int state);
+    }
+
+    private void refine(StatePredicate accepting, int alphabetSize, int[] inverseStart, int[] inverse,
+                        BooleanSupplier cancelled) {
+        int front = 0;
+        int back = stateCount;
+        for (int state = 0; state < stateCount; ++state) {
+            int position = accepting.test(state) ? front++ : --back;
+            elements[position] = state;
+            location[state] = position;
+        }
+        if (front > 0) {
+            addBlock(0, front);
+        }
+        if (front < stateCount) {
+            addBlock(front, stateCount);
+        }
+        if (blockCount == 2) {
+            push(blockEnd[0] - blockStart[0] <= blockEnd[1] - blockStart[1] ? 0 : 1);
+        } else {
+            push(0);
+        }
+
+        int[] splitter = new int[stateCount];
+        while (worklistSize > 0) {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            int block = worklist[--worklistSize];
+            pending[block] = false;
+            int splitterSize = blockEnd[block] - blockStart[block];
+            System.arraycopy(elements, blockStart[block], splitter, 0, splitterSize);
+            for (int symbol = 0; symbol < alphabetSize; ++symbol) {
+                for (int i = 0; i < splitterSize; ++i) {
+                    int slot = symbol * stateCount + splitter[i];
+                    for (int j = inverseStart[slot]; j < inverseStart[slot + 1]; ++j) {
+                        mark(inverse[j]);
+                    }
+                }
+                split();
+            }
+        }
+    }
+
+    private void addBlock(int start, int end) {
+        int block = blockCount++;
+        blockStart[block] = start;
+        blockEnd[block] = end;
+        for (int i = start; i < end; ++i) {
+            blockOf[elements[i]] = block;
+        }
+    }
+
+    private void push(int block) {
+        if (!pending[block]) {
+            pending[block] = true;
+            worklist[worklistSize++] = block;
+        }
+    }
+
+    private void mark(int state) {
+        int block = blockOf[state];
+        int position = location[state];
+        int boundary = blockStart[block] + marked[block];
+        if (position < boundary) {
+            return;
+        }
+        if (marked[block] == 0) {
+            touched[touchedCount++] = block;
+        }
+        int other = elements[boundary];
+        elements[boundary] = state;
+        location[state] = boundary;
+        elements[position] = other;
+        location[other] = position;
+        ++marked[block];
+    }
+
+    private void split() {
+        for (int i = 0; i < touchedCount; ++i) {
+            int block = touched[i];
+            int start = blockStart[block];
+            int boundary = start + marked[block];
+            marked[block] = 0;
+            if (boundary == blockEnd[block]) {
+                continue;
+            }
+            int created = blockCount;
+            addBlock(start, boundary);
+            blockStart[block] = boundary;
+            if (pending[block]) {
+                push(created);
+            } else if (boundary - start <= blockEnd[block] - boundary) {
+                push(created);
+            } else {
+                push(block);
+            }
+        }
+        touchedCount = 0;
+    }
+
+    private CompiledDfa build(CompiledDfa dfa, int[] table, int[] reachable, int sink) {
+        int alphabetSize = dfa.getAlphabetSize();
+        int deadBlock = sink >= 0 ? blockOf[sink] : -1;
+        if (blockOf[0] == deadBlock) {
+            int[] emptyTable = new int[alphabetSize];
+            Arrays.fill(emptyTable, CompiledDfa.DEAD);
+            return new CompiledDfa(dfa.getMachine(), 1, alphabetSize, emptyTable, new long[1], 0,
+                    new int[]{reachable[0]});
+        }
+        int[] ids = new int[blockCount];
+        int[] representatives = new int[blockCount];
+        Arrays.fill(ids, CompiledDfa.DEAD);
+        int count = 0;
+        for (int state = 0; state < stateCount; ++state) {
+            int block = blockOf[state];
+            if (block != deadBlock && ids[block] == CompiledDfa.DEAD) {
+                ids[block] = count;
+                representatives[count++] = reachable[state];
+            }
+        }
+        int[] minimalTable = new int[count * alphabetSize];
+        long[] accepting = new long[(count + 63) >>> 6];
+        for (int state = 0; state < stateCount; ++state) {
+            int id = ids[blockOf[state]];
+            if (id == CompiledDfa.DEAD || reachable[state] != representatives[id]) {
+                continue;
+            }
+            for (int symbol = 0; symbol < alphabetSize; ++symbol) {
+                minimalTable[id * alphabetSize + symbol] = ids[blockOf[table[state * alphabetSize + symbol]]];
+            }
+            if (dfa.isAccepting(reachable[state])) {
+                accepting[id >>> 6] |= 1L << id;
+            }
+        }
+        return new CompiledDfa(dfa.getMachine(), count, alphabetSize, minimalTable, accepting,
+                ids[blockOf[0]], Arrays.copyOf(representatives, count));
+    }
+}
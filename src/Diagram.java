@@ -1,3 +1,4 @@
+import javafx.animation.AnimationTimer;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.VPos;
@@ -5,24 +6,36 @@ import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
+import javafx.scene.text.Text;
 import javafx.scene.text.TextAlignment;
 
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-public class Diagram extends Canvas {
+public class Diagram extends Canvas implements EditTarget {
 
-    private static final Font font = Font.font("Arial", 16);
+    private static final double FONT_SIZE = 16;
+    private static final Font font = Font.font("Arial", FONT_SIZE);
+    private static final double CELL_SIZE = 128;
+    private static final double LABEL_MARGIN = 24;
+    private static final double ARROWHEAD_SIZE = 8;
+    static final double MIN_ZOOM = 1.0 / 64;
+    static final double MAX_ZOOM = 8;
+    static final double ZOOM_STEP = 1.25;
+    static final double DEFAULT_LEVEL_OF_DETAIL_SIZE = 6;
 
     private final GraphicsContext gc = getGraphicsContext2D();
+    private Text measure;
 
     private State startingState;
-    private Set<String> alphabet = Collections.emptySet();
+    private final SymbolTable symbolTable = new SymbolTable();
     private Set<State> states = new HashSet<>();
     private Set<Transition> transitions = new HashSet<>();
     private Consumer<State> onSelectionChange;
@@ -36,6 +49,58 @@ public class Diagram extends Canvas {
     private double initialOffsetY;
 
     private State transitionFrom;
+    private Transition selectedTransition;
+    private Set<State> activeStates = Collections.emptySet();
+
+    private final SpatialGrid<State> stateIndex = new SpatialGrid<>(CELL_SIZE);
+    private final SpatialGrid<Transition> transitionIndex = new SpatialGrid<>(CELL_SIZE);
+    private List<Transition> draggedTransitions = Collections.emptyList();
+    private final Map<State, Set<Transition>> incoming = new IdentityHashMap<>();
+    private final Map<State, Map<State, Transition>> pairs = new IdentityHashMap<>();
+    private final List<Set<Transition>> symbolIndex = new ArrayList<>();
+    private final Map<String, State> stateNames = new HashMap<>();
+
+    private Consumer<Edit> onEdit;
+    private int batchDepth;
+    private boolean batchChanged;
+    private double pressX;
+    private double pressY;
+    private final double[] dirty = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+
+    private double viewX;
+    private double viewY;
+    private double viewWidth;
+    private double viewHeight;
+    private double extentWidth;
+    private double extentHeight;
+    private boolean extentStale;
+    private BiConsumer<Double, Double> onExtentChange;
+    private BiConsumer<Double, Double> onScrollRequest;
+    private double zoom = 1;
+    private double levelOfDetailSize = DEFAULT_LEVEL_OF_DETAIL_SIZE;
+    private final EdgeBundles bundles = new EdgeBundles();
+    private double panX;
+    private double panY;
+    private double panViewX;
+    private double panViewY;
+
+    private final AnimationTimer renderer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            render();
+        }
+    };
+    private boolean renderScheduled;
+    private boolean fullRender;
+    private long requestedRenders;
+    private long coalescedRenders;
+
+    private long version;
+
+    private Machine layoutMachine;
+    private State[] layoutOrder;
+    private double[] layoutOrigin;
 
     Diagram(Function<Set<String>, String> transitionSymbolSupplier, Supplier<String> stateNameSupplier, Consumer<String> onError) {
         this.stateNameSupplier = stateNameSupplier;
@@ -44,57 +109,71 @@ public class Diagram extends Canvas {
         gc.setTextAlign(TextAlignment.CENTER);
         gc.setTextBaseline(VPos.CENTER);
         setOnMousePressed(e -> {
-            if (e.getButton() == MouseButton.PRIMARY) {
-                states.forEach(s -> s.setActive(false));
+            double x = worldX(e);
+            double y = worldY(e);
+            if (e.getButton() == MouseButton.MIDDLE) {
+                panX = e.getX();
+                panY = e.getY();
+                panViewX = viewX;
+                panViewY = viewY;
+            } else if (e.getButton() == MouseButton.PRIMARY) {
+                clearActiveStates();
                 if (cancelRunning != null) {
                     cancelRunning.run();
                 }
-                setSelected(states.stream()
-                        .filter(s -> s.intersects(e.getX(), e.getY()))
-                        .findAny().orElse(null));
+                State pressed = stateAt(x, y);
+                selectedTransition = pressed == null ? transitionAt(x, y) : null;
+                setSelected(pressed);
                 if (selected != null) {
-                    initialOffsetX = selected.getX() - e.getX();
-                    initialOffsetY = selected.getY() - e.getY();
+                    initialOffsetX = selected.getX() - x;
+                    initialOffsetY = selected.getY() - y;
+                    pressX = selected.getX();
+                    pressY = selected.getY();
+                    draggedTransitions = incidentTransitions(selected);
                 }
                 setTransitionFrom(null);
             }
         });
         setOnMouseDragged(e -> {
-            if (e.getButton() == MouseButton.PRIMARY) {
+            double x = worldX(e);
+            double y = worldY(e);
+            if (e.getButton() == MouseButton.MIDDLE) {
+                scrollTo(panViewX - (e.getX() - panX), panViewY - (e.getY() - panY));
+            } else if (e.getButton() == MouseButton.PRIMARY) {
                 if (selected != null) {
-                    if (e.getX() + initialOffsetX < 0) {
-                        selected.setX(0);
-                    } else {
-                        selected.setX(e.getX() + initialOffsetX);
-                    }
-                    if (e.getY() + initialOffsetY < 0) {
-                        selected.setY(0);
-                    } else {
-                        selected.setY(e.getY() + initialOffsetY);
-                    }
-                    update();
+                    move(selected, max(x + initialOffsetX, 0), max(y + initialOffsetY, 0), draggedTransitions);
                 }
             }
         });
+        setOnMouseReleased(e -> {
+            if (e.getButton() == MouseButton.PRIMARY && selected != null
+                    && (selected.getX() != pressX || selected.getY() != pressY)) {
+                record(new Edit.MoveState(selected.getName(), pressX, pressY, selected.getX(), selected.getY()));
+                pressX = selected.getX();
+                pressY = selected.getY();
+            }
+        });
         setOnMouseClicked(e -> {
+            double x = worldX(e);
+            double y = worldY(e);
             if (e.getButton() == MouseButton.SECONDARY) {
-                states.forEach(s -> s.setActive(false));
+                clearActiveStates();
                 if (cancelRunning != null) {
                     cancelRunning.run();
                 }
-                State clickedOn = states.stream()
-                        .filter(s -> s.intersects(e.getX(), e.getY()))
-                        .findAny().orElse(null);
+                selectedTransition = null;
+                State clickedOn = stateAt(x, y);
                 if (transitionFrom == null) {
                     setTransitionFrom(clickedOn);
                 } else if (clickedOn != null) {
-                    Set<String> symbols = new HashSet<>(alphabet);
-                    symbols.add("ε");
+                    Set<String> symbols = new HashSet<>(symbolTable.getAlphabet());
+                    symbols.add(SymbolTable.EPSILON_SYMBOL);
                     symbols.removeAll(transitionFrom.getTransitions().stream()
                             .filter(t -> t.getStateTo().equals(clickedOn)).findAny()
-                            .map(Transition::getSymbols).orElse(Collections.emptySet()));
+                            .map(Transition::getSymbols).orElse(Collections.emptyList()));
                     String symbol = transitionSymbolSupplier.apply(symbols);
                     if (symbol != null) {
+                        record(new Edit.AddTransition(transitionFrom.getName(), clickedOn.getName(), symbol));
                         addTransition(transitionFrom, clickedOn, symbol);
                     }
                     setTransitionFrom(null);
@@ -106,7 +185,7 @@ public class Diagram extends Canvas {
                     toggleSelectedStateAccepting();
                     onSelectionChange.accept(selected);
                 } else {
-                    addState(e.getX(), e.getY());
+                    addState(x, y);
                 }
             }
         });
@@ -115,6 +194,12 @@ public class Diagram extends Canvas {
                 deleteSelectedState();
             }
         });
+        setOnScroll(e -> {
+            if (e.isShortcutDown()) {
+                zoom(Math.pow(ZOOM_STEP, e.getDeltaY() / 40), e.getX(), e.getY());
+                e.consume();
+            }
+        });
     }
 
     @Override
@@ -126,31 +211,461 @@ public class Diagram extends Canvas {
         return a > b ? a : b;
     }
 
-    private void update() {
-        updateSize();
+    private double worldX(MouseEvent e) {
+        return (viewX + e.getX()) / zoom;
+    }
+
+    private double worldY(MouseEvent e) {
+        return (viewY + e.getY()) / zoom;
+    }
+
+    private void move(State state, double x, double y, List<Transition> incident) {
+        invalidate(state);
+        incident.forEach(this::invalidate);
+        state.setX(x);
+        state.setY(y);
+        index(state);
+        incident.forEach(this::index);
+        invalidate(state);
+        incident.forEach(this::invalidate);
+        extend(state);
+        repaint();
+    }
+
+    private void extend(State state) {
+        if (state.getX() + 2 * state.getRadius() + 1 > extentWidth
+                || state.getY() + 2 * state.getRadius() + 1 > extentHeight) {
+            extentWidth = max(extentWidth, state.getX() + 2 * state.getRadius() + 1);
+            extentHeight = max(extentHeight, state.getY() + 2 * state.getRadius() + 1);
+            fireExtentChange();
+        }
+    }
+
+    private void retract(State state) {
+        if (state.getX() + 2 * state.getRadius() + 1 >= extentWidth
+                || state.getY() + 2 * state.getRadius() + 1 >= extentHeight) {
+            extentStale = true;
+        }
+    }
+
+    private void updateExtent() {
+        if (!extentStale) {
+            return;
+        }
+        extentStale = false;
+        extentWidth = 0;
+        extentHeight = 0;
+        for (State state : states) {
+            extentWidth = max(extentWidth, state.getX() + 2 * state.getRadius() + 1);
+            extentHeight = max(extentHeight, state.getY() + 2 * state.getRadius() + 1);
+        }
+        fireExtentChange();
+    }
+
+    private State stateAt(double x, double y) {
+        return stateIndex.find(x, y, s -> s.intersects(x, y));
+    }
+
+    private Transition transitionAt(double x, double y) {
+        return transitionIndex.find(x, y, t -> t.intersects(x, y));
+    }
+
+    private void index(State state) {
+        stateIndex.putBox(state, state.getX(), state.getY(),
+                state.getX() + 2 * state.getRadius(), state.getY() + 2 * state.getRadius());
+    }
+
+    private void index(Transition transition) {
+        State from = transition.getStateFrom();
+        State to = transition.getStateTo();
+        if (from == to) {
+            transitionIndex.putBox(transition, from.getX(), from.getY() - from.getRadius() - LABEL_MARGIN,
+                    from.getX() + 2 * from.getRadius(), from.getY() + from.getRadius());
+        } else {
+            transitionIndex.putSegment(transition, from.getX() + from.getRadius(), from.getY() + from.getRadius(),
+                    to.getX() + to.getRadius(), to.getY() + to.getRadius(),
+                    max(from.getRadius(), to.getRadius()) + LABEL_MARGIN);
+        }
+    }
+
+    private List<Transition> incidentTransitions(State state) {
+        List<Transition> incident = new ArrayList<>(state.getTransitions());
+        incoming.getOrDefault(state, Collections.emptySet()).stream()
+                .filter(t -> t.getStateFrom() != state)
+                .forEach(incident::add);
+        return incident;
+    }
+
+    private Transition transitionBetween(State from, State to) {
+        return pairs.getOrDefault(from, Collections.emptyMap()).get(to);
+    }
+
+    private void link(Transition transition) {
+        State from = transition.getStateFrom();
+        State to = transition.getStateTo();
+        from.getTransitions().add(transition);
+        transitions.add(transition);
+        incoming.computeIfAbsent(to, s -> new HashSet<>()).add(transition);
+        pairs.computeIfAbsent(from, s -> new IdentityHashMap<>()).put(to, transition);
+        transition.forEachSymbol(symbol -> transitionsWith(symbol).add(transition));
+        Transition reverse = from != to ? transitionBetween(to, from) : null;
+        if (reverse != null) {
+            transition.setBidirectional(true);
+            reverse.setBidirectional(true);
+            invalidate(reverse);
+        }
+        index(transition);
+    }
+
+    private void unlink(Transition transition) {
+        State from = transition.getStateFrom();
+        State to = transition.getStateTo();
+        from.getTransitions().remove(transition);
+        transitions.remove(transition);
+        incoming.get(to).remove(transition);
+        pairs.get(from).remove(to);
+        transition.forEachSymbol(symbol -> symbolIndex.get(symbol).remove(transition));
+        Transition reverse = from != to ? transitionBetween(to, from) : null;
+        if (reverse != null) {
+            reverse.setBidirectional(false);
+            invalidate(reverse);
+        }
+        transitionIndex.remove(transition);
+        if (selectedTransition == transition) {
+            selectedTransition = null;
+        }
+    }
+
+    private Set<Transition> transitionsWith(int symbol) {
+        while (symbolIndex.size() <= symbol) {
+            symbolIndex.add(new HashSet<>());
+        }
+        return symbolIndex.get(symbol);
+    }
+
+    private void addSymbol(Transition transition, int symbol) {
+        if (transition.addSymbol(symbol)) {
+            transitionsWith(symbol).add(transition);
+        }
+    }
+
+    private void removeSymbol(Transition transition, int symbol) {
+        if (transition.removeSymbol(symbol)) {
+            symbolIndex.get(symbol).remove(transition);
+        }
+    }
+
+    private void clearModel() {
+        selectedTransition = null;
+        activeStates = Collections.emptySet();
+        states = new HashSet<>();
+        transitions = new HashSet<>();
+        incoming.clear();
+        pairs.clear();
+        symbolIndex.clear();
+        stateNames.clear();
+        stateIndex.clear();
+        transitionIndex.clear();
+        extentStale = true;
+    }
+
+    private void clearActiveStates() {
+        activeStates.forEach(s -> {
+            s.setActive(false);
+            invalidate(s);
+        });
+        activeStates = Collections.emptySet();
+    }
+
+    private void invalidate(double minX, double minY, double maxX, double maxY) {
+        dirty[0] = Math.min(dirty[0], minX);
+        dirty[1] = Math.min(dirty[1], minY);
+        dirty[2] = max(dirty[2], maxX);
+        dirty[3] = max(dirty[3], maxY);
+    }
+
+    private void invalidate(State state) {
+        invalidate(state.getX() - LABEL_MARGIN, state.getY() - LABEL_MARGIN,
+                state.getX() + 2 * state.getRadius() + LABEL_MARGIN, state.getY() + 2 * state.getRadius() + LABEL_MARGIN);
+    }
+
+    private void invalidate(Transition transition) {
+        if (!transition.isLabelMeasured()) {
+            if (measure == null) {
+                measure = new Text();
+                measure.setFont(font);
+            }
+            measure.setText(transition.getLabel());
+            transition.setLabelSize(measure.getLayoutBounds().getWidth(), measure.getLayoutBounds().getHeight());
+        }
+        double[] bounds = transition.getBounds();
+        invalidate(bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+
+    private void repaint() {
+        if (renderScheduled) {
+            ++coalescedRenders;
+        } else {
+            renderScheduled = true;
+            renderer.start();
+        }
+        ++requestedRenders;
+    }
+
+    void update() {
+        fullRender = true;
+        repaint();
+    }
+
+    void render() {
+        if (renderScheduled) {
+            renderer.stop();
+            renderScheduled = false;
+        }
+        if (fullRender) {
+            fullRender = false;
+            renderAll();
+        } else {
+            renderDirty();
+        }
+    }
+
+    private void renderDirty() {
+        double minX = max(dirty[0], viewX / zoom);
+        double minY = max(dirty[1], viewY / zoom);
+        double maxX = Math.min(dirty[2], (viewX + getWidth()) / zoom);
+        double maxY = Math.min(dirty[3], (viewY + getHeight()) / zoom);
+        resetDirty();
+        if (minX >= maxX || minY >= maxY) {
+            return;
+        }
+        gc.save();
+        gc.translate(-viewX, -viewY);
+        gc.scale(zoom, zoom);
+        gc.beginPath();
+        gc.rect(minX, minY, maxX - minX, maxY - minY);
+        gc.clip();
+        gc.setFill(Color.WHITE);
+        gc.fillRect(minX, minY, maxX - minX, maxY - minY);
+        renderRegion(minX, minY, maxX, maxY);
+        gc.restore();
+    }
+
+    private void resetDirty() {
+        dirty[0] = dirty[1] = Double.POSITIVE_INFINITY;
+        dirty[2] = dirty[3] = Double.NEGATIVE_INFINITY;
+    }
+
+    private void renderAll() {
+        resetDirty();
+        fitViewport();
         gc.setFill(Color.WHITE);
         gc.fillRect(0, 0, getWidth(), getHeight());
-        transitions.forEach(t -> t.draw(gc));
-        states.forEach(s -> s.draw(gc));
+        gc.save();
+        gc.translate(-viewX, -viewY);
+        gc.scale(zoom, zoom);
+        renderRegion(viewX / zoom, viewY / zoom, (viewX + getWidth()) / zoom, (viewY + getHeight()) / zoom);
+        gc.restore();
+    }
+
+    private void renderRegion(double minX, double minY, double maxX, double maxY) {
+        boolean labelled = isLabelled();
+        boolean arrowheads = hasArrowheads();
+        double cell = levelOfDetailSize / zoom;
+        bundles.clear();
+        transitionIndex.query(minX, minY, maxX, maxY, t -> {
+            State from = t.getStateFrom();
+            State to = t.getStateTo();
+            if (!isPoint(from) || !isPoint(to)) {
+                t.draw(gc, arrowheads, labelled);
+            } else if (from != to) {
+                bundles.add(cell(from.getX() + from.getRadius(), cell), cell(from.getY() + from.getRadius(), cell),
+                        cell(to.getX() + to.getRadius(), cell), cell(to.getY() + to.getRadius(), cell));
+            }
+        });
+        bundles.stroke(gc, cell, zoom);
+        stateIndex.query(minX - LABEL_MARGIN, minY - LABEL_MARGIN, maxX + LABEL_MARGIN, maxY + LABEL_MARGIN, s -> {
+            if (isPoint(s)) {
+                s.drawPoint(gc, max(2 / zoom, 2 * s.getRadius()));
+            } else {
+                s.draw(gc, labelled);
+            }
+        });
+    }
+
+    boolean isLabelled() {
+        return FONT_SIZE * zoom >= levelOfDetailSize;
+    }
+
+    boolean hasArrowheads() {
+        return ARROWHEAD_SIZE * zoom >= levelOfDetailSize;
+    }
+
+    boolean isPoint(State state) {
+        return 2 * state.getRadius() * zoom < levelOfDetailSize;
+    }
+
+    private static int cell(double coordinate, double cellSize) {
+        return (int) Math.floor(coordinate / cellSize);
     }
 
     public void updateSize() {
-        double[] bounds = states.stream().reduce(new double[2], (b, s) -> {
-            b[0] = max(b[0], s.getX() + 2 * s.getRadius() + 1);
-            b[1] = max(b[1], s.getY() + 2 * s.getRadius() + 1);
-            return b;
-        }, (b1, b2) -> b1);
-        setWidth(max(getParent().getLayoutBounds().getWidth(), bounds[0]));
-        setHeight(max(getParent().getLayoutBounds().getHeight(), bounds[1]));
+        fitViewport();
+        fireExtentChange();
+    }
+
+    private void fitViewport() {
+        setWidth(viewWidth > 0 ? viewWidth : getParent().getLayoutBounds().getWidth());
+        setHeight(viewHeight > 0 ? viewHeight : getParent().getLayoutBounds().getHeight());
+    }
+
+    private void fireExtentChange() {
+        if (onExtentChange != null) {
+            onExtentChange.accept(extentWidth * zoom, extentHeight * zoom);
+        }
+    }
+
+    public void setViewport(double x, double y, double width, double height) {
+        viewX = x;
+        viewY = y;
+        viewWidth = width;
+        viewHeight = height;
+        fullRender = true;
+        render();
+    }
+
+    private void scrollTo(double x, double y) {
+        x = Math.min(x, extentWidth * zoom - getWidth());
+        y = Math.min(y, extentHeight * zoom - getHeight());
+        viewX = max(x, 0);
+        viewY = max(y, 0);
+        if (onScrollRequest != null) {
+            onScrollRequest.accept(viewX, viewY);
+        }
+        update();
+    }
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    public void zoom(double factor, double pivotX, double pivotY) {
+        double zoom = Math.min(MAX_ZOOM, max(MIN_ZOOM, this.zoom * factor));
+        if (zoom != this.zoom) {
+            double x = (viewX + pivotX) / this.zoom * zoom - pivotX;
+            double y = (viewY + pivotY) / this.zoom * zoom - pivotY;
+            this.zoom = zoom;
+            fireExtentChange();
+            scrollTo(x, y);
+        }
+    }
+
+    public void zoomIn() {
+        zoom(ZOOM_STEP, getWidth() / 2, getHeight() / 2);
+    }
+
+    public void zoomOut() {
+        zoom(1 / ZOOM_STEP, getWidth() / 2, getHeight() / 2);
+    }
+
+    public void resetZoom() {
+        zoom(1 / zoom, getWidth() / 2, getHeight() / 2);
+    }
+
+    public void fitToWindow() {
+        if (extentWidth > 0 && extentHeight > 0) {
+            zoom(Math.min(getWidth() / extentWidth, getHeight() / extentHeight) / zoom, 0, 0);
+            scrollTo(0, 0);
+        }
+    }
+
+    public double getLevelOfDetailSize() {
+        return levelOfDetailSize;
+    }
+
+    public void setLevelOfDetailSize(double levelOfDetailSize) {
+        this.levelOfDetailSize = levelOfDetailSize;
+        update();
+    }
+
+    public void setOnScrollRequest(BiConsumer<Double, Double> onScrollRequest) {
+        this.onScrollRequest = onScrollRequest;
+    }
+
+    public void setOnExtentChange(BiConsumer<Double, Double> onExtentChange) {
+        this.onExtentChange = onExtentChange;
+    }
+
+    public void setOnEdit(Consumer<Edit> onEdit) {
+        this.onEdit = onEdit;
+    }
+
+    private void record(Edit edit) {
+        if (layoutMachine != null) {
+            endLayout();
+        }
+        if (onEdit != null) {
+            onEdit.accept(edit);
+        }
+    }
+
+    void apply(Edit edit) {
+        ++batchDepth;
+        try {
+            edit.apply(this);
+        } finally {
+            if (--batchDepth == 0) {
+                updateExtent();
+                if (batchChanged) {
+                    batchChanged = false;
+                    changed();
+                }
+            }
+        }
+    }
+
+    private void changed() {
+        ++version;
+        if (batchDepth > 0) {
+            batchChanged = true;
+            return;
+        }
+        updateExtent();
+        clearActiveStates();
+        if (cancelRunning != null) {
+            cancelRunning.run();
+        }
+        fireTransitionChange();
+        update();
+    }
+
+    State getState(String name) {
+        return stateNames.get(name);
     }
 
     public void setStartingState(State startingState) {
+        record(new Edit.SetStarting(this.startingState != null ? this.startingState.getName() : null,
+                startingState.getName()));
+        changeStartingState(startingState);
+    }
+
+    @Override
+    public void setStartingState(String name) {
+        changeStartingState(name != null ? stateNames.get(name) : null);
+    }
+
+    private void changeStartingState(State startingState) {
         if (this.startingState != null) {
             this.startingState.setStarting(false);
+            invalidate(this.startingState);
         }
         this.startingState = startingState;
-        startingState.setStarting(true);
-        update();
+        if (startingState != null) {
+            startingState.setStarting(true);
+            invalidate(startingState);
+        }
+        ++version;
+        repaint();
     }
 
     public void addState(double x, double y) {
@@ -158,26 +673,189 @@ public class Diagram extends Canvas {
         if (name != null) {
             if (name.trim().isEmpty()) {
                 onError.accept("State name cannot be empty");
-            } else if (states.stream().anyMatch(s -> s.getName().equals(name))) {
+            } else if (stateNames.containsKey(name)) {
                 onError.accept("A state with this name already exists");
             } else {
-                State state = new State(name, x, y);
-                states.add(state);
+                List<Edit> edits = new ArrayList<>();
+                edits.add(new Edit.AddState(name, x, y, State.DEFAULT_RADIUS, false));
                 if (startingState == null) {
-                    setStartingState(state);
-                }
-                states.forEach(s -> s.setActive(false));
-                if (cancelRunning != null) {
-                    cancelRunning.run();
+                    edits.add(new Edit.SetStarting(null, name));
                 }
-                update();
+                Edit edit = new Edit.Compound(edits);
+                record(edit);
+                apply(edit);
+            }
+        }
+    }
+
+    @Override
+    public void addState(String name, double x, double y, double radius, boolean accepting) {
+        if (stateNames.containsKey(name)) {
+            return;
+        }
+        State state = new State(name, x, y);
+        state.setRadius(radius);
+        state.setAccepting(accepting);
+        states.add(state);
+        stateNames.put(name, state);
+        index(state);
+        extend(state);
+        changed();
+    }
+
+    @Override
+    public void deleteState(String name) {
+        State state = stateNames.get(name);
+        if (state == null) {
+            return;
+        }
+        if (state == selected) {
+            setSelected(null);
+        }
+        if (state == transitionFrom) {
+            setTransitionFrom(null);
+        }
+        retract(state);
+        incidentTransitions(state).forEach(this::unlink);
+        incoming.remove(state);
+        pairs.remove(state);
+        states.remove(state);
+        stateNames.remove(name);
+        stateIndex.remove(state);
+        if (startingState == state) {
+            startingState = null;
+        }
+        changed();
+    }
+
+    @Override
+    public void moveState(String name, double x, double y) {
+        State state = stateNames.get(name);
+        if (state != null) {
+            retract(state);
+            move(state, x, y, incidentTransitions(state));
+            if (batchDepth == 0) {
+                updateExtent();
+            }
+        }
+    }
+
+    @Override
+    public void resizeState(String name, double radius) {
+        State state = stateNames.get(name);
+        if (state != null) {
+            retract(state);
+            state.setRadius(radius);
+            index(state);
+            incidentTransitions(state).forEach(this::index);
+            extend(state);
+            if (batchDepth == 0) {
+                updateExtent();
+            }
+            update();
+        }
+    }
+
+    @Override
+    public void renameState(String name, String newName) {
+        State state = stateNames.get(name);
+        if (state != null && !stateNames.containsKey(newName)) {
+            state.setName(newName);
+            stateNames.remove(name);
+            stateNames.put(newName, state);
+            changed();
+        }
+    }
+
+    @Override
+    public void setAccepting(String name, boolean accepting) {
+        State state = stateNames.get(name);
+        if (state != null) {
+            state.setAccepting(accepting);
+            changed();
+        }
+    }
+
+    @Override
+    public void addTransition(String from, String to, String symbol) {
+        State stateFrom = stateNames.get(from);
+        State stateTo = stateNames.get(to);
+        if (stateFrom != null && stateTo != null) {
+            addTransition(stateFrom, stateTo, symbol);
+        }
+    }
+
+    @Override
+    public void deleteTransition(String from, String to, String symbol) {
+        State stateFrom = stateNames.get(from);
+        State stateTo = stateNames.get(to);
+        Transition transition = stateFrom != null && stateTo != null ? transitionBetween(stateFrom, stateTo) : null;
+        int id = symbolTable.getId(symbol);
+        if (transition != null && id >= 0) {
+            removeSymbol(transition, id);
+            if (!transition.hasSymbols()) {
+                unlink(transition);
+            }
+            changed();
+        }
+    }
+
+    private List<Edit> removal(State state) {
+        List<Edit> edits = new ArrayList<>();
+        for (Transition transition : incidentTransitions(state)) {
+            for (String symbol : transition.getSymbols()) {
+                edits.add(new Edit.DeleteTransition(transition.getStateFrom().getName(),
+                        transition.getStateTo().getName(), symbol));
+            }
+        }
+        if (state == startingState) {
+            edits.add(new Edit.SetStarting(state.getName(), null));
+        }
+        edits.add(new Edit.DeleteState(state.getName(), state.getX(), state.getY(), state.getRadius(),
+                state.isAccepting()));
+        return edits;
+    }
+
+    private List<Edit> removal() {
+        List<Edit> edits = new ArrayList<>();
+        for (Transition transition : transitions) {
+            for (String symbol : transition.getSymbols()) {
+                edits.add(new Edit.DeleteTransition(transition.getStateFrom().getName(),
+                        transition.getStateTo().getName(), symbol));
+            }
+        }
+        if (startingState != null) {
+            edits.add(new Edit.SetStarting(startingState.getName(), null));
+        }
+        for (State state : states) {
+            edits.add(new Edit.DeleteState(state.getName(), state.getX(), state.getY(), state.getRadius(),
+                    state.isAccepting()));
+        }
+        return edits;
+    }
+
+    private List<Edit> contents() {
+        List<Edit> edits = new ArrayList<>();
+        for (State state : states) {
+            edits.add(new Edit.AddState(state.getName(), state.getX(), state.getY(), state.getRadius(),
+                    state.isAccepting()));
+        }
+        if (startingState != null) {
+            edits.add(new Edit.SetStarting(null, startingState.getName()));
+        }
+        for (Transition transition : transitions) {
+            for (String symbol : transition.getSymbols()) {
+                edits.add(new Edit.AddTransition(transition.getStateFrom().getName(),
+                        transition.getStateTo().getName(), symbol));
             }
         }
+        return edits;
     }
 
     public void fireTransitionChange() {
         if (onTransitionChange != null) {
-            Set<Transition> transitions = selected != null ? selected.getTransitions() : this.transitions;
+            Set<Transition> transitions = selected != null ? selected.getTransitions()
+                    : selectedTransition != null ? Collections.singleton(selectedTransition) : this.transitions;
             onTransitionChange.accept(FXCollections.observableArrayList(transitions.stream()
                     .flatMap(t -> t.getSymbols().stream().map(s -> new TransitionItem(t, s)))
                     .collect(Collectors.toList())));
@@ -185,38 +863,57 @@ public class Diagram extends Canvas {
     }
 
     private void addTransition(State stateFrom, State stateTo, String symbol) {
-        Optional<Transition> existingTransition = stateFrom.getTransitions().stream()
-                .filter(t -> t.getStateTo().equals(stateTo)).findAny();
-        if (existingTransition.isPresent()) {
-            existingTransition.get().getSymbols().add(symbol);
+        int id = symbolTable.intern(symbol);
+        Transition existingTransition = transitionBetween(stateFrom, stateTo);
+        if (existingTransition != null) {
+            addSymbol(existingTransition, id);
         } else {
-            Transition transition = new Transition(stateFrom, stateTo, symbol);
-            stateFrom.getTransitions().add(transition);
-            transitions.add(transition);
+            link(new Transition(stateFrom, stateTo, symbolTable, id));
         }
-        fireTransitionChange();
-        update();
+        changed();
     }
 
     public Set<String> getAlphabet() {
-        return alphabet;
+        return symbolTable.getAlphabet();
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
     }
 
     public void setAlphabet(String alphabet) {
-        this.alphabet = Arrays.stream(alphabet.split(","))
+        Set<String> symbols = Arrays.stream(alphabet.split(","))
                 .map(String::trim)
                 .filter(s -> !s.isEmpty())
                 .collect(Collectors.toSet());
-        Set<Transition> removableTransitions = new HashSet<>();
-        transitions.forEach(t -> {
-            t.getSymbols().removeIf(s -> !this.alphabet.contains(s) && !s.equals("ε"));
-            if (t.getSymbols().isEmpty()) {
-                removableTransitions.add(t);
+        List<Edit> edits = new ArrayList<>();
+        for (int id = 0; id < symbolIndex.size(); ++id) {
+            String symbol = symbolTable.getSymbol(id);
+            if (id != SymbolTable.EPSILON && !symbols.contains(symbol)) {
+                symbolIndex.get(id).forEach(t -> edits.add(new Edit.DeleteTransition(t.getStateFrom().getName(),
+                        t.getStateTo().getName(), symbol)));
             }
-        });
-        transitions.removeAll(removableTransitions);
-        removableTransitions.forEach(t -> t.getStateFrom().getTransitions().remove(t));
-        update();
+        }
+        edits.add(new Edit.SetAlphabet(getAlphabet(), symbols));
+        record(new Edit.Compound(edits));
+        setAlphabet(symbols);
+    }
+
+    @Override
+    public void setAlphabet(Set<String> alphabet) {
+        symbolTable.setAlphabet(alphabet);
+        for (int id = 0; id < symbolIndex.size(); ++id) {
+            if (id != SymbolTable.EPSILON && !symbolTable.isInAlphabet(id) && !symbolIndex.get(id).isEmpty()) {
+                Set<Transition> removed = symbolIndex.set(id, new HashSet<>());
+                for (Transition t : removed) {
+                    t.removeSymbol(id);
+                    if (!t.hasSymbols()) {
+                        unlink(t);
+                    }
+                }
+            }
+        }
+        changed();
     }
 
     public State getSelected() {
@@ -226,16 +923,18 @@ public class Diagram extends Canvas {
     private void setSelected(State selected) {
         if (this.selected != null) {
             this.selected.setSelected(false);
+            invalidate(this.selected);
         }
         this.selected = selected;
         if (selected != null) {
             selected.setSelected(true);
+            invalidate(selected);
         }
         if (onSelectionChange != null) {
             onSelectionChange.accept(selected);
         }
         fireTransitionChange();
-        update();
+        repaint();
     }
 
     public void setOnSelectionChange(Consumer<State> onSelectionChange) {
@@ -246,18 +945,18 @@ public class Diagram extends Canvas {
         if (name != null) {
             if (name.trim().isEmpty()) {
                 onError.accept("State name cannot be empty");
-            } else if (states.stream().anyMatch(s -> s.getName().equals(name))) {
+            } else if (stateNames.containsKey(name)) {
                 onError.accept("A state with this name already exists");
             } else {
-                selected.setName(name);
-                update();
+                record(new Edit.RenameState(selected.getName(), name));
+                renameState(selected.getName(), name);
             }
         }
     }
 
     public void toggleSelectedStateAccepting() {
-        selected.setAccepting(!selected.isAccepting());
-        update();
+        record(new Edit.SetAccepting(selected.getName(), !selected.isAccepting()));
+        setAccepting(selected.getName(), !selected.isAccepting());
     }
 
     public void resizeSelectedState(String radius) {
@@ -265,9 +964,10 @@ public class Diagram extends Canvas {
             int newRadius = Integer.parseInt(radius);
             if (newRadius <= 0) {
                 onError.accept("Radius cannot be less or equal to 0");
+            } else {
+                record(new Edit.ResizeState(selected.getName(), selected.getRadius(), newRadius));
+                resizeState(selected.getName(), newRadius);
             }
-            selected.setRadius(Integer.parseInt(radius));
-            update();
         } catch (NumberFormatException e) {
             onError.accept("Invalid number format");
         }
@@ -276,13 +976,15 @@ public class Diagram extends Canvas {
     private void setTransitionFrom(State state) {
         if (this.transitionFrom != null) {
             this.transitionFrom.setDrawingTransition(false);
+            invalidate(this.transitionFrom);
         }
         this.transitionFrom = state;
         if (state != null) {
             state.setDrawingTransition(true);
+            invalidate(state);
             setSelected(null);
         }
-        update();
+        repaint();
     }
 
     public void setOnTransitionChange(Consumer<ObservableList<TransitionItem>> onTransitionChange) {
@@ -290,35 +992,19 @@ public class Diagram extends Canvas {
     }
 
     public void deleteSelectedState() {
-        Set<Transition> removables = transitions.stream()
-                .filter(t -> t.getStateFrom().equals(selected) || t.getStateTo().equals(selected))
-                .collect(Collectors.toSet());
-        transitions.removeAll(removables);
-        removables.forEach(t -> t.getStateFrom().getTransitions().remove(t));
-        fireTransitionChange();
-        states.remove(selected);
-        if (startingState == selected) {
-            startingState = null;
-        }
-        states.forEach(s -> s.setActive(false));
-        setSelected(null);
-        if (cancelRunning != null) {
-            cancelRunning.run();
-        }
+        record(new Edit.Compound(removal(selected)));
+        deleteState(selected.getName());
     }
 
     public void deleteTransition(TransitionItem t) {
-        t.getTransition().getSymbols().remove(t.getSymbol());
-        if (t.getTransition().getSymbols().isEmpty()) {
-            t.getTransition().getStateFrom().getTransitions().remove(t.getTransition());
-            transitions.remove(t.getTransition());
-        }
-        fireTransitionChange();
-        states.forEach(s -> s.setActive(false));
-        update();
-        if (cancelRunning != null) {
-            cancelRunning.run();
-        }
+        record(new Edit.DeleteTransition(t.getTransition().getStateFrom().getName(),
+                t.getTransition().getStateTo().getName(), t.getSymbol()));
+        deleteTransition(t.getTransition().getStateFrom().getName(), t.getTransition().getStateTo().getName(),
+                t.getSymbol());
+    }
+
+    public Machine snapshot() {
+        return Machine.of(states.toArray(new State[0]), symbolTable, startingState);
     }
 
     public Set<State> getStates() {
@@ -333,33 +1019,230 @@ public class Diagram extends Canvas {
         return startingState;
     }
 
+    public long getRequestedRenders() {
+        return requestedRenders;
+    }
+
+    public long getCoalescedRenders() {
+        return coalescedRenders;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    double[] getDirtyRegion() {
+        return dirty.clone();
+    }
+
     public void newDiagram() {
         cancelRunning.run();
         startingState = null;
         setSelected(null);
-        states = new HashSet<>();
-        transitions = new HashSet<>();
+        clearModel();
+        symbolTable.reset();
+        ++version;
+        updateExtent();
         onTransitionChange.accept(FXCollections.emptyObservableList());
         update();
     }
 
+    public void load(Machine machine) {
+        newDiagram();
+        State[] loaded = new State[machine.getStateCount()];
+        for (int i = 0; i < loaded.length; ++i) {
+            loaded[i] = new State(machine.getName(i), machine.getX(i), machine.getY(i));
+            loaded[i].setRadius(machine.getRadius(i));
+            loaded[i].setAccepting(machine.isAccepting(i));
+            states.add(loaded[i]);
+            stateNames.put(loaded[i].getName(), loaded[i]);
+            index(loaded[i]);
+        }
+        Set<String> alphabet = new HashSet<>();
+        int[] ids = new int[machine.getAlphabetSize()];
+        for (int i = 0; i < machine.getAlphabetSize(); ++i) {
+            alphabet.add(machine.getSymbol(i));
+            ids[i] = symbolTable.intern(machine.getSymbol(i));
+        }
+        symbolTable.setAlphabet(alphabet);
+        for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+            int symbol = machine.getEdgeSymbol(edge);
+            int id = symbol == Machine.EPSILON ? SymbolTable.EPSILON : ids[symbol];
+            Transition transition = transitionBetween(loaded[machine.getEdgeFrom(edge)], loaded[machine.getEdgeTo(edge)]);
+            if (transition != null) {
+                addSymbol(transition, id);
+            } else {
+                link(new Transition(loaded[machine.getEdgeFrom(edge)], loaded[machine.getEdgeTo(edge)], symbolTable, id));
+            }
+        }
+        ++version;
+        if (machine.getStart() >= 0) {
+            changeStartingState(loaded[machine.getStart()]);
+        }
+        updateExtent();
+        fireTransitionChange();
+        update();
+    }
+
+    public void replace(Machine machine) {
+        if (cancelRunning != null) {
+            cancelRunning.run();
+        }
+        List<Edit> edits = removal();
+        Set<String> alphabet = new HashSet<>(getAlphabet());
+        load(machine);
+        if (!alphabet.equals(getAlphabet())) {
+            edits.add(new Edit.SetAlphabet(alphabet, getAlphabet()));
+        }
+        edits.addAll(contents());
+        record(new Edit.Compound(edits));
+    }
+
     public Set<String> findNonDeterministicStates() {
-        return states.stream().filter(s -> {
-            List<String> symbols = s.getTransitions().stream()
-                    .flatMap(t -> t.getSymbols().stream())
-                    .collect(Collectors.toList());
-            Set<String> symbolSet = new HashSet<>(symbols);
-            return symbolSet.contains("ε") || symbols.size() > symbolSet.size() || !symbolSet.equals(alphabet);
-        }).map(State::getName).collect(Collectors.toSet());
+        return DeterminismAnalysis.analyze(snapshot()).stream()
+                .map(DeterminismAnalysis.Diagnostic::getName)
+                .collect(Collectors.toSet());
+    }
+
+    public Machine beginLayout() {
+        endLayout();
+        layoutOrder = states.toArray(new State[0]);
+        layoutOrigin = new double[2 * layoutOrder.length];
+        for (int i = 0; i < layoutOrder.length; ++i) {
+            layoutOrigin[2 * i] = layoutOrder[i].getX();
+            layoutOrigin[2 * i + 1] = layoutOrder[i].getY();
+        }
+        layoutMachine = Machine.of(layoutOrder, symbolTable, startingState);
+        return layoutMachine;
+    }
+
+    public void showLayout(Machine machine, double[] positions) {
+        if (machine != layoutMachine) {
+            return;
+        }
+        for (int i = 0; i < layoutOrder.length; ++i) {
+            layoutOrder[i].setX(positions[2 * i]);
+            layoutOrder[i].setY(positions[2 * i + 1]);
+            index(layoutOrder[i]);
+        }
+        transitions.forEach(this::index);
+        extentStale = true;
+        updateExtent();
+        update();
+    }
+
+    public void endLayout() {
+        if (layoutMachine == null) {
+            return;
+        }
+        State[] order = layoutOrder;
+        double[] origin = layoutOrigin;
+        layoutMachine = null;
+        layoutOrder = null;
+        layoutOrigin = null;
+        List<Edit> edits = new ArrayList<>();
+        for (int i = 0; i < order.length; ++i) {
+            if (order[i].getX() != origin[2 * i] || order[i].getY() != origin[2 * i + 1]) {
+                edits.add(new Edit.MoveState(order[i].getName(), origin[2 * i], origin[2 * i + 1],
+                        order[i].getX(), order[i].getY()));
+            }
+        }
+        if (!edits.isEmpty()) {
+            record(new Edit.Compound(edits));
+        }
     }
 
     public void setActiveStates(Set<State> activeStates) {
-        activeStates.forEach(s -> s.setActive(true));
-        states.stream().filter(s -> !activeStates.contains(s)).forEach(s -> s.setActive(false));
+        this.activeStates.stream().filter(s -> !activeStates.contains(s)).forEach(s -> {
+            s.setActive(false);
+            invalidate(s);
+        });
+        activeStates.stream().filter(s -> !this.activeStates.contains(s)).forEach(s -> {
+            s.setActive(true);
+            invalidate(s);
+        });
+        this.activeStates = new HashSet<>(activeStates);
         setSelected(null);
     }
 
     public void setCancelRunning(Runnable cancelRunning) {
         this.cancelRunning = cancelRunning;
     }
+
+    private static class EdgeBundles {
+
+        private int[] cells = new int[4 * 64];
+        private int[] counts = new int[64];
+        private int size;
+
+        void clear() {
+            if (size > 0) {
+                Arrays.fill(counts, 0);
+                size = 0;
+            }
+        }
+
+        void add(int fromX, int fromY, int toX, int toY) {
+            if (fromX == toX && fromY == toY) {
+                return;
+            }
+            if (fromX > toX || fromX == toX && fromY > toY) {
+                add(toX, toY, fromX, fromY);
+                return;
+            }
+            int slot = slot(fromX, fromY, toX, toY);
+            if (counts[slot] == 0) {
+                if (2 * (size + 1) > counts.length) {
+                    grow();
+                    slot = slot(fromX, fromY, toX, toY);
+                }
+                cells[4 * slot] = fromX;
+                cells[4 * slot + 1] = fromY;
+                cells[4 * slot + 2] = toX;
+                cells[4 * slot + 3] = toY;
+                ++size;
+            }
+            ++counts[slot];
+        }
+
+        private int slot(int fromX, int fromY, int toX, int toY) {
+            int mask = counts.length - 1;
+            int hash = (((fromX * 31 + fromY) * 31 + toX) * 31 + toY) * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (counts[slot] != 0 && (cells[4 * slot] != fromX || cells[4 * slot + 1] != fromY
+                    || cells[4 * slot + 2] != toX || cells[4 * slot + 3] != toY)) {
+                slot = slot + 1 & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            int[] cells = this.cells;
+            int[] counts = this.counts;
+            this.cells = new int[cells.length * 2];
+            this.counts = new int[counts.length * 2];
+            for (int i = 0; i < counts.length; ++i) {
+                if (counts[i] > 0) {
+                    int slot = slot(cells[4 * i], cells[4 * i + 1], cells[4 * i + 2], cells[4 * i + 3]);
+                    System.arraycopy(cells, 4 * i, this.cells, 4 * slot, 4);
+                    this.counts[slot] = counts[i];
+                }
+            }
+        }
+
+        void stroke(GraphicsContext gc, double cellSize, double zoom) {
+            if (size == 0) {
+                return;
+            }
+            gc.setStroke(Color.GRAY);
+            for (int slot = 0; slot < counts.length; ++slot) {
+                if (counts[slot] > 0) {
+                    double width = 1 + Math.log(counts[slot]) / Math.log(2);
+                    gc.setLineWidth(Math.min(width, cellSize * zoom) / zoom);
+                    gc.strokeLine((cells[4 * slot] + 0.5) * cellSize, (cells[4 * slot + 1] + 0.5) * cellSize,
+                            (cells[4 * slot + 2] + 0.5) * cellSize, (cells[4 * slot + 3] + 0.5) * cellSize);
+                }
+            }
+        }
+    }
 }
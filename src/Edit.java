@@ -0,0 +1,501 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.*;
+
+public abstract class Edit {
+
+    private static final byte ADD_STATE = 1;
+    private static final byte DELETE_STATE = 2;
+    private static final byte MOVE_STATE = 3;
+    private static final byte RESIZE_STATE = 4;
+    private static final byte RENAME_STATE = 5;
+    private static final byte SET_ACCEPTING = 6;
+    private static final byte SET_STARTING = 7;
+    private static final byte ADD_TRANSITION = 8;
+    private static final byte DELETE_TRANSITION = 9;
+    private static final byte SET_ALPHABET = 10;
+    private static final byte COMPOUND = 11;
+
+    abstract void apply(EditTarget target);
+
+    abstract Edit inverse();
+
+    abstract long footprint();
+
+    abstract void write(DataOutput out) throws IOException;
+
+    private static long sizeOf(String string) {
+        return string != null ? 40 + 2L * string.length() : 0;
+    }
+
+    private static long sizeOf(Set<String> symbols) {
+        return 48 + symbols.stream().mapToLong(s -> 32 + sizeOf(s)).sum();
+    }
+
+    static Edit read(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case ADD_STATE:
+                return new AddState(in.readUTF(), in.readDouble(), in.readDouble(), in.readDouble(), in.readBoolean());
+            case DELETE_STATE:
+                return new DeleteState(in.readUTF(), in.readDouble(), in.readDouble(), in.readDouble(), in.readBoolean());
+            case MOVE_STATE:
+                return new MoveState(in.readUTF(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+            case RESIZE_STATE:
+                return new ResizeState(in.readUTF(), in.readDouble(), in.readDouble());
+            case RENAME_STATE:
+                return new RenameState(in.readUTF(), in.readUTF());
+            case SET_ACCEPTING:
+                return new SetAccepting(in.readUTF(), in.readBoolean());
+            case SET_STARTING:
+                return new SetStarting(readNullable(in), readNullable(in));
+            case ADD_TRANSITION:
+                return new AddTransition(in.readUTF(), in.readUTF(), in.readUTF());
+            case DELETE_TRANSITION:
+                return new DeleteTransition(in.readUTF(), in.readUTF(), in.readUTF());
+            case SET_ALPHABET:
+                return new SetAlphabet(readSymbols(in), readSymbols(in));
+            case COMPOUND:
+                int count = in.readInt();
+                List<Edit> edits = new ArrayList<>(Math.min(count, 1 << 16));
+                for (int i = 0; i < count; ++i) {
+                    edits.add(read(in));
+                }
+                return new Compound(edits);
+            default:
+                throw new StreamCorruptedException("Unknown edit type " + type);
+        }
+    }
+
+    private static void writeNullable(DataOutput out, String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeSymbols(DataOutput out, Set<String> symbols) throws IOException {
+        out.writeInt(symbols.size());
+        for (String symbol : symbols) {
+            out.writeUTF(symbol);
+        }
+    }
+
+    private static Set<String> readSymbols(DataInput in) throws IOException {
+        int count = in.readInt();
+        Set<String> symbols = new HashSet<>();
+        for (int i = 0; i < count; ++i) {
+            symbols.add(in.readUTF());
+        }
+        return symbols;
+    }
+
+    static class AddState extends Edit {
+
+        private final String name;
+        private final double x;
+        private final double y;
+        private final double radius;
+        private final boolean accepting;
+
+        AddState(String name, double x, double y, double radius, boolean accepting) {
+            this.name = name;
+            this.x = x;
+            this.y = y;
+            this.radius = radius;
+            this.accepting = accepting;
+        }
+
+        @Override
+        void apply(EditTarget target) {
+            target.addState(name, x, y, radius, accepting);
+        }
+
+        @Override
+        Edit inverse() {
+            return new DeleteState(name, x, y, radius, accepting);
+        }
+
+        @Override
+        long footprint() {
+            return 48 + sizeOf(name);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(ADD_STATE);
+            out.writeUTF(name);
+            out.writeDouble(x);
+            out.writeDouble(y);
+            out.writeDouble(radius);
+            out.writeBoolean(accepting);
+        }
+    }
+
+    static class DeleteState extends Edit {
+
+        private final String name;
+        private final double x;
+        private final double y;
+        private final double radius;
+        private final boolean accepting;
+
+        DeleteState(String name, double x, double y, double radius, boolean accepting) {
+            this.name = name;
+            this.x = x;
+            this.y = y;
+            this.radius = radius;
+            this.accepting = accepting;
+        }
+
+        @Override
+        void apply(EditTarget target) {
+            target.deleteState(name);
+        }
+
+        @Override
+        Edit inverse() {
+            return new AddState(name, x, y, radius, accepting);
+        }
+
+        @Override
+        long footprint() {
+            return 48 + sizeOf(name);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(DELETE_STATE);
+            out.writeUTF(name);
+            out.writeDouble(x);
+            out.writeDouble(y);
+            out.writeDouble(radius);
+            out.writeBoolean(accepting);
+        }
+    }
+
+    static class MoveState extends Edit {
+
+        private final String name;
+        private final double fromX;
+        private final double fromY;
+        private final double x;
+        private final double y;
+
+        MoveState(String name, double fromX, double fromY, double x, double y) {
+            this.name = name;
+            this.fromX = fromX;
+            this.fromY = fromY;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        void apply(EditTarget target) {
+            target.moveState(name, x, y);
+        }
+
+        @Override
+        Edit inverse() {
+            return new MoveState(name, x, y, fromX, fromY);
+        }
+
+        @Override
+        long footprint() {
+            return 48 + sizeOf(name);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(MOVE_STATE);
+            out.writeUTF(name);
+            out.writeDouble(fromX);
+            out.writeDouble(fromY);
+            out.writeDouble(x);
+            out.writeDouble(y);
+        }
+    }
+
+    static class ResizeState extends Edit {
+
+        private final String name;
+        private final double fromRadius;
+        private final double radius;
+
+        ResizeState(String name, double fromRadius, double radius) {
+            this.name = name;
+            this.fromRadius = fromRadius;
+            this.radius = radius;
+        }
+
+        @Override
+        void apply(EditTarget target) {
+            target.resizeState(name, radius);
+        }
+
+        @Override
+        Edit inverse() {
+            return new ResizeState(name, radius, fromRadius);
+        }
+
+        @Override
+        long footprint() {
+            return 32 + sizeOf(name);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(RESIZE_STATE);
+            out.writeUTF(name);
+            out.writeDouble(fromRadius);
+            out.writeDouble(radius);
+        }
+    }
+
+    static class RenameState extends Edit {
+
+        private final String fromName;
+        private final String name;
+
+        RenameState(String fromName, String name) {
+            this.fromName = fromName;
+            this.name = name;
+        }
+
+        @Override
+        void apply(EditTarget target) {
+            target.renameState(fromName, name);
+        }
+
+        @Override
+        Edit inverse() {
+            return new RenameState(name, fromName);
+        }
+
+        @Override
+        long footprint() {
+            return 24 + sizeOf(fromName) + sizeOf(name);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(RENAME_STATE);
+            out.writeUTF(fromName);
+            out.writeUTF(name);
+        }
+    }
+
+    static class SetAccepting extends Edit {
+
+        private final String name;
+        private final boolean accepting;
+
+        SetAccepting(String name, boolean accepting) {
+            this.name = name;
+            this.accepting = accepting;
+        }
+
+        @Override
+        void apply(EditTarget target) {
+            target.setAccepting(name, accepting);
+        }
+
+        @Override
+        Edit inverse() {
+            return new SetAccepting(name, !accepting);
+        }
+
+        @Override
+        long footprint() {
+            return 24 + sizeOf(name);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(SET_ACCEPTING);
+            out.writeUTF(name);
+            out.writeBoolean(accepting);
+        }
+    }
+
+    static class SetStarting extends Edit {
+
+        private final String fromName;
+        private final String name;
+
+        SetStarting(String fromName, String name) {
+            this.fromName = fromName;
+            this.name = name;
+        }
+
+        @Override
+        void apply(EditTarget target) {
+            target.setStartingState(name);
+        }
+
+        @Override
+        Edit inverse() {
+            return new SetStarting(name, fromName);
+        }
+
+        @Override
+        long footprint() {
+            return 24 + sizeOf(fromName) + sizeOf(name);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(SET_STARTING);
+            writeNullable(out, fromName);
+            writeNullable(out, name);
+        }
+    }
+
+    static class AddTransition extends Edit {
+
+        private final String from;
+        private final String to;
+        private final String symbol;
+
+        AddTransition(String from, String to, String symbol) {
+            this.from = from;
+            this.to = to;
+            this.symbol = symbol;
+        }
+
+        @Override
+        void apply(EditTarget target) {
+            target.addTransition(from, to, symbol);
+        }
+
+        @Override
+        Edit inverse() {
+            return new DeleteTransition(from, to, symbol);
+        }
+
+        @Override
+        long footprint() {
+            return 24 + sizeOf(from) + sizeOf(to) + sizeOf(symbol);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(ADD_TRANSITION);
+            out.writeUTF(from);
+            out.writeUTF(to);
+            out.writeUTF(symbol);
+        }
+    }
+
+    static class DeleteTransition extends Edit {
+
+        private final String from;
+        private final String to;
+        private final String symbol;
+
+        DeleteTransition(String from, String to, String symbol) {
+            this.from = from;
+            this.to = to;
+            this.symbol = symbol;
+        }
+
+        @Override
+        void apply(EditTarget target) {
+            target.deleteTransition(from, to, symbol);
+        }
+
+        @Override
+        Edit inverse() {
+            return new AddTransition(from, to, symbol);
+        }
+
+        @Override
+        long footprint() {
+            return 24 + sizeOf(from) + sizeOf(to) + sizeOf(symbol);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(DELETE_TRANSITION);
+            out.writeUTF(from);
+            out.writeUTF(to);
+            out.writeUTF(symbol);
+        }
+    }
+
+    static class SetAlphabet extends Edit {
+
+        private final Set<String> fromAlphabet;
+        private final Set<String> alphabet;
+
+        SetAlphabet(Set<String> fromAlphabet, Set<String> alphabet) {
+            this.fromAlphabet = fromAlphabet;
+            this.alphabet = alphabet;
+        }
+
+        @Override
+        void apply(EditTarget target) {
+            target.setAlphabet(alphabet);
+        }
+
+        @Override
+        Edit inverse() {
+            return new SetAlphabet(alphabet, fromAlphabet);
+        }
+
+        @Override
+        long footprint() {
+            return 24 + sizeOf(fromAlphabet) + sizeOf(alphabet);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(SET_ALPHABET);
+            writeSymbols(out, fromAlphabet);
+            writeSymbols(out, alphabet);
+        }
+    }
+
+    static class Compound extends Edit {
+
+        private final List<Edit> edits;
+
+        Compound(List<Edit> edits) {
+            this.edits = edits;
+        }
+
+        @Override
+        void apply(EditTarget target) {
+            edits.forEach(e -> e.apply(target));
+        }
+
+        @Override
+        Edit inverse() {
+            List<Edit> inverse = new ArrayList<>(edits.size());
+            for (int i = edits.size() - 1; i >= 0; --i) {
+                inverse.add(edits.get(i).inverse());
+            }
+            return new Compound(inverse);
+        }
+
+        @Override
+        long footprint() {
+            return 40 + edits.stream().mapToLong(e -> 8 + e.footprint()).sum();
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(COMPOUND);
+            out.writeInt(edits.size());
+            for (Edit edit : edits) {
+                edit.write(out);
+            }
+        }
+    }
+}
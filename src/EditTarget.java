@@ -0,0 +1,24 @@
+import java.util.Set;
+
+public interface EditTarget {
+
+    void addState(String name, double x, double y, double radius, boolean accepting);
+
+    void deleteState(String name);
+
+    void moveState(String name, double x, double y);
+
+    void resizeState(String name, double radius);
+
+    void renameState(String name, String newName);
+
+    void setAccepting(String name, boolean accepting);
+
+    void setStartingState(String name);
+
+    void addTransition(String from, String to, String symbol);
+
+    void deleteTransition(String from, String to, String symbol);
+
+    void setAlphabet(Set<String> alphabet);
+}
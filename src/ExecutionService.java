@@ -0,0 +1,133 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+
+public class ExecutionService {
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Execution timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Executor callbacks;
+
+    ExecutionService(int threads, Executor callbacks) {
+        this.executor = newExecutor(threads);
+        this.callbacks = callbacks;
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "Execution");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public <T> Execution submit(Job<T> job, long timeoutMillis, DoubleConsumer onProgress, Consumer<T> onSucceeded,
+                                Consumer<String> onFailed) {
+        Execution execution = new Execution(onProgress);
+        execution.future = executor.submit(() -> {
+            try {
+                execution.checkCancelled();
+                T result = job.run(execution);
+                execution.checkCancelled();
+                callbacks.execute(() -> {
+                    if (!execution.isCancelled()) {
+                        onSucceeded.accept(result);
+                    }
+                });
+            } catch (CancellationException e) {
+                if (execution.timedOut) {
+                    callbacks.execute(() -> onFailed.accept("Timed out after " + timeoutMillis + " ms"));
+                }
+            } catch (Throwable e) {
+                String message = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+                callbacks.execute(() -> {
+                    if (!execution.isCancelled()) {
+                        onFailed.accept(message);
+                    }
+                });
+            } finally {
+                if (execution.timeout != null) {
+                    execution.timeout.cancel(false);
+                }
+            }
+        });
+        if (timeoutMillis > 0) {
+            execution.timeout = timer.schedule(() -> {
+                if (!execution.cancelled) {
+                    execution.timedOut = true;
+                    execution.cancelled = true;
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return execution;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    public interface Job<T> {
+
+        T run(Execution execution) throws Exception;
+    }
+
+    public class Execution {
+
+        private final DoubleConsumer onProgress;
+        private final AtomicBoolean progressPending = new AtomicBoolean();
+        private volatile double progress;
+        private volatile boolean cancelled;
+        private volatile boolean timedOut;
+        private volatile Future<?> future;
+        private volatile ScheduledFuture<?> timeout;
+
+        private Execution(DoubleConsumer onProgress) {
+            this.onProgress = onProgress;
+        }
+
+        public void checkCancelled() {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+        }
+
+        public void updateProgress(long done, long total) {
+            progress = total > 0 ? (double) done / total : 0;
+            if (progressPending.compareAndSet(false, true)) {
+                callbacks.execute(() -> {
+                    progressPending.set(false);
+                    if (!cancelled) {
+                        onProgress.accept(progress);
+                    }
+                });
+            }
+        }
+
+        public void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            Future<?> future = this.future;
+            return future != null && future.isDone();
+        }
+    }
+}
@@ -1,41 +1,282 @@
 import java.io.*;
-import java.util.Set;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.DoubleConsumer;
+import java.util.zip.CRC32;
 
 public class FileHandler {
 
+    private static final int MAGIC = 0x46534d00;
+    private static final int VERSION = 1;
+    private static final short LEGACY_MAGIC = (short) 0xaced;
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final Set<String> LEGACY_CLASSES = new HashSet<>(Arrays.asList(
+            String.class.getName(), HashSet.class.getName(), State.class.getName(), Transition.class.getName()));
+
     public static void save(File file, Diagram diagram) throws IOException {
-        FileOutputStream fos = new FileOutputStream(file);
-        ObjectOutputStream oos = new ObjectOutputStream(fos);
-        oos.writeObject(diagram.getAlphabet().stream().collect(StringBuilder::new, (b, s) -> b.append(s).append(","),
-                StringBuilder::append).toString());
-        oos.writeObject(diagram.getStates());
-        oos.writeObject(diagram.getTransitions());
-        oos.writeObject(diagram.getStartingState().getName());
-        oos.close();
-        fos.close();
+        save(file, diagram.snapshot());
     }
 
-    @SuppressWarnings("unchecked")
-    public static void open(File file, Diagram diagram) throws IOException, ClassNotFoundException {
-        FileInputStream fis = new FileInputStream(file);
-        ObjectInputStream ois = new ObjectInputStream(fis);
-        diagram.newDiagram();
-        diagram.setAlphabet((String) ois.readObject());
-        ((Set<State>) ois.readObject()).forEach(s -> {
-            State state = new State(s.getName(), s.getX(), s.getY());
-            state.setRadius(s.getRadius());
-            state.setAccepting(s.isAccepting());
-            diagram.getStates().add(state);
+    public static void save(File file, Machine machine) throws IOException {
+        save(file, machine, progress -> {
         });
-        ((Set<Transition>) ois.readObject()).forEach(t -> {
-            State stateFrom = diagram.getStates().stream().filter(s -> s.equals(t.getStateFrom())).findAny().get();
-            State stateTo = diagram.getStates().stream().filter(s -> s.equals(t.getStateTo())).findAny().get();
-            Transition transition = new Transition(stateFrom, stateTo, t.getSymbols());
-            stateFrom.getTransitions().add(transition);
-            diagram.getTransitions().add(transition);
+    }
+
+    public static void save(File file, Machine machine, DoubleConsumer onProgress) throws IOException {
+        byte[][] strings = new byte[machine.getAlphabetSize() + machine.getStateCount()][];
+        long size = 6 * Integer.BYTES;
+        for (int i = 0; i < strings.length; ++i) {
+            String string = i < machine.getAlphabetSize() ? machine.getSymbol(i)
+                    : machine.getName(i - machine.getAlphabetSize());
+            strings[i] = string.getBytes(StandardCharsets.UTF_8);
+            size += Integer.BYTES + strings[i].length;
+        }
+        size += machine.getStateCount() * (3L * Double.BYTES + 1) + machine.getEdgeCount() * 3L * Integer.BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Machine is too large to save (" + size + " bytes)");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putInt(VERSION)
+                .putInt(machine.getAlphabetSize()).putInt(machine.getStateCount())
+                .putInt(machine.getEdgeCount()).putInt(machine.getStart());
+        for (byte[] string : strings) {
+            buffer.putInt(string.length).put(string);
+        }
+        for (int i = 0; i < machine.getStateCount(); ++i) {
+            buffer.putDouble(machine.getX(i)).putDouble(machine.getY(i)).putDouble(machine.getRadius(i))
+                    .put((byte) (machine.isAccepting(i) ? 1 : 0));
+        }
+        for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+            buffer.putInt(machine.getEdgeFrom(edge));
+        }
+        for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+            buffer.putInt(machine.getEdgeTo(edge));
+        }
+        for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+            buffer.putInt(machine.getEdgeSymbol(edge));
+        }
+        buffer.flip();
+        Path target = file.toPath().toAbsolutePath();
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    buffer.limit(Math.min(buffer.capacity(), buffer.position() + CHUNK_SIZE));
+                    channel.write(buffer);
+                    buffer.limit(buffer.capacity());
+                    onProgress.accept((double) buffer.position() / buffer.capacity());
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer.array(), 0, buffer.limit());
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    public static void open(File file, Diagram diagram) throws IOException, ClassNotFoundException {
+        diagram.load(load(file));
+    }
+
+    public static Machine load(File file) throws IOException, ClassNotFoundException {
+        Machine machine = loadSnapshot(file, progress -> {
         });
-        String startingState = ((String) ois.readObject());
-        diagram.setStartingState(diagram.getStates().stream().filter(s -> s.getName().equals(startingState)).findAny().orElse(null));
-        diagram.fireTransitionChange();
+        return MachineEditor.apply(machine, new Journal(file).replay());
+    }
+
+    public static Machine loadSnapshot(File file, DoubleConsumer onProgress)
+            throws IOException, ClassNotFoundException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File is too large");
+            }
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                buffer.limit(Math.min(buffer.capacity(), buffer.position() + CHUNK_SIZE));
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+                buffer.limit(buffer.capacity());
+                onProgress.accept((double) buffer.position() / buffer.capacity());
+            }
+            buffer.flip();
+        }
+        if (buffer.remaining() >= 2 && buffer.getShort(0) == LEGACY_MAGIC) {
+            return loadLegacy(file);
+        }
+        try {
+            return read(buffer);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new StreamCorruptedException("Truncated file");
+        }
+    }
+
+    private static Machine read(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new StreamCorruptedException("Not a state machine file");
+        }
+        int version = buffer.getInt();
+        if (version > VERSION) {
+            throw new IOException("Unsupported file version " + version);
+        }
+        int symbolCount = buffer.getInt();
+        int stateCount = buffer.getInt();
+        int edgeCount = buffer.getInt();
+        int start = buffer.getInt();
+        if (symbolCount < 0 || stateCount < 0 || edgeCount < 0 || start < -1 || start >= stateCount
+                || ((long) symbolCount + stateCount) * Integer.BYTES + (long) stateCount * (3 * Double.BYTES + 1)
+                + (long) edgeCount * 3 * Integer.BYTES > buffer.remaining()) {
+            throw new StreamCorruptedException("Invalid header");
+        }
+        String[] symbols = new String[symbolCount];
+        for (int i = 0; i < symbolCount; ++i) {
+            symbols[i] = readString(buffer);
+            if (i > 0 && symbols[i - 1].compareTo(symbols[i]) >= 0) {
+                throw new StreamCorruptedException("Symbols are not sorted");
+            }
+        }
+        String[] names = new String[stateCount];
+        Set<String> uniqueNames = new HashSet<>();
+        for (int i = 0; i < stateCount; ++i) {
+            names[i] = readString(buffer);
+            if (!uniqueNames.add(names[i])) {
+                throw new StreamCorruptedException("Duplicate state name " + names[i]);
+            }
+        }
+        double[] x = new double[stateCount];
+        double[] y = new double[stateCount];
+        double[] radius = new double[stateCount];
+        boolean[] accepting = new boolean[stateCount];
+        for (int i = 0; i < stateCount; ++i) {
+            x[i] = buffer.getDouble();
+            y[i] = buffer.getDouble();
+            radius[i] = buffer.getDouble();
+            accepting[i] = buffer.get() != 0;
+        }
+        int[] edgeFrom = new int[edgeCount];
+        int[] edgeTo = new int[edgeCount];
+        int[] edgeSymbol = new int[edgeCount];
+        buffer.asIntBuffer().get(edgeFrom).get(edgeTo).get(edgeSymbol);
+        for (int edge = 0; edge < edgeCount; ++edge) {
+            if (edgeFrom[edge] < 0 || edgeFrom[edge] >= stateCount || edgeTo[edge] < 0 || edgeTo[edge] >= stateCount
+                    || edgeSymbol[edge] < Machine.EPSILON || edgeSymbol[edge] >= symbolCount) {
+                throw new StreamCorruptedException("Transition refers to an unknown state or symbol");
+            }
+        }
+        return new Machine(symbols, names, x, y, radius, accepting, start, edgeFrom, edgeTo, edgeSymbol);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new StreamCorruptedException("Invalid string length");
+        }
+        String string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Machine loadLegacy(File file) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new LegacyInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            String[] symbols = Arrays.stream(((String) ois.readObject()).split(","))
+                    .map(String::trim)
+                    .filter(s -> !s.isEmpty())
+                    .distinct()
+                    .sorted()
+                    .toArray(String[]::new);
+            Map<String, Integer> symbolIds = new HashMap<>();
+            for (int i = 0; i < symbols.length; ++i) {
+                symbolIds.put(symbols[i], i);
+            }
+
+            Set<State> states = (Set<State>) ois.readObject();
+            String[] names = new String[states.size()];
+            double[] x = new double[states.size()];
+            double[] y = new double[states.size()];
+            double[] radius = new double[states.size()];
+            boolean[] accepting = new boolean[states.size()];
+            Map<String, Integer> stateIds = new HashMap<>();
+            int id = 0;
+            for (State state : states) {
+                names[id] = state.getName();
+                x[id] = state.getX();
+                y[id] = state.getY();
+                radius[id] = state.getRadius();
+                accepting[id] = state.isAccepting();
+                stateIds.put(state.getName(), id++);
+            }
+
+            Set<Transition> transitions = (Set<Transition>) ois.readObject();
+            int edgeCount = transitions.stream().mapToInt(Transition::getSymbolCount).sum();
+            int[] edgeFrom = new int[edgeCount];
+            int[] edgeTo = new int[edgeCount];
+            int[] edgeSymbol = new int[edgeCount];
+            int edge = 0;
+            for (Transition transition : transitions) {
+                Integer from = stateIds.get(transition.getStateFrom().getName());
+                Integer to = stateIds.get(transition.getStateTo().getName());
+                if (from == null || to == null) {
+                    throw new InvalidObjectException("Transition refers to an unknown state");
+                }
+                for (String s : transition.getSymbols()) {
+                    Integer symbol = s.equals("ε") ? Integer.valueOf(Machine.EPSILON) : symbolIds.get(s);
+                    if (symbol != null) {
+                        edgeFrom[edge] = from;
+                        edgeTo[edge] = to;
+                        edgeSymbol[edge] = symbol;
+                        ++edge;
+                    }
+                }
+            }
+
+            Integer start = stateIds.get((String) ois.readObject());
+            return new Machine(symbols, names, x, y, radius, accepting, start != null ? start : -1,
+                    Arrays.copyOf(edgeFrom, edge), Arrays.copyOf(edgeTo, edge), Arrays.copyOf(edgeSymbol, edge));
+        }
+    }
+
+    private static class LegacyInputStream extends ObjectInputStream {
+
+        LegacyInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!LEGACY_CLASSES.contains(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "Class not allowed in a state machine file");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("Proxy classes are not allowed in a state machine file");
+        }
     }
 }
@@ -0,0 +1,543 @@
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+public class GraphLayout {
+
+    private static final double MARGIN = 32;
+    private static final int ITERATIONS = 300;
+    private static final double THETA = 1;
+    private static final double REPULSION = 0.2;
+    private static final double GRAVITY = 0.02;
+    private static final int CHUNK_SIZE = 256;
+    private static final int PARALLEL_THRESHOLD = 4 * CHUNK_SIZE;
+    private static final int SWEEPS = 8;
+    private static final long FRAME_NANOS = 40_000_000;
+
+    private final Machine machine;
+    private final int stateCount;
+    private final double spacing;
+    private final int[] offsets;
+    private final int[] neighbours;
+    private final int[] successorOffsets;
+    private final int[] successors;
+    private long lastFrame;
+
+    GraphLayout(Machine machine) {
+        this.machine = machine;
+        stateCount = machine.getStateCount();
+        double maxRadius = State.DEFAULT_RADIUS;
+        for (int state = 0; state < stateCount; ++state) {
+            maxRadius = Math.max(maxRadius, machine.getRadius(state));
+        }
+        spacing = 6 * maxRadius;
+        long[] directed = new long[machine.getEdgeCount()];
+        long[] undirected = new long[2 * machine.getEdgeCount()];
+        int directedCount = 0;
+        int undirectedCount = 0;
+        for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+            int from = machine.getEdgeFrom(edge);
+            int to = machine.getEdgeTo(edge);
+            if (from != to) {
+                directed[directedCount++] = (long) from << 32 | to;
+                undirected[undirectedCount++] = (long) from << 32 | to;
+                undirected[undirectedCount++] = (long) to << 32 | from;
+            }
+        }
+        successorOffsets = new int[stateCount + 1];
+        successors = adjacency(directed, directedCount, successorOffsets);
+        offsets = new int[stateCount + 1];
+        neighbours = adjacency(undirected, undirectedCount, offsets);
+    }
+
+    private int[] adjacency(long[] pairs, int count, int[] offsets) {
+        Arrays.sort(pairs, 0, count);
+        int[] adjacent = new int[count];
+        int size = 0;
+        for (int i = 0; i < count; ++i) {
+            if (i == 0 || pairs[i] != pairs[i - 1]) {
+                ++offsets[(int) (pairs[i] >>> 32) + 1];
+                adjacent[size++] = (int) pairs[i];
+            }
+        }
+        for (int state = 0; state < stateCount; ++state) {
+            offsets[state + 1] += offsets[state];
+        }
+        return Arrays.copyOf(adjacent, size);
+    }
+
+    public double[] forceDirected(ExecutionService.Execution execution, Consumer<double[]> onFrame) {
+        double[] x = new double[stateCount];
+        double[] y = new double[stateCount];
+        if (stateCount == 0) {
+            return new double[0];
+        }
+        initialPositions(x, y);
+        double[] dx = new double[stateCount];
+        double[] dy = new double[stateCount];
+        QuadTree tree = new QuadTree(stateCount);
+        double k2 = REPULSION * spacing * spacing;
+        double initialTemperature = 2 * spacing;
+        int chunks = (stateCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        for (int iteration = 0; iteration < ITERATIONS; ++iteration) {
+            execution.checkCancelled();
+            tree.build(x, y);
+            double centreX = tree.sumX[0] / Math.max(1, tree.count[0]);
+            double centreY = tree.sumY[0] / Math.max(1, tree.count[0]);
+            IntStream range = IntStream.range(0, chunks);
+            if (stateCount >= PARALLEL_THRESHOLD) {
+                range = range.parallel();
+            }
+            range.forEach(chunk -> {
+                int[] stack = new int[4 * QuadTree.MAX_DEPTH + 8];
+                double[] force = new double[2];
+                for (int i = chunk * CHUNK_SIZE; i < Math.min(stateCount, (chunk + 1) * CHUNK_SIZE); ++i) {
+                    tree.repulsion(i, x, y, k2, stack, force);
+                    for (int j = offsets[i]; j < offsets[i + 1]; ++j) {
+                        int neighbour = neighbours[j];
+                        double distanceX = x[neighbour] - x[i];
+                        double distanceY = y[neighbour] - y[i];
+                        double distance = Math.sqrt(distanceX * distanceX + distanceY * distanceY);
+                        force[0] += distanceX * distance / spacing;
+                        force[1] += distanceY * distance / spacing;
+                    }
+                    force[0] += (centreX - x[i]) * GRAVITY;
+                    force[1] += (centreY - y[i]) * GRAVITY;
+                    dx[i] = force[0];
+                    dy[i] = force[1];
+                }
+            });
+            double temperature = initialTemperature * (1 - (double) iteration / ITERATIONS) + 1;
+            for (int i = 0; i < stateCount; ++i) {
+                double length = Math.sqrt(dx[i] * dx[i] + dy[i] * dy[i]);
+                if (length > temperature) {
+                    dx[i] *= temperature / length;
+                    dy[i] *= temperature / length;
+                }
+                x[i] += dx[i];
+                y[i] += dy[i];
+            }
+            execution.updateProgress(iteration + 1, ITERATIONS);
+            frame(x, y, onFrame, false);
+        }
+        return positions(x, y);
+    }
+
+    private void initialPositions(double[] x, double[] y) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int state = 0; state < stateCount; ++state) {
+            x[state] = machine.getX(state) + machine.getRadius(state);
+            y[state] = machine.getY(state) + machine.getRadius(state);
+            minX = Math.min(minX, x[state]);
+            minY = Math.min(minY, y[state]);
+            maxX = Math.max(maxX, x[state]);
+            maxY = Math.max(maxY, y[state]);
+        }
+        if ((maxX - minX) * (maxY - minY) >= stateCount * spacing * spacing / 16) {
+            return;
+        }
+        int columns = (int) Math.ceil(Math.sqrt(stateCount));
+        int[] order = traversal();
+        for (int i = 0; i < stateCount; ++i) {
+            x[order[i]] = i % columns * spacing;
+            y[order[i]] = i / columns * spacing;
+        }
+    }
+
+    private int[] traversal() {
+        int[] order = new int[stateCount];
+        boolean[] visited = new boolean[stateCount];
+        int size = 0;
+        int head = 0;
+        for (int i = -1; i < stateCount; ++i) {
+            int root = i < 0 ? Math.max(0, machine.getStart()) : i;
+            if (stateCount == 0 || visited[root]) {
+                continue;
+            }
+            visited[root] = true;
+            order[size++] = root;
+            while (head < size) {
+                int state = order[head++];
+                for (int j = offsets[state]; j < offsets[state + 1]; ++j) {
+                    if (!visited[neighbours[j]]) {
+                        visited[neighbours[j]] = true;
+                        order[size++] = neighbours[j];
+                    }
+                }
+            }
+        }
+        return order;
+    }
+
+    public double[] layered(ExecutionService.Execution execution, Consumer<double[]> onFrame) {
+        int[] layer = layers();
+        int layerCount = 0;
+        for (int state = 0; state < stateCount; ++state) {
+            layerCount = Math.max(layerCount, layer[state] + 1);
+        }
+        int[] layerOffsets = new int[layerCount + 1];
+        for (int state = 0; state < stateCount; ++state) {
+            ++layerOffsets[layer[state] + 1];
+        }
+        for (int i = 0; i < layerCount; ++i) {
+            layerOffsets[i + 1] += layerOffsets[i];
+        }
+        int[] members = new int[stateCount];
+        int[] next = Arrays.copyOf(layerOffsets, layerCount);
+        for (int state : traversal()) {
+            members[next[layer[state]]++] = state;
+        }
+        int[] row = new int[stateCount];
+        for (int i = 0; i < layerCount; ++i) {
+            for (int j = layerOffsets[i]; j < layerOffsets[i + 1]; ++j) {
+                row[members[j]] = j - layerOffsets[i];
+            }
+        }
+        double[] x = new double[stateCount];
+        double[] y = new double[stateCount];
+        int widest = 0;
+        for (int i = 0; i < layerCount; ++i) {
+            widest = Math.max(widest, layerOffsets[i + 1] - layerOffsets[i]);
+        }
+        double[] barycentre = new double[stateCount];
+        Integer[] sorted = new Integer[widest];
+        for (int sweep = 0; sweep <= SWEEPS; ++sweep) {
+            execution.checkCancelled();
+            if (sweep > 0) {
+                boolean down = sweep % 2 == 1;
+                for (int step = 1; step < layerCount; ++step) {
+                    int current = down ? step : layerCount - 1 - step;
+                    int from = layerOffsets[current];
+                    int size = layerOffsets[current + 1] - from;
+                    for (int j = 0; j < size; ++j) {
+                        int state = members[from + j];
+                        double sum = 0;
+                        int count = 0;
+                        for (int e = offsets[state]; e < offsets[state + 1]; ++e) {
+                            int neighbour = neighbours[e];
+                            if (down ? layer[neighbour] < current : layer[neighbour] > current) {
+                                sum += row[neighbour];
+                                ++count;
+                            }
+                        }
+                        barycentre[state] = count > 0 ? sum / count : row[state];
+                        sorted[j] = state;
+                    }
+                    Arrays.sort(sorted, 0, size, Comparator.comparingDouble(s -> barycentre[s]));
+                    for (int j = 0; j < size; ++j) {
+                        members[from + j] = sorted[j];
+                        row[sorted[j]] = j;
+                    }
+                }
+            }
+            for (int i = 0; i < layerCount; ++i) {
+                double top = (widest - (layerOffsets[i + 1] - layerOffsets[i])) * spacing / 4;
+                for (int j = layerOffsets[i]; j < layerOffsets[i + 1]; ++j) {
+                    x[members[j]] = i * spacing;
+                    y[members[j]] = top + row[members[j]] * spacing / 2;
+                }
+            }
+            execution.updateProgress(sweep + 1, SWEEPS + 1);
+            frame(x, y, onFrame, sweep == 0);
+        }
+        return positions(x, y);
+    }
+
+    private int[] layers() {
+        int[] order = feedbackOrder();
+        int[] position = new int[stateCount];
+        for (int i = 0; i < stateCount; ++i) {
+            position[order[i]] = i;
+        }
+        int[] layer = new int[stateCount];
+        for (int current : order) {
+            for (int j = successorOffsets[current]; j < successorOffsets[current + 1]; ++j) {
+                int successor = successors[j];
+                if (position[successor] > position[current]) {
+                    layer[successor] = Math.max(layer[successor], layer[current] + 1);
+                }
+            }
+        }
+        return layer;
+    }
+
+    private int[] feedbackOrder() {
+        int[] predecessorOffsets = new int[stateCount + 1];
+        for (int edge : successors) {
+            ++predecessorOffsets[edge + 1];
+        }
+        for (int state = 0; state < stateCount; ++state) {
+            predecessorOffsets[state + 1] += predecessorOffsets[state];
+        }
+        int[] predecessors = new int[successors.length];
+        int[] next = Arrays.copyOf(predecessorOffsets, stateCount);
+        for (int state = 0; state < stateCount; ++state) {
+            for (int j = successorOffsets[state]; j < successorOffsets[state + 1]; ++j) {
+                predecessors[next[successors[j]]++] = state;
+            }
+        }
+        int[] out = new int[stateCount];
+        int[] in = new int[stateCount];
+        for (int state = 0; state < stateCount; ++state) {
+            out[state] = successorOffsets[state + 1] - successorOffsets[state];
+            in[state] = predecessorOffsets[state + 1] - predecessorOffsets[state];
+        }
+        int[] rank = new int[stateCount];
+        int[] traversal = traversal();
+        for (int i = 0; i < stateCount; ++i) {
+            rank[traversal[i]] = i;
+        }
+        PriorityQueue<Long> candidates = new PriorityQueue<>();
+        int[] sinks = new int[stateCount + successors.length];
+        int[] sources = new int[stateCount + successors.length];
+        int sinkCount = 0;
+        int sourceCount = 0;
+        for (int state = 0; state < stateCount; ++state) {
+            candidates.add(candidate(state, out[state] - in[state], rank));
+            if (out[state] == 0) {
+                sinks[sinkCount++] = state;
+            } else if (in[state] == 0) {
+                sources[sourceCount++] = state;
+            }
+        }
+        boolean[] removed = new boolean[stateCount];
+        int[] order = new int[stateCount];
+        int left = 0;
+        int right = stateCount;
+        int start = machine.getStart();
+        while (left < right) {
+            int state;
+            if (start >= 0) {
+                state = start;
+                start = -1;
+                order[left++] = state;
+            } else if (sinkCount > 0) {
+                state = sinks[--sinkCount];
+                if (removed[state]) {
+                    continue;
+                }
+                order[--right] = state;
+            } else if (sourceCount > 0) {
+                state = sources[--sourceCount];
+                if (removed[state]) {
+                    continue;
+                }
+                order[left++] = state;
+            } else {
+                long candidate = candidates.poll();
+                state = traversal[(int) (candidate % stateCount)];
+                if (removed[state] || candidate != candidate(state, out[state] - in[state], rank)) {
+                    continue;
+                }
+                order[left++] = state;
+            }
+            removed[state] = true;
+            for (int j = successorOffsets[state]; j < successorOffsets[state + 1]; ++j) {
+                int successor = successors[j];
+                if (!removed[successor]) {
+                    if (--in[successor] == 0 && out[successor] > 0) {
+                        sources[sourceCount++] = successor;
+                    }
+                    candidates.add(candidate(successor, out[successor] - in[successor], rank));
+                }
+            }
+            for (int j = predecessorOffsets[state]; j < predecessorOffsets[state + 1]; ++j) {
+                int predecessor = predecessors[j];
+                if (!removed[predecessor]) {
+                    if (--out[predecessor] == 0) {
+                        sinks[sinkCount++] = predecessor;
+                    }
+                    candidates.add(candidate(predecessor, out[predecessor] - in[predecessor], rank));
+                }
+            }
+        }
+        return order;
+    }
+
+    private long candidate(int state, int delta, int[] rank) {
+        return (long) (stateCount - delta) * stateCount + rank[state];
+    }
+
+    private void frame(double[] x, double[] y, Consumer<double[]> onFrame, boolean force) {
+        long now = System.nanoTime();
+        if (force || now - lastFrame >= FRAME_NANOS) {
+            lastFrame = now;
+            onFrame.accept(positions(x, y));
+        }
+    }
+
+    private double[] positions(double[] x, double[] y) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        for (int state = 0; state < stateCount; ++state) {
+            minX = Math.min(minX, x[state] - machine.getRadius(state));
+            minY = Math.min(minY, y[state] - machine.getRadius(state));
+        }
+        double[] positions = new double[2 * stateCount];
+        for (int state = 0; state < stateCount; ++state) {
+            positions[2 * state] = x[state] - machine.getRadius(state) - minX + MARGIN;
+            positions[2 * state + 1] = y[state] - machine.getRadius(state) - minY + MARGIN;
+        }
+        return positions;
+    }
+
+    private static class QuadTree {
+
+        static final int MAX_DEPTH = 32;
+
+        private double[] centreX;
+        private double[] centreY;
+        private double[] half;
+        private double[] sumX;
+        private double[] sumY;
+        private int[] count;
+        private int[] child;
+        private int[] body;
+        private final int[] next;
+        private int size;
+
+        QuadTree(int bodies) {
+            next = new int[bodies];
+            allocate(Math.max(16, 2 * bodies));
+        }
+
+        private void allocate(int capacity) {
+            centreX = centreX == null ? new double[capacity] : Arrays.copyOf(centreX, capacity);
+            centreY = centreY == null ? new double[capacity] : Arrays.copyOf(centreY, capacity);
+            half = half == null ? new double[capacity] : Arrays.copyOf(half, capacity);
+            sumX = sumX == null ? new double[capacity] : Arrays.copyOf(sumX, capacity);
+            sumY = sumY == null ? new double[capacity] : Arrays.copyOf(sumY, capacity);
+            count = count == null ? new int[capacity] : Arrays.copyOf(count, capacity);
+            child = child == null ? new int[capacity] : Arrays.copyOf(child, capacity);
+            body = body == null ? new int[capacity] : Arrays.copyOf(body, capacity);
+        }
+
+        private int node(double x, double y, double size) {
+            if (this.size == count.length) {
+                allocate(2 * count.length);
+            }
+            int node = this.size++;
+            centreX[node] = x;
+            centreY[node] = y;
+            half[node] = size;
+            sumX[node] = 0;
+            sumY[node] = 0;
+            count[node] = 0;
+            child[node] = -1;
+            body[node] = -1;
+            return node;
+        }
+
+        void build(double[] x, double[] y) {
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < x.length; ++i) {
+                minX = Math.min(minX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxX = Math.max(maxX, x[i]);
+                maxY = Math.max(maxY, y[i]);
+            }
+            size = 0;
+            node((minX + maxX) / 2, (minY + maxY) / 2, Math.max(maxX - minX, maxY - minY) / 2 + 1);
+            for (int i = 0; i < x.length; ++i) {
+                insert(i, x, y);
+            }
+        }
+
+        private void insert(int i, double[] x, double[] y) {
+            int node = 0;
+            for (int depth = 0; ; ++depth) {
+                if (child[node] < 0) {
+                    if (count[node] == 0) {
+                        body[node] = i;
+                        next[i] = -1;
+                        count[node] = 1;
+                        sumX[node] = x[i];
+                        sumY[node] = y[i];
+                        return;
+                    }
+                    if (depth >= MAX_DEPTH) {
+                        next[i] = body[node];
+                        body[node] = i;
+                        ++count[node];
+                        sumX[node] += x[i];
+                        sumY[node] += y[i];
+                        return;
+                    }
+                    split(node, x, y);
+                }
+                ++count[node];
+                sumX[node] += x[i];
+                sumY[node] += y[i];
+                node = child[node] + quadrant(node, x[i], y[i]);
+            }
+        }
+
+        private void split(int node, double[] x, double[] y) {
+            double quarter = half[node] / 2;
+            int first = node(centreX[node] - quarter, centreY[node] - quarter, quarter);
+            node(centreX[node] + quarter, centreY[node] - quarter, quarter);
+            node(centreX[node] - quarter, centreY[node] + quarter, quarter);
+            node(centreX[node] + quarter, centreY[node] + quarter, quarter);
+            child[node] = first;
+            int moved = body[node];
+            int target = first + quadrant(node, x[moved], y[moved]);
+            body[target] = moved;
+            count[target] = 1;
+            sumX[target] = x[moved];
+            sumY[target] = y[moved];
+            body[node] = -1;
+        }
+
+        private int quadrant(int node, double x, double y) {
+            return (x >= centreX[node] ? 1 : 0) | (y >= centreY[node] ? 2 : 0);
+        }
+
+        void repulsion(int i, double[] x, double[] y, double k2, int[] stack, double[] force) {
+            force[0] = 0;
+            force[1] = 0;
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int node = stack[--top];
+                if (count[node] == 0) {
+                    continue;
+                }
+                if (child[node] < 0) {
+                    for (int b = body[node]; b >= 0; b = next[b]) {
+                        if (b != i) {
+                            push(x[i] - x[b], y[i] - y[b], 1, k2, force);
+                        }
+                    }
+                    continue;
+                }
+                double dx = x[i] - sumX[node] / count[node];
+                double dy = y[i] - sumY[node] / count[node];
+                double distance2 = dx * dx + dy * dy;
+                if (4 * half[node] * half[node] < THETA * THETA * distance2) {
+                    push(dx, dy, count[node], k2, force);
+                } else {
+                    int first = child[node];
+                    stack[top++] = first;
+                    stack[top++] = first + 1;
+                    stack[top++] = first + 2;
+                    stack[top++] = first + 3;
+                }
+            }
+        }
+
+        private static void push(double dx, double dy, int mass, double k2, double[] force) {
+            double distance2 = dx * dx + dy * dy;
+            if (distance2 < 1e-6) {
+                return;
+            }
+            force[0] += dx * mass * k2 / distance2;
+            force[1] += dy * mass * k2 / distance2;
+        }
+    }
+}
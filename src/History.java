@@ -0,0 +1,67 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+public class History {
+
+    private final long capacity;
+    private final Deque<Edit> undo = new ArrayDeque<>();
+    private final Deque<Edit> redo = new ArrayDeque<>();
+    private long memoryUsed;
+
+    History(long capacity) {
+        this.capacity = capacity;
+    }
+
+    public void record(Edit edit) {
+        undo.addLast(edit);
+        memoryUsed += edit.footprint();
+        redo.forEach(e -> memoryUsed -= e.footprint());
+        redo.clear();
+        while (memoryUsed > capacity && !undo.isEmpty()) {
+            memoryUsed -= undo.removeFirst().footprint();
+        }
+    }
+
+    public Edit undo(Diagram diagram) {
+        if (undo.isEmpty()) {
+            return null;
+        }
+        Edit edit = undo.removeLast();
+        Edit inverse = edit.inverse();
+        diagram.apply(inverse);
+        redo.addLast(edit);
+        return inverse;
+    }
+
+    public Edit redo(Diagram diagram) {
+        if (redo.isEmpty()) {
+            return null;
+        }
+        Edit edit = redo.removeLast();
+        diagram.apply(edit);
+        undo.addLast(edit);
+        return edit;
+    }
+
+    public void clear() {
+        undo.clear();
+        redo.clear();
+        memoryUsed = 0;
+    }
+
+    public boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    public long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+}
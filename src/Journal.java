@@ -0,0 +1,111 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+public class Journal {
+
+    private static final int MAGIC = 0x46534d4a;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES;
+    private static final long COMPACTION_THRESHOLD = 1 << 20;
+
+    private final File file;
+    private final Path path;
+    private volatile long size;
+    private volatile boolean compactionRequired;
+
+    Journal(File file) {
+        this.file = file;
+        this.path = new File(file.getPath() + ".journal").toPath();
+    }
+
+    public List<Edit> replay() throws IOException {
+        size = 0;
+        if (!Files.exists(path)) {
+            return Collections.emptyList();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() > VERSION
+                || buffer.getLong() != FileHandler.checksum(file)) {
+            return Collections.emptyList();
+        }
+        List<Edit> edits = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= 2 * Integer.BYTES) {
+            int length = buffer.getInt(buffer.position());
+            int start = buffer.position() + Integer.BYTES;
+            if (length < 0 || length > buffer.remaining() - 2 * Integer.BYTES) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.array(), start, length);
+            if ((int) crc.getValue() != buffer.getInt(start + length)) {
+                break;
+            }
+            edits.add(Edit.read(new DataInputStream(new ByteArrayInputStream(buffer.array(), start, length))));
+            buffer.position(start + length + Integer.BYTES);
+        }
+        size = buffer.position();
+        return edits;
+    }
+
+    public void append(List<Edit> edits) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (size == 0) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(FileHandler.checksum(file));
+        }
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        CRC32 crc = new CRC32();
+        for (Edit edit : edits) {
+            record.reset();
+            edit.write(new DataOutputStream(record));
+            crc.reset();
+            crc.update(record.toByteArray(), 0, record.size());
+            out.writeInt(record.size());
+            record.writeTo(out);
+            out.writeInt((int) crc.getValue());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            channel.truncate(size);
+            channel.position(size);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        size += bytes.size();
+    }
+
+    public void reset() throws IOException {
+        Files.deleteIfExists(path);
+        size = 0;
+        compactionRequired = false;
+    }
+
+    public void requireCompaction() {
+        compactionRequired = true;
+    }
+
+    public boolean needsCompaction() {
+        return compactionRequired || size > COMPACTION_THRESHOLD;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,226 @@
+import java.util.*;
+
+public class LazyDfa {
+
+    public enum EvictionPolicy {
+        CLEAR, LRU
+    }
+
+    private static final long STATE_OVERHEAD = 96;
+
+    private final BitsetNfa nfa;
+    private final int alphabetSize;
+    private final long memoryLimit;
+    private final EvictionPolicy evictionPolicy;
+    private final Map<SetKey, DfaState> cache = new HashMap<>();
+    private final long[] scratch;
+    private DfaState start;
+    private long memoryUsed;
+    private long clock;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private static class DfaState {
+
+        private long[] set;
+        private DfaState[] next;
+        private boolean accepting;
+        private boolean dead;
+        private boolean evicted;
+        private long lastUsed;
+    }
+
+    static class SetKey {
+
+        private final long[] set;
+        private final int hash;
+
+        SetKey(long[] set) {
+            this.set = set;
+            this.hash = Arrays.hashCode(set);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SetKey && Arrays.equals(set, ((SetKey) o).set);
+        }
+    }
+
+    LazyDfa(BitsetNfa nfa, long memoryLimit, EvictionPolicy evictionPolicy) {
+        this.nfa = nfa;
+        this.alphabetSize = nfa.getMachine().getAlphabetSize();
+        this.memoryLimit = memoryLimit;
+        this.evictionPolicy = evictionPolicy;
+        this.scratch = nfa.newSet();
+    }
+
+    private long stateCost() {
+        return STATE_OVERHEAD + 8L * scratch.length + 8L * alphabetSize;
+    }
+
+    private DfaState intern(long[] set) {
+        SetKey probe = new SetKey(set);
+        DfaState state = cache.get(probe);
+        if (state != null) {
+            return state;
+        }
+        if (memoryUsed + stateCost() > memoryLimit && !cache.isEmpty()) {
+            evict();
+        }
+        state = new DfaState();
+        state.set = set.clone();
+        state.next = new DfaState[alphabetSize];
+        state.accepting = nfa.isAccepting(set);
+        state.dead = nfa.isEmpty(set);
+        state.lastUsed = clock;
+        cache.put(new SetKey(state.set), state);
+        memoryUsed += stateCost();
+        return state;
+    }
+
+    private void evict() {
+        Collection<DfaState> evicted;
+        if (evictionPolicy == EvictionPolicy.CLEAR) {
+            evicted = new ArrayList<>(cache.values());
+            cache.clear();
+        } else {
+            List<Map.Entry<SetKey, DfaState>> entries = new ArrayList<>(cache.entrySet());
+            entries.sort(Comparator.comparingLong(e -> e.getValue().lastUsed));
+            evicted = new ArrayList<>();
+            for (Map.Entry<SetKey, DfaState> entry : entries.subList(0, (entries.size() + 1) / 2)) {
+                cache.remove(entry.getKey());
+                evicted.add(entry.getValue());
+            }
+        }
+        for (DfaState state : evicted) {
+            state.evicted = true;
+            state.next = null;
+        }
+        for (DfaState state : cache.values()) {
+            for (int symbol = 0; symbol < alphabetSize; ++symbol) {
+                if (state.next[symbol] != null && state.next[symbol].evicted) {
+                    state.next[symbol] = null;
+                }
+            }
+        }
+        evictions += evicted.size();
+        memoryUsed = cache.size() * stateCost();
+    }
+
+    private DfaState start() {
+        if (start == null || start.evicted) {
+            nfa.start(scratch);
+            start = intern(scratch);
+        }
+        start.lastUsed = ++clock;
+        return start;
+    }
+
+    private DfaState next(DfaState state, int symbol) {
+        if (symbol == Machine.NO_SYMBOL) {
+            nfa.step(state.set, symbol, scratch);
+            return intern(scratch);
+        }
+        DfaState next = state.next != null ? state.next[symbol] : null;
+        if (next != null) {
+            ++hits;
+        } else {
+            ++misses;
+            nfa.step(state.set, symbol, scratch);
+            next = intern(scratch);
+            if (state.next != null) {
+                state.next[symbol] = next;
+            }
+        }
+        next.lastUsed = ++clock;
+        return next;
+    }
+
+    public boolean accepts(CharSequence word) {
+        Tokenizer tokenizer = nfa.getMachine().getTokenizer();
+        if (!tokenizer.isPrefixFree()) {
+            try {
+                return accepts(tokenizer.tokenize(word, null));
+            } catch (TokenizationException ex) {
+                return false;
+            }
+        }
+        DfaState state = start();
+        for (int i = 0, length = word.length(); i < length && !state.dead; ) {
+            long match = tokenizer.match(word, i);
+            if (match == Tokenizer.NO_MATCH) {
+                return false;
+            }
+            state = next(state, Tokenizer.symbol(match));
+            i += Tokenizer.length(match);
+        }
+        return state.accepting;
+    }
+
+    public boolean accepts(int[] symbols) {
+        DfaState state = start();
+        for (int i = 0; i < symbols.length && !state.dead; ++i) {
+            state = next(state, symbols[i]);
+        }
+        return state.accepting;
+    }
+
+    public Cursor cursor() {
+        return new Cursor() {
+
+            private DfaState current = start();
+
+            @Override
+            public void reset() {
+                current = start();
+            }
+
+            @Override
+            public boolean step(int symbol) {
+                if (!current.dead) {
+                    current = next(current, symbol);
+                }
+                return !current.dead;
+            }
+
+            @Override
+            public boolean isAccepting() {
+                return current.accepting;
+            }
+        };
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public int getCachedStates() {
+        return cache.size();
+    }
+
+    public long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+}
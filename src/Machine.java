@@ -0,0 +1,156 @@
+import java.util.*;
+
+public class Machine {
+
+    public static final int EPSILON = -1;
+    public static final int NO_SYMBOL = -1;
+
+    private final String[] symbols;
+    private final String[] names;
+    private final double[] x;
+    private final double[] y;
+    private final double[] radius;
+    private final boolean[] accepting;
+    private final int start;
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final int[] edgeSymbol;
+    private final Tokenizer tokenizer;
+
+    Machine(String[] symbols, String[] names, double[] x, double[] y, double[] radius, boolean[] accepting,
+            int start, int[] edgeFrom, int[] edgeTo, int[] edgeSymbol) {
+        this.symbols = symbols;
+        this.names = names;
+        this.x = x;
+        this.y = y;
+        this.radius = radius;
+        this.accepting = accepting;
+        this.start = start;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edgeSymbol = edgeSymbol;
+        this.tokenizer = new Tokenizer(symbols);
+    }
+
+    public static Machine of(State[] states, SymbolTable table, State startingState) {
+        String[] symbols = table.getAlphabet().toArray(new String[0]);
+        Arrays.sort(symbols);
+        int[] symbolIds = new int[table.size()];
+        Arrays.fill(symbolIds, Integer.MIN_VALUE);
+        for (int i = 0; i < symbols.length; ++i) {
+            symbolIds[table.getId(symbols[i])] = i;
+        }
+        symbolIds[SymbolTable.EPSILON] = EPSILON;
+        Map<State, Integer> stateIds = new IdentityHashMap<>();
+        String[] names = new String[states.length];
+        double[] x = new double[states.length];
+        double[] y = new double[states.length];
+        double[] radius = new double[states.length];
+        boolean[] accepting = new boolean[states.length];
+        for (int i = 0; i < states.length; ++i) {
+            stateIds.put(states[i], i);
+            names[i] = states[i].getName();
+            x[i] = states[i].getX();
+            y[i] = states[i].getY();
+            radius[i] = states[i].getRadius();
+            accepting[i] = states[i].isAccepting();
+        }
+        int edgeCount = 0;
+        for (State state : states) {
+            for (Transition transition : state.getTransitions()) {
+                edgeCount += transition.getSymbolCount();
+            }
+        }
+        int[] edgeFrom = new int[edgeCount];
+        int[] edgeTo = new int[edgeCount];
+        int[] edgeSymbol = new int[edgeCount];
+        int[] edge = {0};
+        for (int i = 0; i < states.length; ++i) {
+            int from = i;
+            for (Transition transition : states[i].getTransitions()) {
+                Integer to = stateIds.get(transition.getStateTo());
+                if (to == null) {
+                    continue;
+                }
+                transition.forEachSymbol(id -> {
+                    int symbol = symbolIds[id];
+                    if (symbol != Integer.MIN_VALUE) {
+                        edgeFrom[edge[0]] = from;
+                        edgeTo[edge[0]] = to;
+                        edgeSymbol[edge[0]] = symbol;
+                        ++edge[0];
+                    }
+                });
+            }
+        }
+        Integer start = startingState != null ? stateIds.get(startingState) : null;
+        return new Machine(symbols, names, x, y, radius, accepting, start != null ? start : -1,
+                Arrays.copyOf(edgeFrom, edge[0]), Arrays.copyOf(edgeTo, edge[0]), Arrays.copyOf(edgeSymbol, edge[0]));
+    }
+
+    public Machine withPositions(double[] positions) {
+        double[] x = new double[names.length];
+        double[] y = new double[names.length];
+        for (int state = 0; state < names.length; ++state) {
+            x[state] = positions[2 * state];
+            y[state] = positions[2 * state + 1];
+        }
+        return new Machine(symbols, names, x, y, radius, accepting, start, edgeFrom, edgeTo, edgeSymbol);
+    }
+
+    public Tokenizer getTokenizer() {
+        return tokenizer;
+    }
+
+    public int getStateCount() {
+        return names.length;
+    }
+
+    public int getAlphabetSize() {
+        return symbols.length;
+    }
+
+    public String getSymbol(int symbol) {
+        return symbols[symbol];
+    }
+
+    public String getName(int state) {
+        return names[state];
+    }
+
+    public double getX(int state) {
+        return x[state];
+    }
+
+    public double getY(int state) {
+        return y[state];
+    }
+
+    public double getRadius(int state) {
+        return radius[state];
+    }
+
+    public boolean isAccepting(int state) {
+        return accepting[state];
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEdgeCount() {
+        return edgeFrom.length;
+    }
+
+    public int getEdgeFrom(int edge) {
+        return edgeFrom[edge];
+    }
+
+    public int getEdgeTo(int edge) {
+        return edgeTo[edge];
+    }
+
+    public int getEdgeSymbol(int edge) {
+        return edgeSymbol[edge];
+    }
+}
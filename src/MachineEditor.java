@@ -0,0 +1,167 @@
+import java.util.*;
+
+public class MachineEditor implements EditTarget {
+
+    private static class Node {
+
+        private double x;
+        private double y;
+        private double radius;
+        private boolean accepting;
+
+        Node(double x, double y, double radius, boolean accepting) {
+            this.x = x;
+            this.y = y;
+            this.radius = radius;
+            this.accepting = accepting;
+        }
+    }
+
+    private final Map<String, Node> states = new LinkedHashMap<>();
+    private final Set<List<String>> edges = new LinkedHashSet<>();
+    private Set<String> alphabet = new HashSet<>();
+    private String start;
+
+    MachineEditor(Machine machine) {
+        for (int symbol = 0; symbol < machine.getAlphabetSize(); ++symbol) {
+            alphabet.add(machine.getSymbol(symbol));
+        }
+        for (int state = 0; state < machine.getStateCount(); ++state) {
+            addState(machine.getName(state), machine.getX(state), machine.getY(state), machine.getRadius(state),
+                    machine.isAccepting(state));
+        }
+        for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+            int symbol = machine.getEdgeSymbol(edge);
+            addTransition(machine.getName(machine.getEdgeFrom(edge)), machine.getName(machine.getEdgeTo(edge)),
+                    symbol == Machine.EPSILON ? SymbolTable.EPSILON_SYMBOL : machine.getSymbol(symbol));
+        }
+        start = machine.getStart() >= 0 ? machine.getName(machine.getStart()) : null;
+    }
+
+    public static Machine apply(Machine machine, List<Edit> edits) {
+        if (edits.isEmpty()) {
+            return machine;
+        }
+        MachineEditor editor = new MachineEditor(machine);
+        edits.forEach(edit -> edit.apply(editor));
+        return editor.toMachine();
+    }
+
+    public Machine toMachine() {
+        String[] symbols = alphabet.toArray(new String[0]);
+        Arrays.sort(symbols);
+        String[] names = states.keySet().toArray(new String[0]);
+        Map<String, Integer> ids = new HashMap<>();
+        double[] x = new double[names.length];
+        double[] y = new double[names.length];
+        double[] radius = new double[names.length];
+        boolean[] accepting = new boolean[names.length];
+        for (int i = 0; i < names.length; ++i) {
+            Node node = states.get(names[i]);
+            ids.put(names[i], i);
+            x[i] = node.x;
+            y[i] = node.y;
+            radius[i] = node.radius;
+            accepting[i] = node.accepting;
+        }
+        int[] from = new int[edges.size()];
+        int[] to = new int[edges.size()];
+        int[] symbol = new int[edges.size()];
+        int count = 0;
+        for (List<String> edge : edges) {
+            int id = edge.get(2).equals(SymbolTable.EPSILON_SYMBOL) ? Machine.EPSILON
+                    : Arrays.binarySearch(symbols, edge.get(2));
+            if (id >= 0 || id == Machine.EPSILON) {
+                from[count] = ids.get(edge.get(0));
+                to[count] = ids.get(edge.get(1));
+                symbol[count++] = id;
+            }
+        }
+        return new Machine(symbols, names, x, y, radius, accepting, start != null ? ids.get(start) : -1,
+                Arrays.copyOf(from, count), Arrays.copyOf(to, count), Arrays.copyOf(symbol, count));
+    }
+
+    @Override
+    public void addState(String name, double x, double y, double radius, boolean accepting) {
+        states.putIfAbsent(name, new Node(x, y, radius, accepting));
+    }
+
+    @Override
+    public void deleteState(String name) {
+        if (states.remove(name) != null) {
+            edges.removeIf(edge -> edge.get(0).equals(name) || edge.get(1).equals(name));
+            if (name.equals(start)) {
+                start = null;
+            }
+        }
+    }
+
+    @Override
+    public void moveState(String name, double x, double y) {
+        Node node = states.get(name);
+        if (node != null) {
+            node.x = x;
+            node.y = y;
+        }
+    }
+
+    @Override
+    public void resizeState(String name, double radius) {
+        Node node = states.get(name);
+        if (node != null) {
+            node.radius = radius;
+        }
+    }
+
+    @Override
+    public void renameState(String name, String newName) {
+        if (!states.containsKey(name) || states.containsKey(newName)) {
+            return;
+        }
+        Map<String, Node> renamed = new LinkedHashMap<>();
+        states.forEach((key, node) -> renamed.put(key.equals(name) ? newName : key, node));
+        states.clear();
+        states.putAll(renamed);
+        List<List<String>> renamedEdges = new ArrayList<>();
+        for (List<String> edge : edges) {
+            renamedEdges.add(Arrays.asList(edge.get(0).equals(name) ? newName : edge.get(0),
+                    edge.get(1).equals(name) ? newName : edge.get(1), edge.get(2)));
+        }
+        edges.clear();
+        edges.addAll(renamedEdges);
+        if (name.equals(start)) {
+            start = newName;
+        }
+    }
+
+    @Override
+    public void setAccepting(String name, boolean accepting) {
+        Node node = states.get(name);
+        if (node != null) {
+            node.accepting = accepting;
+        }
+    }
+
+    @Override
+    public void setStartingState(String name) {
+        start = name != null && states.containsKey(name) ? name : null;
+    }
+
+    @Override
+    public void addTransition(String from, String to, String symbol) {
+        if (states.containsKey(from) && states.containsKey(to)) {
+            edges.add(Arrays.asList(from, to, symbol));
+        }
+    }
+
+    @Override
+    public void deleteTransition(String from, String to, String symbol) {
+        edges.remove(Arrays.asList(from, to, symbol));
+    }
+
+    @Override
+    public void setAlphabet(Set<String> alphabet) {
+        this.alphabet = new HashSet<>(alphabet);
+        edges.removeIf(edge -> !edge.get(2).equals(SymbolTable.EPSILON_SYMBOL) && !alphabet.contains(edge.get(2)));
+    }
+}
@@ -1,4 +1,7 @@
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.geometry.Bounds;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -10,12 +13,39 @@ import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 import java.io.File;
-import java.io.IOException;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class MainWindow extends Application {
 
+    private static final long RUN_TIMEOUT_MILLIS = 30_000;
+
     private File file;
+    private Journal journal;
+    private final List<Edit> pendingEdits = new ArrayList<>();
+    private final History history = new History(16L << 20);
+
+    private final ExecutorService fileExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "File I/O");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Task<?> fileTask;
+    private final HBox fileTaskPane = new HBox();
+    private final Label fileStatus = new Label();
+    private final ProgressBar fileProgress = new ProgressBar();
+
+    private final ExecutionService executionService = new ExecutionService(
+            Runtime.getRuntime().availableProcessors(), Platform::runLater);
+    private ExecutionService.Execution running;
+    private ExecutionService.Execution analysing;
+    private ExecutionService.Execution layingOut;
+    private ExecutionService.Execution minimizing;
 
     public static void main(String[] args) {
         launch(args);
@@ -52,11 +82,24 @@ public class MainWindow extends Application {
             error.setContentText(e);
             error.show();
         });
+        Pane diagramExtent = new Pane(diagram);
+        diagram.setManaged(false);
+        diagram.setOnExtentChange(diagramExtent::setPrefSize);
         ScrollPane diagramContainer = new ScrollPane();
         diagramContainer.setStyle("-fx-background: white;");
-        diagramContainer.setContent(diagram);
-        diagramContainer.widthProperty().addListener(e -> diagram.updateSize());
-        diagramContainer.heightProperty().addListener(e -> diagram.updateSize());
+        diagramContainer.setContent(diagramExtent);
+        diagramContainer.viewportBoundsProperty().addListener((observable, oldBounds, bounds) -> {
+            diagram.relocate(-bounds.getMinX(), -bounds.getMinY());
+            diagram.setViewport(-bounds.getMinX(), -bounds.getMinY(), bounds.getWidth(), bounds.getHeight());
+        });
+        diagram.setOnScrollRequest((x, y) -> {
+            diagramContainer.layout();
+            Bounds viewport = diagramContainer.getViewportBounds();
+            double width = diagramExtent.getLayoutBounds().getWidth() - viewport.getWidth();
+            double height = diagramExtent.getLayoutBounds().getHeight() - viewport.getHeight();
+            diagramContainer.setHvalue(width > 0 ? x / width : 0);
+            diagramContainer.setVvalue(height > 0 ? y / height : 0);
+        });
         diagramContainer.focusedProperty().addListener(e -> diagram.requestFocus());
 
         VBox toolPane = new VBox();
@@ -99,12 +142,59 @@ public class MainWindow extends Application {
         Button reload = new Button("Start simulation");
         Button stepForward = new Button(">");
         Label nextSymbol = new Label();
+        Slider timeline = new Slider();
+        timeline.setPrefWidth(232);
+        timeline.setBlockIncrement(1);
+        timeline.setDisable(true);
+        ProgressBar runProgress = new ProgressBar();
+        runProgress.setPrefWidth(232);
+        runProgress.setVisible(false);
+        runProgress.setManaged(false);
+        Runnable finishRun = () -> {
+            running = null;
+            run.setText("Run");
+            runProgress.setVisible(false);
+            runProgress.setManaged(false);
+        };
+        Runnable cancelLayout = () -> {
+            if (layingOut != null) {
+                layingOut.cancel();
+                layingOut = null;
+            }
+            diagram.endLayout();
+        };
+        Runnable cancelSteps = () -> {
+            cancelLayout.run();
+            if (running != null) {
+                running.cancel();
+                finishRun.run();
+            }
+            timeline.setDisable(true);
+            timeline.setValue(0);
+            stepBack.setDisable(true);
+            reload.setText("Start simulation");
+            stepForward.setDisable(true);
+            nextSymbol.setText("");
+        };
+        Runnable showStep = () -> {
+            stepBack.setDisable(runner.getStep() == 0);
+            stepForward.setDisable(runner.getStep() == runner.getStepCount());
+            if (runner.getStep() == runner.getStepCount()) {
+                nextSymbol.setText("End of input reached");
+            } else {
+                nextSymbol.setText("Remaining input: " + runner.getWord().substring(runner.getPos()));
+            }
+            timeline.setValue(runner.getStep());
+        };
         stepBack.setOnAction(e -> {
             runner.stepBack();
-            stepForward.setDisable(false);
-            nextSymbol.setText("Remaining input: " + runner.getWord().substring(runner.getPos()));
-            if (runner.getPos() == 0) {
-                stepBack.setDisable(true);
+            showStep.run();
+        });
+        timeline.valueProperty().addListener((observable, oldValue, value) -> {
+            int step = (int) Math.round(value.doubleValue());
+            if (!timeline.isDisable() && step != runner.getStep()) {
+                runner.seek(step);
+                showStep.run();
             }
         });
         reload.setOnAction(e -> {
@@ -112,48 +202,56 @@ public class MainWindow extends Application {
                 error.setContentText("No starting state specified");
                 error.show();
             } else {
-                reload.setText("Reload");
-                runner.setUp(word.getText());
-                stepBack.setDisable(true);
-                if (!runner.getWord().isEmpty()) {
-                    nextSymbol.setText("Remaining input: " + runner.getWord().substring(runner.getPos()));
-                    stepForward.setDisable(false);
-                } else {
-                    nextSymbol.setText("End of input reached");
+                try {
+                    runner.setUp(word.getText());
+                } catch (TokenizationException ex) {
+                    cancelSteps.run();
+                    error.setContentText(ex.getMessage());
+                    error.show();
+                    return;
                 }
+                reload.setText("Reload");
+                timeline.setMax(runner.getStepCount());
+                timeline.setDisable(false);
+                showStep.run();
             }
         });
         stepForward.setDisable(true);
         stepForward.setOnAction(e -> {
-            stepBack.setDisable(false);
             runner.stepForward();
-            if (runner.getPos() == runner.getWord().length()) {
-                nextSymbol.setText("End of input reached");
-                stepForward.setDisable(true);
-            } else {
-                nextSymbol.setText("Remaining input: " + runner.getWord().substring(runner.getPos()));
-            }
+            showStep.run();
         });
-        Runnable cancelSteps = () -> {
-            stepBack.setDisable(true);
-            reload.setText("Start simulation");
-            stepForward.setDisable(true);
-            nextSymbol.setText("");
-        };
         diagram.setCancelRunning(cancelSteps);
         run.setOnAction(e -> {
+            if (running != null) {
+                cancelSteps.run();
+                return;
+            }
             cancelSteps.run();
             info.setTitle("Run result");
             if (diagram.getStartingState() == null) {
                 error.setContentText("No starting state specified");
                 error.show();
-            } else if (runner.run(word.getText())) {
-                info.setContentText("The state machine accepts the word");
-                info.show();
-            } else {
-                info.setContentText("The state machine does not accept the word");
-                info.show();
+                return;
             }
+            run.setText("Cancel");
+            runProgress.setProgress(0);
+            runProgress.setVisible(true);
+            runProgress.setManaged(true);
+            running = executionService.submit(runner.runJob(word.getText()), RUN_TIMEOUT_MILLIS,
+                    runProgress::setProgress, accepted -> {
+                        finishRun.run();
+                        if (accepted) {
+                            info.setContentText("The state machine accepts the word");
+                        } else {
+                            info.setContentText("The state machine does not accept the word");
+                        }
+                        info.show();
+                    }, message -> {
+                        finishRun.run();
+                        error.setContentText(message);
+                        error.show();
+                    });
         });
         moveControls.add(stepBack, 0, 0);
         moveControls.add(reload, 1, 0);
@@ -163,7 +261,8 @@ public class MainWindow extends Application {
 
         moveControls.setPrefWidth(232);
 
-        runControls.getChildren().addAll(runnerLbl, new Separator(), new Label("Word"), wordContainer, nextSymbol, moveControls);
+        runControls.getChildren().addAll(runnerLbl, new Separator(), new Label("Word"), wordContainer, runProgress, nextSymbol,
+                moveControls, timeline);
         toolPane.getChildren().add(runControls);
 
         Label statePropertiesLbl = new Label("State properties");
@@ -228,13 +327,22 @@ public class MainWindow extends Application {
 
         MenuBar menuBar = new MenuBar();
         Menu fileMenu = new Menu("File");
+        Menu editMenu = new Menu("Edit");
+        Menu viewMenu = new Menu("View");
         Menu toolsMenu = new Menu("Tools");
 
         MenuItem newDiagram = new MenuItem("New");
         newDiagram.setAccelerator(new KeyCodeCombination(KeyCode.N, KeyCombination.CONTROL_DOWN));
+        diagram.setOnEdit(edit -> {
+            pendingEdits.add(edit);
+            history.record(edit);
+        });
         newDiagram.setOnAction(e -> {
             diagram.newDiagram();
             file = null;
+            journal = null;
+            pendingEdits.clear();
+            history.clear();
             primaryStage.setTitle("New diagram");
         });
 
@@ -243,19 +351,56 @@ public class MainWindow extends Application {
         fileChooser.getExtensionFilters().add(extensionFilter);
         fileChooser.setSelectedExtensionFilter(extensionFilter);
 
+        Consumer<String> showError = message -> {
+            error.setContentText(message);
+            error.show();
+        };
+        Button cancelFileTask = new Button("Cancel");
+        cancelFileTask.setOnAction(e -> {
+            if (fileTask != null) {
+                fileTask.cancel();
+            }
+        });
+        fileTaskPane.setPadding(new Insets(4));
+        fileTaskPane.setSpacing(4);
+        fileTaskPane.getChildren().addAll(fileStatus, fileProgress, cancelFileTask);
+        fileTaskPane.setVisible(false);
+        fileTaskPane.setManaged(false);
+
         MenuItem saveAs = new MenuItem("Save As...");
         saveAs.setOnAction(e -> {
             fileChooser.setTitle("Save As...");
             File saveable = fileChooser.showSaveDialog(primaryStage);
             if (saveable != null) {
-                try {
-                    FileHandler.save(saveable, diagram);
+                if (isFileTaskRunning(showError)) {
+                    return;
+                }
+                Machine snapshot = diagram.snapshot();
+                List<Edit> edits = new ArrayList<>(pendingEdits);
+                pendingEdits.clear();
+                Journal saved = new Journal(saveable);
+                submit(new Task<Void>() {
+                    @Override
+                    protected Void call() throws Exception {
+                        FileHandler.save(saveable, snapshot, p -> updateProgress(p, 1));
+                        saved.reset();
+                        return null;
+                    }
+
+                    @Override
+                    protected void failed() {
+                        pendingEdits.addAll(0, edits);
+                    }
+
+                    @Override
+                    protected void cancelled() {
+                        pendingEdits.addAll(0, edits);
+                    }
+                }, "Saving " + saveable.getName(), v -> {
                     file = saveable;
+                    journal = saved;
                     primaryStage.setTitle(file.getName());
-                } catch (IOException ex) {
-                    error.setContentText(ex.getMessage());
-                    error.show();
-                }
+                }, showError);
             }
         });
 
@@ -263,12 +408,43 @@ public class MainWindow extends Application {
         save.setAccelerator(new KeyCodeCombination(KeyCode.S, KeyCombination.CONTROL_DOWN));
         save.setOnAction(e -> {
             if (file != null) {
-                try {
-                    FileHandler.save(file, diagram);
-                } catch (IOException ex) {
-                    error.setContentText(ex.getMessage());
-                    error.show();
+                if (isFileTaskRunning(showError)) {
+                    return;
                 }
+                Journal saved = journal;
+                Machine snapshot = saved.needsCompaction() ? diagram.snapshot() : null;
+                List<Edit> edits = new ArrayList<>(pendingEdits);
+                pendingEdits.clear();
+                submit(new Task<Void>() {
+                    @Override
+                    protected Void call() throws Exception {
+                        if (snapshot != null) {
+                            FileHandler.save(saved.getFile(), snapshot, p -> updateProgress(p, 1));
+                            saved.reset();
+                        } else if (!edits.isEmpty()) {
+                            saved.append(edits);
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    protected void failed() {
+                        restore();
+                    }
+
+                    @Override
+                    protected void cancelled() {
+                        restore();
+                    }
+
+                    private void restore() {
+                        pendingEdits.addAll(0, edits);
+                        if (snapshot != null) {
+                            saved.requireCompaction();
+                        }
+                    }
+                }, "Saving " + file.getName(), v -> {
+                }, showError);
             } else {
                 saveAs.fire();
             }
@@ -280,22 +456,93 @@ public class MainWindow extends Application {
             fileChooser.setTitle("Open");
             File openable = fileChooser.showOpenDialog(primaryStage);
             if (openable != null) {
-                try {
-                    FileHandler.open(openable, diagram);
+                Journal opened = new Journal(openable);
+                List<Edit> recovered = new ArrayList<>();
+                submit(new Task<Machine>() {
+                    @Override
+                    protected Machine call() throws Exception {
+                        Machine machine = FileHandler.loadSnapshot(openable, p -> updateProgress(p, 1));
+                        recovered.addAll(opened.replay());
+                        return machine;
+                    }
+                }, "Opening " + openable.getName(), machine -> {
+                    diagram.load(machine);
+                    diagram.apply(new Edit.Compound(recovered));
+                    pendingEdits.clear();
+                    history.clear();
                     file = openable;
+                    journal = opened;
                     primaryStage.setTitle(file.getName());
-                } catch (Exception ex) {
-                    error.setContentText(ex.getMessage());
-                    error.show();
-                    newDiagram.fire();
-                }
+                }, showError);
             }
         });
 
+        MenuItem importRegex = new MenuItem("Import regular expression...");
+        TextInputDialog regexDialog = new TextInputDialog();
+        regexDialog.setTitle("Import regular expression");
+        regexDialog.setHeaderText("Input a regular expression over the alphabet\n"
+                + "(concatenation, |, *, +, ?, [classes], . and \\ to escape)");
+        CheckBox determinize = new CheckBox("Determinize");
+        CheckBox minimizeRegex = new CheckBox("Minimize");
+        VBox regexContent = new VBox(regexDialog.getEditor(), determinize, minimizeRegex);
+        regexContent.setSpacing(8);
+        regexDialog.getDialogPane().setContent(regexContent);
+        importRegex.setOnAction(e -> regexDialog.showAndWait().ifPresent(pattern -> {
+            RegexCompiler compiler = new RegexCompiler(diagram.getAlphabet());
+            boolean deterministic = determinize.isSelected();
+            boolean minimal = minimizeRegex.isSelected();
+            executionService.submit(execution -> compiler.compile(pattern, deterministic, minimal, execution), 0,
+                    progress -> { }, diagram::replace, showError);
+        }));
+
         MenuItem exit = new MenuItem("Exit");
         exit.setOnAction(e -> primaryStage.close());
 
-        fileMenu.getItems().addAll(newDiagram, open, save, saveAs, new SeparatorMenuItem(), exit);
+        fileMenu.getItems().addAll(newDiagram, open, save, saveAs, new SeparatorMenuItem(), importRegex,
+                new SeparatorMenuItem(), exit);
+
+        MenuItem undo = new MenuItem("Undo");
+        undo.setAccelerator(new KeyCodeCombination(KeyCode.Z, KeyCombination.CONTROL_DOWN));
+        undo.setOnAction(e -> {
+            cancelLayout.run();
+            Edit edit = history.undo(diagram);
+            if (edit != null) {
+                pendingEdits.add(edit);
+            }
+        });
+
+        MenuItem redo = new MenuItem("Redo");
+        redo.setAccelerator(new KeyCodeCombination(KeyCode.Y, KeyCombination.CONTROL_DOWN));
+        redo.setOnAction(e -> {
+            cancelLayout.run();
+            Edit edit = history.redo(diagram);
+            if (edit != null) {
+                pendingEdits.add(edit);
+            }
+        });
+
+        editMenu.setOnShowing(e -> {
+            undo.setDisable(!history.canUndo());
+            redo.setDisable(!history.canRedo());
+        });
+        editMenu.getItems().addAll(undo, redo);
+
+        MenuItem zoomIn = new MenuItem("Zoom in");
+        zoomIn.setAccelerator(new KeyCodeCombination(KeyCode.EQUALS, KeyCombination.CONTROL_DOWN));
+        zoomIn.setOnAction(e -> diagram.zoomIn());
+
+        MenuItem zoomOut = new MenuItem("Zoom out");
+        zoomOut.setAccelerator(new KeyCodeCombination(KeyCode.MINUS, KeyCombination.CONTROL_DOWN));
+        zoomOut.setOnAction(e -> diagram.zoomOut());
+
+        MenuItem actualSize = new MenuItem("Actual size");
+        actualSize.setAccelerator(new KeyCodeCombination(KeyCode.DIGIT0, KeyCombination.CONTROL_DOWN));
+        actualSize.setOnAction(e -> diagram.resetZoom());
+
+        MenuItem fitToWindow = new MenuItem("Fit to window");
+        fitToWindow.setOnAction(e -> diagram.fitToWindow());
+
+        viewMenu.getItems().addAll(zoomIn, zoomOut, actualSize, fitToWindow);
 
         MenuItem setAlphabet = new MenuItem("Set alphabet");
         TextInputDialog setAlphabetDialog = new TextInputDialog();
@@ -307,29 +554,153 @@ public class MainWindow extends Application {
         });
 
         MenuItem testDeterminism = new MenuItem("Test determinism");
+        ListView<DeterminismAnalysis.Diagnostic> diagnostics = new ListView<>();
+        Alert determinism = new Alert(Alert.AlertType.INFORMATION);
+        determinism.setTitle("Test determinism");
+        determinism.getDialogPane().setContent(diagnostics);
+        determinism.setOnHidden(e -> {
+            if (analysing != null) {
+                analysing.cancel();
+            }
+        });
         testDeterminism.setOnAction(e -> {
-            Set<String> nonDeterministicStates = diagram.findNonDeterministicStates();
-            info.setTitle("Test determinism");
-            if (!nonDeterministicStates.isEmpty()) {
-                info.setContentText("The state machine is non-deterministic at these states: " +
-                        String.join(", ", nonDeterministicStates));
-                info.show();
-            } else {
-                info.setContentText("The state machine is deterministic");
-                info.show();
+            if (analysing != null) {
+                analysing.cancel();
+            }
+            DeterminismAnalysis analysis = new DeterminismAnalysis(diagram.snapshot());
+            diagnostics.getItems().clear();
+            determinism.setHeaderText("Testing determinism...");
+            analysing = executionService.submit(execution -> {
+                AtomicInteger done = new AtomicInteger();
+                AtomicInteger found = new AtomicInteger();
+                analysis.run(chunk -> {
+                    found.addAndGet(chunk.size());
+                    execution.updateProgress(done.incrementAndGet(), analysis.getChunkCount());
+                    if (!chunk.isEmpty()) {
+                        Platform.runLater(() -> {
+                            if (!execution.isCancelled()) {
+                                diagnostics.getItems().addAll(chunk);
+                            }
+                        });
+                    }
+                }, execution::isCancelled);
+                return found.get();
+            }, 0, progress -> determinism.setHeaderText("Testing determinism... " + (int) (progress * 100) + "%"),
+                    found -> determinism.setHeaderText(found == 0
+                            ? "The state machine is deterministic"
+                            : "The state machine is non-deterministic at " + found + " states"), showError);
+            determinism.show();
+        });
+
+        MenuItem minimize = new MenuItem("Minimize");
+        minimize.setOnAction(e -> {
+            if (minimizing != null) {
+                minimizing.cancel();
+            }
+            if (diagram.getStartingState() == null) {
+                showError.accept("No starting state specified");
+                return;
             }
+            Machine machine = diagram.snapshot();
+            long version = diagram.getVersion();
+            minimizing = executionService.submit(execution -> DfaMinimizer.minimize(machine, execution::isCancelled),
+                    0, progress -> { }, minimal -> {
+                        minimizing = null;
+                        if (diagram.getVersion() != version) {
+                            showError.accept("The diagram changed while it was being minimized");
+                        } else {
+                            diagram.replace(minimal);
+                        }
+                    }, message -> {
+                        minimizing = null;
+                        showError.accept(message);
+                    });
         });
 
-        toolsMenu.getItems().addAll(setAlphabet, testDeterminism);
+        Menu layout = new Menu("Layout");
+        MenuItem forceDirected = new MenuItem("Force-directed");
+        forceDirected.setOnAction(e -> {
+            cancelSteps.run();
+            layout(diagram, false, showError);
+        });
+        MenuItem layered = new MenuItem("Layered");
+        layered.setOnAction(e -> {
+            cancelSteps.run();
+            layout(diagram, true, showError);
+        });
+        layout.getItems().addAll(forceDirected, layered);
+
+        toolsMenu.getItems().addAll(setAlphabet, testDeterminism, minimize, layout);
 
-        menuBar.getMenus().addAll(fileMenu, toolsMenu);
+        menuBar.getMenus().addAll(fileMenu, editMenu, viewMenu, toolsMenu);
 
         BorderPane mainLayout = new BorderPane();
         mainLayout.setTop(menuBar);
         mainLayout.setRight(toolPane);
         mainLayout.setCenter(diagramContainer);
+        mainLayout.setBottom(fileTaskPane);
         primaryStage.setScene(new Scene(mainLayout, 800 ,600));
         primaryStage.show();
         diagram.updateSize();
     }
+
+    private void layout(Diagram diagram, boolean layered, Consumer<String> onError) {
+        Machine machine = diagram.beginLayout();
+        GraphLayout graphLayout = new GraphLayout(machine);
+        AtomicBoolean framePending = new AtomicBoolean();
+        Consumer<double[]> onFrame = positions -> {
+            if (framePending.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    framePending.set(false);
+                    diagram.showLayout(machine, positions);
+                });
+            }
+        };
+        layingOut = executionService.submit(execution -> layered
+                        ? graphLayout.layered(execution, onFrame)
+                        : graphLayout.forceDirected(execution, onFrame), 0, progress -> { },
+                positions -> {
+                    layingOut = null;
+                    diagram.showLayout(machine, positions);
+                    diagram.endLayout();
+                }, message -> {
+                    layingOut = null;
+                    diagram.endLayout();
+                    onError.accept(message);
+                });
+    }
+
+    private boolean isFileTaskRunning(Consumer<String> onError) {
+        if (fileTask != null && !fileTask.isDone()) {
+            onError.accept("Another file operation is in progress");
+            return true;
+        }
+        return false;
+    }
+
+    private <T> void submit(Task<T> task, String status, Consumer<T> onSucceeded, Consumer<String> onError) {
+        if (isFileTaskRunning(onError)) {
+            return;
+        }
+        fileTask = task;
+        fileStatus.setText(status);
+        fileProgress.progressProperty().bind(task.progressProperty());
+        fileTaskPane.setVisible(true);
+        fileTaskPane.setManaged(true);
+        task.setOnSucceeded(e -> {
+            hideFileTask();
+            onSucceeded.accept(task.getValue());
+        });
+        task.setOnFailed(e -> {
+            hideFileTask();
+            onError.accept(task.getException().getMessage());
+        });
+        task.setOnCancelled(e -> hideFileTask());
+        fileExecutor.submit(task);
+    }
+
+    private void hideFileTask() {
+        fileTaskPane.setVisible(false);
+        fileTaskPane.setManaged(false);
+    }
 }
@@ -0,0 +1,316 @@
+import java.util.*;
+
+public class RegexCompiler {
+
+    static final int MAX_DFA_STATES = 1 << 16;
+    private static final int MAX_DEPTH = 256;
+
+    private enum Type {
+        SYMBOLS, EMPTY, CONCAT, UNION, STAR, PLUS, OPTIONAL
+    }
+
+    private static class Node {
+
+        private final Type type;
+        private final Node[] children;
+        private final int[] symbols;
+
+        Node(Type type, Node[] children, int[] symbols) {
+            this.type = type;
+            this.children = children;
+            this.symbols = symbols;
+        }
+    }
+
+    private final String[] symbols;
+    private final Tokenizer tokenizer;
+    private String pattern;
+    private int pos;
+    private int depth;
+    private int stateCount;
+    private int edgeCount;
+    private int[] edgeFrom = new int[16];
+    private int[] edgeTo = new int[16];
+    private int[] edgeSymbol = new int[16];
+
+    RegexCompiler(Set<String> alphabet) {
+        symbols = alphabet.toArray(new String[0]);
+        Arrays.sort(symbols);
+        tokenizer = new Tokenizer(symbols);
+    }
+
+    public Machine compile(String pattern) throws RegexSyntaxException {
+        this.pattern = pattern;
+        pos = 0;
+        depth = 0;
+        Node root = union();
+        if (pos < pattern.length()) {
+            throw new RegexSyntaxException("Unmatched )", pos);
+        }
+        stateCount = 0;
+        edgeCount = 0;
+        int start = newState();
+        int end = build(root, start);
+        boolean[] accepting = new boolean[stateCount];
+        accepting[end] = true;
+        return machine(stateCount, accepting, start, Arrays.copyOf(edgeFrom, edgeCount),
+                Arrays.copyOf(edgeTo, edgeCount), Arrays.copyOf(edgeSymbol, edgeCount));
+    }
+
+    public Machine compile(String pattern, boolean determinize, boolean minimize, ExecutionService.Execution execution)
+            throws RegexSyntaxException {
+        Machine machine = compile(pattern);
+        if (determinize || minimize) {
+            CompiledDfa dfa = CompiledDfa.determinize(BitsetNfa.compile(machine), MAX_DFA_STATES, execution::isCancelled);
+            machine = machine(minimize ? dfa.minimize() : dfa);
+        }
+        return machine.withPositions(new GraphLayout(machine).layered(execution, positions -> { }));
+    }
+
+    private Machine machine(CompiledDfa dfa) {
+        boolean[] accepting = new boolean[dfa.getStateCount()];
+        int edges = 0;
+        for (int state = 0; state < dfa.getStateCount(); ++state) {
+            accepting[state] = dfa.isAccepting(state);
+            for (int symbol = 0; symbol < dfa.getAlphabetSize(); ++symbol) {
+                if (dfa.step(state, symbol) != CompiledDfa.DEAD) {
+                    ++edges;
+                }
+            }
+        }
+        int[] from = new int[edges];
+        int[] to = new int[edges];
+        int[] symbol = new int[edges];
+        int edge = 0;
+        for (int state = 0; state < dfa.getStateCount(); ++state) {
+            for (int s = 0; s < dfa.getAlphabetSize(); ++s) {
+                if (dfa.step(state, s) != CompiledDfa.DEAD) {
+                    from[edge] = state;
+                    to[edge] = dfa.step(state, s);
+                    symbol[edge++] = s;
+                }
+            }
+        }
+        return machine(dfa.getStateCount(), accepting, dfa.getStart(), from, to, symbol);
+    }
+
+    private Machine machine(int stateCount, boolean[] accepting, int start, int[] from, int[] to, int[] symbol) {
+        String[] names = new String[stateCount];
+        double[] radius = new double[stateCount];
+        for (int state = 0; state < stateCount; ++state) {
+            names[state] = "q" + state;
+            radius[state] = State.DEFAULT_RADIUS;
+        }
+        return new Machine(symbols, names, new double[stateCount], new double[stateCount], radius, accepting, start,
+                from, to, symbol);
+    }
+
+    private Node union() throws RegexSyntaxException {
+        List<Node> alternatives = new ArrayList<>();
+        alternatives.add(concat());
+        while (pos < pattern.length() && pattern.charAt(pos) == '|') {
+            ++pos;
+            alternatives.add(concat());
+        }
+        return alternatives.size() == 1 ? alternatives.get(0)
+                : new Node(Type.UNION, alternatives.toArray(new Node[0]), null);
+    }
+
+    private Node concat() throws RegexSyntaxException {
+        List<Node> items = new ArrayList<>();
+        while (pos < pattern.length() && pattern.charAt(pos) != '|' && pattern.charAt(pos) != ')') {
+            items.add(repeat());
+        }
+        if (items.isEmpty()) {
+            return new Node(Type.EMPTY, null, null);
+        }
+        return items.size() == 1 ? items.get(0) : new Node(Type.CONCAT, items.toArray(new Node[0]), null);
+    }
+
+    private Node repeat() throws RegexSyntaxException {
+        Node atom = atom();
+        Type quantifier = null;
+        for (; pos < pattern.length(); ++pos) {
+            Type next;
+            switch (pattern.charAt(pos)) {
+                case '*':
+                    next = Type.STAR;
+                    break;
+                case '+':
+                    next = Type.PLUS;
+                    break;
+                case '?':
+                    next = Type.OPTIONAL;
+                    break;
+                default:
+                    return quantifier != null ? new Node(quantifier, new Node[]{atom}, null) : atom;
+            }
+            quantifier = quantifier == null || quantifier == next ? next : Type.STAR;
+        }
+        return quantifier != null ? new Node(quantifier, new Node[]{atom}, null) : atom;
+    }
+
+    private Node atom() throws RegexSyntaxException {
+        char c = pattern.charAt(pos);
+        switch (c) {
+            case '(':
+                if (++depth > MAX_DEPTH) {
+                    throw new RegexSyntaxException("Groups nested deeper than " + MAX_DEPTH, pos);
+                }
+                int open = pos++;
+                Node group = union();
+                if (pos >= pattern.length()) {
+                    throw new RegexSyntaxException("Unmatched (", open);
+                }
+                ++pos;
+                --depth;
+                return group;
+            case '[':
+                return symbolClass();
+            case '.':
+                ++pos;
+                int[] all = new int[symbols.length];
+                for (int i = 0; i < all.length; ++i) {
+                    all[i] = i;
+                }
+                return new Node(Type.SYMBOLS, null, all);
+            case '*':
+            case '+':
+            case '?':
+                throw new RegexSyntaxException("Nothing to repeat", pos);
+            case ']':
+                throw new RegexSyntaxException("Unmatched ]", pos);
+            case '\\':
+                if (++pos >= pattern.length()) {
+                    throw new RegexSyntaxException("Trailing \\", pos - 1);
+                }
+                return new Node(Type.SYMBOLS, null, new int[]{symbol()});
+            default:
+                if (tokenizer.match(pattern, pos) == Tokenizer.NO_MATCH
+                        && pattern.startsWith(SymbolTable.EPSILON_SYMBOL, pos)) {
+                    pos += SymbolTable.EPSILON_SYMBOL.length();
+                    return new Node(Type.EMPTY, null, null);
+                }
+                return new Node(Type.SYMBOLS, null, new int[]{symbol()});
+        }
+    }
+
+    private Node symbolClass() throws RegexSyntaxException {
+        int open = pos++;
+        boolean negated = pos < pattern.length() && pattern.charAt(pos) == '^';
+        if (negated) {
+            ++pos;
+        }
+        boolean[] selected = new boolean[symbols.length];
+        while (pos >= pattern.length() || pattern.charAt(pos) != ']') {
+            if (pos >= pattern.length()) {
+                throw new RegexSyntaxException("Unmatched [", open);
+            }
+            if (pattern.charAt(pos) == '\\' && ++pos >= pattern.length()) {
+                throw new RegexSyntaxException("Trailing \\", pos - 1);
+            }
+            int from = symbol();
+            int to = from;
+            if (pos + 1 < pattern.length() && pattern.charAt(pos) == '-' && pattern.charAt(pos + 1) != ']') {
+                int range = pos++;
+                if (pattern.charAt(pos) == '\\' && ++pos >= pattern.length()) {
+                    throw new RegexSyntaxException("Trailing \\", pos - 1);
+                }
+                to = symbol();
+                if (to < from) {
+                    throw new RegexSyntaxException("Invalid range", range);
+                }
+            }
+            Arrays.fill(selected, from, to + 1, true);
+        }
+        ++pos;
+        int count = 0;
+        int[] ids = new int[symbols.length];
+        for (int i = 0; i < symbols.length; ++i) {
+            if (selected[i] != negated) {
+                ids[count++] = i;
+            }
+        }
+        return new Node(Type.SYMBOLS, null, Arrays.copyOf(ids, count));
+    }
+
+    private int symbol() throws RegexSyntaxException {
+        long match = tokenizer.match(pattern, pos);
+        if (match == Tokenizer.NO_MATCH) {
+            throw new RegexSyntaxException("No alphabet symbol matches", pos);
+        }
+        pos += Tokenizer.length(match);
+        return Tokenizer.symbol(match);
+    }
+
+    private int build(Node node, int start) {
+        switch (node.type) {
+            case SYMBOLS: {
+                int end = newState();
+                for (int symbol : node.symbols) {
+                    addEdge(start, end, symbol);
+                }
+                return end;
+            }
+            case CONCAT: {
+                int end = start;
+                for (Node child : node.children) {
+                    end = build(child, end);
+                }
+                return end;
+            }
+            case UNION: {
+                int end = newState();
+                for (Node child : node.children) {
+                    addEdge(build(child, start), end, Machine.EPSILON);
+                }
+                return end;
+            }
+            case STAR: {
+                int loop = newState();
+                addEdge(start, loop, Machine.EPSILON);
+                int end = build(node.children[0], loop);
+                if (end != loop) {
+                    addEdge(end, loop, Machine.EPSILON);
+                }
+                return loop;
+            }
+            case PLUS: {
+                int loop = newState();
+                addEdge(start, loop, Machine.EPSILON);
+                int end = build(node.children[0], loop);
+                if (end != loop) {
+                    addEdge(end, loop, Machine.EPSILON);
+                }
+                return end;
+            }
+            case OPTIONAL: {
+                int end = build(node.children[0], start);
+                if (end == start) {
+                    return start;
+                }
+                int skip = newState();
+                addEdge(start, skip, Machine.EPSILON);
+                addEdge(end, skip, Machine.EPSILON);
+                return skip;
+            }
+            default:
+                return start;
+        }
+    }
+
+    private int newState() {
+        return stateCount++;
+    }
+
+    private void addEdge(int from, int to, int symbol) {
+        if (edgeCount == edgeFrom.length) {
+            edgeFrom = Arrays.copyOf(edgeFrom, 2 * edgeCount);
+            edgeTo = Arrays.copyOf(edgeTo, 2 * edgeCount);
+            edgeSymbol = Arrays.copyOf(edgeSymbol, 2 * edgeCount);
+        }
+        edgeFrom[edgeCount] = from;
+        edgeTo[edgeCount] = to;
+        edgeSymbol[edgeCount++] = symbol;
+    }
+}
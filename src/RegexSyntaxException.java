@@ -0,0 +1,15 @@
+public class RegexSyntaxException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int position;
+
+    RegexSyntaxException(String message, int position) {
+        super(message + " at position " + position);
+        this.position = position;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+public class SpatialGrid<T> {
+
+    private final double cellSize;
+    private final Map<Long, List<T>> cells = new HashMap<>();
+    private final Map<T, long[]> occupied = new IdentityHashMap<>();
+
+    SpatialGrid(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int column, int row) {
+        return (long) column << 32 | (row & 0xffffffffL);
+    }
+
+    public void putBox(T item, double minX, double minY, double maxX, double maxY) {
+        remove(item);
+        int minColumn = cell(minX);
+        int maxColumn = cell(maxX);
+        int minRow = cell(minY);
+        int maxRow = cell(maxY);
+        long[] keys = new long[(maxColumn - minColumn + 1) * (maxRow - minRow + 1)];
+        int i = 0;
+        for (int column = minColumn; column <= maxColumn; ++column) {
+            for (int row = minRow; row <= maxRow; ++row) {
+                keys[i++] = key(column, row);
+            }
+        }
+        insert(item, keys);
+    }
+
+    public void putSegment(T item, double x1, double y1, double x2, double y2, double margin) {
+        remove(item);
+        Set<Long> keys = new LinkedHashSet<>();
+        int samples = (int) Math.ceil(Math.hypot(x2 - x1, y2 - y1) / (cellSize / 2)) + 1;
+        for (int sample = 0; sample <= samples; ++sample) {
+            double x = x1 + (x2 - x1) * sample / samples;
+            double y = y1 + (y2 - y1) * sample / samples;
+            for (int column = cell(x - margin); column <= cell(x + margin); ++column) {
+                for (int row = cell(y - margin); row <= cell(y + margin); ++row) {
+                    keys.add(key(column, row));
+                }
+            }
+        }
+        insert(item, keys.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    private void insert(T item, long[] keys) {
+        for (long key : keys) {
+            cells.computeIfAbsent(key, k -> new ArrayList<>()).add(item);
+        }
+        occupied.put(item, keys);
+    }
+
+    public void remove(T item) {
+        long[] keys = occupied.remove(item);
+        if (keys != null) {
+            for (long key : keys) {
+                List<T> items = cells.get(key);
+                for (int i = 0; i < items.size(); ++i) {
+                    if (items.get(i) == item) {
+                        items.set(i, items.get(items.size() - 1));
+                        items.remove(items.size() - 1);
+                        break;
+                    }
+                }
+                if (items.isEmpty()) {
+                    cells.remove(key);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        cells.clear();
+        occupied.clear();
+    }
+
+    public T find(double x, double y, Predicate<? super T> hit) {
+        List<T> items = cells.get(key(cell(x), cell(y)));
+        if (items != null) {
+            for (T item : items) {
+                if (hit.test(item)) {
+                    return item;
+                }
+            }
+        }
+        return null;
+    }
+
+    public void query(double minX, double minY, double maxX, double maxY, Consumer<? super T> action) {
+        Set<T> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int column = cell(minX); column <= cell(maxX); ++column) {
+            for (int row = cell(minY); row <= cell(maxY); ++row) {
+                List<T> items = cells.get(key(column, row));
+                if (items != null) {
+                    for (T item : items) {
+                        if (visited.add(item)) {
+                            action.accept(item);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -8,6 +8,10 @@ import java.util.Set;
 
 public class State implements Drawable, Serializable {
 
+    private static final long serialVersionUID = -8836282822966136400L;
+
+    static final double DEFAULT_RADIUS = 24;
+
     private String name;
     private boolean isAccepting = false;
     private transient boolean isStarting = false;
@@ -16,7 +20,7 @@ public class State implements Drawable, Serializable {
     private transient boolean isActive = false;
     private double x;
     private double y;
-    private double radius = 24;
+    private double radius = DEFAULT_RADIUS;
     private transient Set<Transition> transitions = new HashSet<>();
 
     State(String name, double x, double y) {
@@ -27,30 +31,21 @@ public class State implements Drawable, Serializable {
 
     @Override
     public void draw(GraphicsContext gc) {
-        if (isActive) {
-            gc.setStroke(Color.RED);
-        } else if (drawingTransition) {
-            gc.setStroke(Color.GREEN);
-        } else if (isSelected) {
-            gc.setStroke(Color.BLUE);
-        } else {
-            gc.setStroke(Color.BLACK);
-        }
+        draw(gc, true);
+    }
+
+    public void draw(GraphicsContext gc, boolean labelled) {
+        Color color = color();
+        gc.setStroke(color);
         gc.setLineWidth(1);
         gc.strokeOval(x, y, radius * 2, radius * 2);
         if (isAccepting) {
             gc.strokeOval(x + 4, y + 4, radius * 2 - 8, radius * 2 - 8);
         }
-        if (isActive) {
-            gc.setFill(Color.RED);
-        } else if (drawingTransition) {
-            gc.setFill(Color.GREEN);
-        } else if (isSelected) {
-            gc.setFill(Color.BLUE);
-        } else {
-            gc.setFill(Color.BLACK);
+        gc.setFill(color);
+        if (labelled) {
+            gc.fillText(name, x + radius, y + radius);
         }
-        gc.fillText(name, x + radius, y + radius);
         if (isStarting) {
             double y = this.y + radius;
             gc.strokeLine(x - 16, y, x, y);
@@ -59,8 +54,27 @@ public class State implements Drawable, Serializable {
         }
     }
 
+    public void drawPoint(GraphicsContext gc, double size) {
+        gc.setFill(color());
+        gc.fillRect(x + radius - size / 2, y + radius - size / 2, size, size);
+    }
+
+    private Color color() {
+        if (isActive) {
+            return Color.RED;
+        } else if (drawingTransition) {
+            return Color.GREEN;
+        } else if (isSelected) {
+            return Color.BLUE;
+        } else {
+            return Color.BLACK;
+        }
+    }
+
     public boolean intersects(double x, double y) {
-        return Math.sqrt(Math.pow(x - this.x - radius, 2) + Math.pow(y - this.y - radius, 2)) <= radius;
+        double dx = x - this.x - radius;
+        double dy = y - this.y - radius;
+        return dx * dx + dy * dy <= radius * radius;
     }
 
     public String getName() {
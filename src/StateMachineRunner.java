@@ -1,74 +1,197 @@
 import java.util.HashSet;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
 public class StateMachineRunner {
 
+    private static final int CHECK_INTERVAL = 1 << 16;
+
     private Diagram diagram;
     private String word;
     private int pos;
-    private Stack<Set<State>> steps = new Stack<>();
+    private int[] symbols;
+    private int[] offsets;
+    private StepHistory steps;
+    private long historyLimit = 16 << 20;
     private Consumer<Set<State>> onStep;
+    private long compiledVersion = -1;
+    private State[] stateOrder;
+    private volatile Machine machine;
+    private boolean compiled;
+    private CompiledDfa dfa;
+    private volatile BitsetNfa nfa;
+    private Stepper stepper;
+    private LazyDfa lazyDfa;
+    private volatile long cacheLimit = 16 << 20;
+    private volatile LazyDfa.EvictionPolicy evictionPolicy = LazyDfa.EvictionPolicy.LRU;
 
     StateMachineRunner(Diagram diagram, Consumer<Set<State>> onStep) {
         this.diagram = diagram;
         this.onStep = onStep;
     }
 
-    private void transitiveClosure(State state, Set<State> states) {
-        if (state != null) {
-            states.add(state);
-            state.getTransitions().stream()
-                    .filter(t -> t.getSymbols().contains("ε"))
-                    .map(Transition::getStateTo)
-                    .filter(s -> !states.contains(s))
-                    .forEach(s -> transitiveClosure(s, states));
+    private void snapshot() {
+        if (compiledVersion != diagram.getVersion()) {
+            stateOrder = diagram.getStates().toArray(new State[0]);
+            Machine machine = Machine.of(stateOrder, diagram.getSymbolTable(), diagram.getStartingState());
+            synchronized (this) {
+                this.machine = machine;
+                compiled = false;
+                dfa = null;
+                lazyDfa = null;
+            }
+            compiledVersion = diagram.getVersion();
+        }
+    }
+
+    private BitsetNfa nfa(Machine machine) {
+        BitsetNfa nfa = this.nfa;
+        if (nfa == null || nfa.getMachine() != machine) {
+            nfa = BitsetNfa.compile(machine);
+            this.nfa = nfa;
         }
+        return nfa;
+    }
+
+    private CompiledDfa dfa(Machine machine, BooleanSupplier cancelled) {
+        synchronized (this) {
+            if (compiled && machine == this.machine) {
+                return dfa;
+            }
+        }
+        CompiledDfa dfa = CompiledDfa.compile(machine);
+        if (dfa != null) {
+            dfa = dfa.minimize(cancelled);
+        }
+        synchronized (this) {
+            if (machine == this.machine) {
+                this.dfa = dfa;
+                compiled = true;
+            }
+        }
+        return dfa;
+    }
+
+    private synchronized LazyDfa acquireLazyDfa(Machine machine) {
+        LazyDfa lazyDfa = machine == this.machine ? this.lazyDfa : null;
+        this.lazyDfa = null;
+        return lazyDfa;
     }
 
-    public void setUp(String word) {
-        steps = new Stack<>();
+    private synchronized void releaseLazyDfa(Machine machine, LazyDfa lazyDfa) {
+        if (machine == this.machine && this.lazyDfa == null && lazyDfa.getMemoryLimit() == cacheLimit
+                && lazyDfa.getEvictionPolicy() == evictionPolicy) {
+            this.lazyDfa = lazyDfa;
+        }
+    }
+
+    private boolean accepts(Machine machine, int[] symbols, ExecutionService.Execution execution) {
+        BooleanSupplier cancelled = execution != null ? execution::isCancelled : () -> false;
+        CompiledDfa dfa = dfa(machine, cancelled);
+        if (dfa != null) {
+            return execution != null ? run(dfa.cursor(), symbols, execution) : dfa.accepts(symbols);
+        }
+        LazyDfa lazyDfa = acquireLazyDfa(machine);
+        if (lazyDfa == null) {
+            BitsetNfa nfa = nfa(machine);
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            lazyDfa = new LazyDfa(nfa, cacheLimit, evictionPolicy);
+        }
+        try {
+            return execution != null ? run(lazyDfa.cursor(), symbols, execution) : lazyDfa.accepts(symbols);
+        } finally {
+            releaseLazyDfa(machine, lazyDfa);
+        }
+    }
+
+    private static boolean run(Cursor cursor, int[] symbols, ExecutionService.Execution execution) {
+        for (int i = 0; i < symbols.length; ++i) {
+            if (i % CHECK_INTERVAL == 0) {
+                execution.checkCancelled();
+                execution.updateProgress(i, symbols.length);
+            }
+            if (!cursor.step(symbols[i])) {
+                break;
+            }
+        }
+        return cursor.isAccepting();
+    }
+
+    private Set<State> toStates(long[] step) {
+        Set<State> states = new HashSet<>();
+        stepper.forEach(step, s -> states.add(stateOrder[s]));
+        return states;
+    }
+
+    public void setUp(String word) throws TokenizationException {
+        snapshot();
+        int[] offsets = new int[word.length() + 1];
+        int[] symbols = machine.getTokenizer().tokenize(word, offsets);
+        CompiledDfa dfa = CompiledDfa.compile(machine);
+        stepper = dfa != null ? dfa : nfa(machine);
+        this.offsets = offsets;
+        this.symbols = symbols;
+        steps = new StepHistory(stepper, symbols, historyLimit);
         this.word = word;
-        pos = 0;
-        Set<State> step = new HashSet<>();
-        transitiveClosure(diagram.getStartingState(), step);
-        steps.push(step);
-        onStep.accept(step);
+        seek(0);
     }
 
     public void stepForward() {
-        if (pos < word.length()) {
-            Set<State> nextStates = steps.peek().stream()
-                    .flatMap(s -> s.getTransitions().stream())
-                    .filter(t -> t.getSymbols().contains(word.substring(pos, pos + 1)))
-                    .map(Transition::getStateTo)
-                    .collect(Collectors.toSet());
-            Set<State> step = new HashSet<>();
-            nextStates.forEach(s -> transitiveClosure(s, step));
-            steps.push(step);
-            onStep.accept(step);
-            ++pos;
+        if (steps.getPosition() < steps.getLength()) {
+            seek(steps.getPosition() + 1);
         }
     }
 
     public void stepBack() {
-        if (pos > 0) {
-            steps.pop();
-            onStep.accept(steps.peek());
-            --pos;
+        if (steps.getPosition() > 0) {
+            seek(steps.getPosition() - 1);
         }
     }
 
-    public boolean run(String word) {
-        setUp(word);
-        while (pos < this.word.length() && !steps.peek().isEmpty()) {
-            stepForward();
-        }
-        Set<State> step = steps.pop();
-        steps = new Stack<>();
-        return step.stream().anyMatch(State::isAccepting);
+    public void seek(int step) {
+        onStep.accept(toStates(steps.seek(step)));
+        pos = offsets[step];
+    }
+
+    public boolean run(String word) throws TokenizationException {
+        snapshot();
+        return accepts(machine, machine.getTokenizer().tokenize(word, null), null);
+    }
+
+    public ExecutionService.Job<Boolean> runJob(String word) {
+        snapshot();
+        Machine machine = this.machine;
+        return execution -> accepts(machine, machine.getTokenizer().tokenize(word, null), execution);
+    }
+
+    public void setHistoryLimit(long historyLimit) {
+        this.historyLimit = historyLimit;
+    }
+
+    public synchronized void setCacheLimit(long cacheLimit) {
+        this.cacheLimit = cacheLimit;
+        lazyDfa = null;
+    }
+
+    public synchronized void setEvictionPolicy(LazyDfa.EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+        lazyDfa = null;
+    }
+
+    public synchronized LazyDfa getLazyDfa() {
+        return lazyDfa;
+    }
+
+    public int getStep() {
+        return steps.getPosition();
+    }
+
+    public int getStepCount() {
+        return steps.getLength();
     }
 
     public int getPos() {
@@ -0,0 +1,91 @@
+public class StepHistory {
+
+    private final Stepper stepper;
+    private final int[] symbols;
+    private final int interval;
+    private final long[][] checkpoints;
+    private int checkpointed;
+    private final long[][] cache;
+    private int cacheStart;
+    private int cacheLength;
+    private long[] current;
+    private int position;
+
+    StepHistory(Stepper stepper, int[] symbols, long memoryLimit) {
+        this.stepper = stepper;
+        this.symbols = symbols;
+        long setSize = 16 + 8L * stepper.newSet().length;
+        long sets = Math.max(4, memoryLimit / setSize);
+        long positions = symbols.length + 1L;
+        interval = (int) Math.max(1, (positions + sets / 2 - 1) / (sets / 2));
+        checkpoints = new long[(int) ((positions + interval - 1) / interval)][];
+        cache = new long[(int) Math.max(1, Math.min(interval, sets - checkpoints.length))][];
+        checkpoints[0] = stepper.newSet();
+        stepper.start(checkpoints[0]);
+        checkpointed = 1;
+        current = checkpoints[0].clone();
+    }
+
+    public long[] seek(int position) {
+        if (position < 0 || position > symbols.length) {
+            throw new IndexOutOfBoundsException("Position " + position + " outside 0.." + symbols.length);
+        }
+        if (position >= cacheStart && position < cacheStart + cacheLength) {
+            current = cache[position - cacheStart];
+        } else if (position > this.position
+                && (position - this.position <= interval || position / interval >= checkpointed)) {
+            int from = this.position;
+            int checkpoint = Math.min(position / interval, checkpointed - 1);
+            if (checkpoint * interval > from) {
+                from = checkpoint * interval;
+                current = checkpoints[checkpoint];
+            }
+            for (int i = from + 1; i <= position; ++i) {
+                long[] next = stepper.newSet();
+                stepper.step(current, symbols[i - 1], next);
+                if (i % interval == 0 && i / interval == checkpointed) {
+                    checkpoints[checkpointed++] = next;
+                }
+                current = next;
+            }
+        } else if (position != this.position) {
+            replay(position);
+        }
+        this.position = position;
+        return current;
+    }
+
+    private void replay(int position) {
+        int checkpoint = Math.min(position / interval, checkpointed - 1);
+        int from = checkpoint * interval;
+        cacheStart = Math.max(from, position - cache.length + 1);
+        cacheLength = 0;
+        long[] set = checkpoints[checkpoint];
+        for (int i = from; i <= position; ++i) {
+            if (i > from) {
+                long[] next = stepper.newSet();
+                stepper.step(set, symbols[i - 1], next);
+                if (i % interval == 0 && i / interval == checkpointed) {
+                    checkpoints[checkpointed++] = next;
+                }
+                set = next;
+            }
+            if (i >= cacheStart) {
+                cache[cacheLength++] = set;
+            }
+        }
+        current = set;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public int getLength() {
+        return symbols.length;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+}
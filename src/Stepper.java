@@ -0,0 +1,12 @@
+import java.util.function.IntConsumer;
+
+public interface Stepper {
+
+    long[] newSet();
+
+    void start(long[] set);
+
+    void step(long[] from, int symbol, long[] to);
+
+    void forEach(long[] set, IntConsumer action);
+}
@@ -0,0 +1,164 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+
+public class StreamingRunner {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long MAPPING_SIZE = 1 << 26;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java StreamingRunner <machine.fsm> [<input>|-]");
+            System.exit(2);
+        }
+        Machine machine = FileHandler.load(new File(args[0]));
+        StreamingRunner runner = new StreamingRunner(machine, StandardCharsets.UTF_8);
+        if (!machine.getTokenizer().isPrefixFree()) {
+            System.err.println("Warning: some alphabet symbols are prefixes of others; "
+                    + "the input is split by longest match without backtracking");
+        }
+        LongConsumer onAccepting = offset -> System.out.println("accepting at " + offset);
+        try {
+            boolean accepted = args.length > 1 && !args[1].equals("-")
+                    ? runner.accepts(new File(args[1]).toPath(), onAccepting)
+                    : runner.accepts(System.in, onAccepting);
+            System.out.println(accepted ? "accept" : "reject");
+        } catch (TokenizationException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private final Tokenizer tokenizer;
+    private final Cursor cursor;
+    private final Charset charset;
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private CharsetDecoder decoder;
+    private LongConsumer onAccepting;
+    private long offset;
+    private boolean accepting;
+    private boolean alive;
+
+    StreamingRunner(Machine machine, Charset charset) {
+        this.tokenizer = machine.getTokenizer();
+        this.charset = charset;
+        CompiledDfa dfa = CompiledDfa.compile(machine);
+        cursor = dfa != null ? dfa.minimize().cursor()
+                : new LazyDfa(BitsetNfa.compile(machine), 16 << 20, LazyDfa.EvictionPolicy.LRU).cursor();
+    }
+
+    private void begin(LongConsumer onAccepting) {
+        this.onAccepting = onAccepting;
+        decoder = charset.newDecoder();
+        chars.clear();
+        cursor.reset();
+        offset = 0;
+        accepting = cursor.isAccepting();
+        alive = true;
+        if (accepting && onAccepting != null) {
+            onAccepting.accept(0);
+        }
+    }
+
+    private void decode(ByteBuffer bytes, boolean endOfInput) throws IOException, TokenizationException {
+        CoderResult result;
+        do {
+            result = decoder.decode(bytes, chars, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            consume(false);
+        } while (result.isOverflow() && alive);
+        if (endOfInput && alive) {
+            while (decoder.flush(chars).isOverflow()) {
+                consume(false);
+            }
+            consume(true);
+        }
+    }
+
+    private void consume(boolean endOfInput) throws TokenizationException {
+        chars.flip();
+        while (chars.hasRemaining() && alive) {
+            if (!endOfInput && chars.remaining() < tokenizer.getMaxLength()) {
+                break;
+            }
+            long match = tokenizer.match(chars, 0);
+            if (match == Tokenizer.NO_MATCH) {
+                alive = false;
+                throw new TokenizationException(offset);
+            }
+            chars.position(chars.position() + Tokenizer.length(match));
+            alive = cursor.step(Tokenizer.symbol(match));
+            offset += Tokenizer.length(match);
+            boolean nowAccepting = cursor.isAccepting();
+            if (nowAccepting && !accepting && onAccepting != null) {
+                onAccepting.accept(offset);
+            }
+            accepting = nowAccepting;
+        }
+        chars.compact();
+    }
+
+    public boolean accepts(InputStream in, LongConsumer onAccepting)
+            throws IOException, TokenizationException {
+        return accepts(Channels.newChannel(in), onAccepting);
+    }
+
+    public boolean accepts(ReadableByteChannel channel, LongConsumer onAccepting)
+            throws IOException, TokenizationException {
+        begin(onAccepting);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        while (alive && channel.read(bytes) >= 0) {
+            bytes.flip();
+            decode(bytes, false);
+            bytes.compact();
+        }
+        if (alive) {
+            bytes.flip();
+            decode(bytes, true);
+        }
+        return alive && accepting;
+    }
+
+    public boolean accepts(Path file, LongConsumer onAccepting)
+            throws IOException, TokenizationException {
+        begin(onAccepting);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (alive && position < size) {
+                long length = Math.min(MAPPING_SIZE, size - position);
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean last = position + length == size;
+                decode(bytes, last);
+                if (!last && bytes.position() == 0) {
+                    throw new IOException("Undecodable input at byte " + position);
+                }
+                position += bytes.position();
+            }
+            if (alive && size == 0) {
+                decode(ByteBuffer.allocate(0), true);
+            }
+        }
+        return alive && accepting;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+}
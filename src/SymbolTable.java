@@ -0,0 +1,68 @@
+import java.util.*;
+
+public class SymbolTable {
+
+    public static final int EPSILON = 0;
+    public static final String EPSILON_SYMBOL = "ε";
+
+    private final List<String> symbols = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private long[] alphabet = new long[1];
+    private Set<String> alphabetSymbols = Collections.emptySet();
+
+    SymbolTable() {
+        intern(EPSILON_SYMBOL);
+    }
+
+    public int intern(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id == null) {
+            id = symbols.size();
+            symbols.add(symbol);
+            ids.put(symbol, id);
+        }
+        return id;
+    }
+
+    public int getId(String symbol) {
+        Integer id = ids.get(symbol);
+        return id != null ? id : -1;
+    }
+
+    public String getSymbol(int id) {
+        return symbols.get(id);
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+
+    public boolean isInAlphabet(int id) {
+        return id >>> 6 < alphabet.length && (alphabet[id >>> 6] & 1L << id) != 0;
+    }
+
+    public Set<String> getAlphabet() {
+        return alphabetSymbols;
+    }
+
+    void reset() {
+        Set<String> alphabet = alphabetSymbols;
+        symbols.clear();
+        ids.clear();
+        intern(EPSILON_SYMBOL);
+        setAlphabet(alphabet);
+    }
+
+    void setAlphabet(Set<String> alphabet) {
+        long[] bits = new long[1];
+        for (String symbol : alphabet) {
+            int id = intern(symbol);
+            if (id >>> 6 >= bits.length) {
+                bits = Arrays.copyOf(bits, Math.max(bits.length * 2, (id >>> 6) + 1));
+            }
+            bits[id >>> 6] |= 1L << id;
+        }
+        this.alphabet = bits;
+        this.alphabetSymbols = Collections.unmodifiableSet(new HashSet<>(alphabet));
+    }
+}
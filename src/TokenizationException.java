@@ -0,0 +1,15 @@
+public class TokenizationException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long position;
+
+    TokenizationException(long position) {
+        super("The input does not match any alphabet symbol at position " + position);
+        this.position = position;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.*;
+
+public class Tokenizer {
+
+    public static final long NO_MATCH = -1;
+
+    private final int[] childStart;
+    private final char[] labels;
+    private final int[] children;
+    private final int[] symbols;
+    private final int maxLength;
+    private final boolean prefixFree;
+
+    Tokenizer(String[] alphabet) {
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> terminals = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        terminals.add(Machine.NO_SYMBOL);
+        int maxLength = 0;
+        for (int symbol = 0; symbol < alphabet.length; ++symbol) {
+            int node = 0;
+            for (char c : alphabet[symbol].toCharArray()) {
+                Integer child = trie.get(node).get(c);
+                if (child == null) {
+                    child = trie.size();
+                    trie.get(node).put(c, child);
+                    trie.add(new TreeMap<>());
+                    terminals.add(Machine.NO_SYMBOL);
+                }
+                node = child;
+            }
+            terminals.set(node, symbol);
+            maxLength = Math.max(maxLength, alphabet[symbol].length());
+        }
+        this.maxLength = maxLength;
+        childStart = new int[trie.size() + 1];
+        symbols = new int[trie.size()];
+        boolean prefixFree = true;
+        for (int node = 0; node < trie.size(); ++node) {
+            childStart[node + 1] = childStart[node] + trie.get(node).size();
+            symbols[node] = terminals.get(node);
+            prefixFree &= symbols[node] == Machine.NO_SYMBOL || trie.get(node).isEmpty();
+        }
+        this.prefixFree = prefixFree;
+        labels = new char[childStart[trie.size()]];
+        children = new int[childStart[trie.size()]];
+        for (int node = 0; node < trie.size(); ++node) {
+            int i = childStart[node];
+            for (Map.Entry<Character, Integer> edge : trie.get(node).entrySet()) {
+                labels[i] = edge.getKey();
+                children[i++] = edge.getValue();
+            }
+        }
+    }
+
+    private int child(int node, char c) {
+        int i = Arrays.binarySearch(labels, childStart[node], childStart[node + 1], c);
+        return i >= 0 ? children[i] : -1;
+    }
+
+    public long match(CharSequence input, int pos) {
+        long match = NO_MATCH;
+        int node = 0;
+        for (int i = pos, length = input.length(); i < length; ++i) {
+            node = child(node, input.charAt(i));
+            if (node < 0) {
+                break;
+            }
+            if (symbols[node] != Machine.NO_SYMBOL) {
+                match = (long) (i + 1 - pos) << 32 | symbols[node];
+            }
+        }
+        return match;
+    }
+
+    public static int symbol(long match) {
+        return (int) match;
+    }
+
+    public static int length(long match) {
+        return (int) (match >>> 32);
+    }
+
+    public int[] tokenize(CharSequence input, int[] offsets) throws TokenizationException {
+        int[] tokens = new int[input.length()];
+        int count = 0;
+        int pos = 0;
+        while (pos < input.length()) {
+            long match = match(input, pos);
+            if (match == NO_MATCH) {
+                if (prefixFree) {
+                    throw new TokenizationException(pos);
+                }
+                return backtrack(input, offsets, pos);
+            }
+            if (offsets != null) {
+                offsets[count] = pos;
+            }
+            tokens[count++] = symbol(match);
+            pos += length(match);
+        }
+        if (offsets != null) {
+            offsets[count] = pos;
+        }
+        return Arrays.copyOf(tokens, count);
+    }
+
+    private int[] backtrack(CharSequence input, int[] offsets, int failure) throws TokenizationException {
+        int length = input.length();
+        BitSet complete = new BitSet(length + 1);
+        complete.set(length);
+        for (int pos = length - 1; pos >= 0; --pos) {
+            int node = 0;
+            for (int i = pos; i < length && !complete.get(pos); ++i) {
+                node = child(node, input.charAt(i));
+                if (node < 0) {
+                    break;
+                }
+                if (symbols[node] != Machine.NO_SYMBOL && complete.get(i + 1)) {
+                    complete.set(pos);
+                }
+            }
+        }
+        if (!complete.get(0)) {
+            throw new TokenizationException(failure);
+        }
+        int[] tokens = new int[length];
+        int count = 0;
+        int pos = 0;
+        while (pos < length) {
+            int symbol = Machine.NO_SYMBOL;
+            int next = pos;
+            int node = 0;
+            for (int i = pos; i < length; ++i) {
+                node = child(node, input.charAt(i));
+                if (node < 0) {
+                    break;
+                }
+                if (symbols[node] != Machine.NO_SYMBOL && complete.get(i + 1)) {
+                    symbol = symbols[node];
+                    next = i + 1;
+                }
+            }
+            if (offsets != null) {
+                offsets[count] = pos;
+            }
+            tokens[count++] = symbol;
+            pos = next;
+        }
+        if (offsets != null) {
+            offsets[count] = pos;
+        }
+        return Arrays.copyOf(tokens, count);
+    }
+
+    public boolean isPrefixFree() {
+        return prefixFree;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+}
@@ -1,90 +1,211 @@
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
-import java.io.Serializable;
-import java.util.HashSet;
-import java.util.Objects;
-import java.util.Set;
+import java.io.*;
+import java.util.*;
+import java.util.function.IntConsumer;
 
 public class Transition implements Drawable, Serializable {
 
+    private static final long serialVersionUID = -6859755737887561930L;
+    private static final double LOOP_COS = Math.cos(-2 * Math.PI / 3);
+    private static final double LOOP_SIN = Math.sin(-2 * Math.PI / 3);
+    private static final double[] LOOP_ARROW = {
+            -4 * Math.cos(Math.toRadians(-25)) + 8 * Math.sin(Math.toRadians(-25)),
+            -4 * Math.sin(Math.toRadians(-25)) - 8 * Math.cos(Math.toRadians(-25)),
+            4 * Math.cos(Math.toRadians(-25)) + 8 * Math.sin(Math.toRadians(-25)),
+            4 * Math.sin(Math.toRadians(-25)) - 8 * Math.cos(Math.toRadians(-25))
+    };
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("stateFrom", State.class),
+            new ObjectStreamField("stateTo", State.class),
+            new ObjectStreamField("symbols", Set.class)
+    };
+
     private State stateFrom;
     private State stateTo;
-    private Set<String> symbols = new HashSet<>();
-
-    Transition(State stateFrom, State stateTo, Set<String> symbols) {
-        this.stateFrom = stateFrom;
-        this.stateTo = stateTo;
-        this.symbols = symbols;
-    }
+    private transient SymbolTable table;
+    private transient long[] symbols;
+    private transient boolean bidirectional;
+    private transient Geometry geometry;
+    private transient String label;
+    private transient boolean labelMeasured;
+    private transient double labelWidth;
+    private transient double labelHeight;
 
-    Transition(State stateFrom, State stateTo, String symbol) {
+    Transition(State stateFrom, State stateTo, SymbolTable table, int symbol) {
         this.stateFrom = stateFrom;
         this.stateTo = stateTo;
-        symbols.add(symbol);
+        this.table = table;
+        this.symbols = new long[(symbol >>> 6) + 1];
+        addSymbol(symbol);
     }
 
     @Override
     public void draw(GraphicsContext gc) {
+        draw(gc, true, true);
+    }
+
+    public void draw(GraphicsContext gc, boolean arrowheads, boolean labelled) {
         gc.setStroke(Color.BLACK);
         gc.setFill(Color.BLACK);
         gc.setLineWidth(1);
+        String label = getLabel();
+        Geometry g = geometry();
         if (stateFrom.equals(stateTo)) {
-            double x = stateFrom.getX() + stateFrom.getRadius() + stateFrom.getRadius() * Math.cos(-2 * Math.PI / 3);
-            double y = stateFrom.getY() + stateFrom.getRadius() + stateFrom.getRadius() * Math.sin(-2 * Math.PI / 3);
-            gc.save();
-            gc.translate(x, y);
+            double radius = stateFrom.getRadius();
             gc.beginPath();
-            gc.moveTo(0, 0);
-            gc.arcTo(stateFrom.getRadius() / 2, -stateFrom.getRadius(), stateFrom.getRadius(), 0, stateFrom.getRadius() / 2);
-            gc.lineTo(stateFrom.getRadius(), 0);
-            gc.translate(stateFrom.getRadius(), 0);
-            gc.rotate(-25);
-            gc.lineTo(- 4, -8);
-            gc.moveTo(0, 0);
-            gc.lineTo(4, -8);
+            gc.moveTo(g.x1, g.y1);
+            gc.arcTo(g.x1 + radius / 2, g.y1 - radius, g.x2, g.y2, radius / 2);
+            gc.lineTo(g.x2, g.y2);
+            if (arrowheads) {
+                gc.lineTo(g.arrowX1, g.arrowY1);
+                gc.moveTo(g.x2, g.y2);
+                gc.lineTo(g.arrowX2, g.arrowY2);
+            }
             gc.stroke();
             gc.closePath();
-            gc.restore();
-            gc.fillText(String.join(", ", symbols), x + stateFrom.getRadius() / 2, y - stateFrom.getRadius() / 2 - 12);
+            if (labelled) {
+                gc.fillText(label, g.labelX, g.labelY);
+            }
         } else {
-            double x1, y1, x2, y2;
-            double angle = -Math.atan2(stateTo.getX() + stateTo.getRadius() - stateFrom.getX() - stateFrom.getRadius(),
-                    stateTo.getY() + stateTo.getRadius() - stateFrom.getY() - stateFrom.getRadius());
-            boolean bidirectional = false;
-            if (stateTo.getTransitions().stream().anyMatch(t -> t.getStateTo().equals(stateFrom))) {
-                bidirectional = true;
-                x1 = stateFrom.getX() + stateFrom.getRadius() + stateFrom.getRadius() * Math.cos(angle + Math.PI / 3);
-                y1 = stateFrom.getY() + stateFrom.getRadius() + stateFrom.getRadius() * Math.sin(angle + Math.PI / 3);
-                x2 = stateTo.getX() + stateTo.getRadius() + stateTo.getRadius() * Math.cos(angle - Math.PI / 3);
-                y2 = stateTo.getY() + stateTo.getRadius() + stateTo.getRadius() * Math.sin(angle - Math.PI / 3);
-            } else {
-                x1 = stateFrom.getX() + stateFrom.getRadius() + stateFrom.getRadius() * Math.cos(angle + Math.PI / 2);
-                y1 = stateFrom.getY() + stateFrom.getRadius() + stateFrom.getRadius() * Math.sin(angle + Math.PI / 2);
-                x2 = stateTo.getX() + stateTo.getRadius() + stateTo.getRadius() * Math.cos(angle - Math.PI / 2);
-                y2 = stateTo.getY() + stateTo.getRadius() + stateTo.getRadius() * Math.sin(angle - Math.PI / 2);
+            gc.strokeLine(g.x1, g.y1, g.x2, g.y2);
+            if (arrowheads) {
+                gc.strokeLine(g.x2, g.y2, g.arrowX1, g.arrowY1);
+                gc.strokeLine(g.x2, g.y2, g.arrowX2, g.arrowY2);
             }
-            gc.strokeLine(x1, y1, x2, y2);
-
-            double length = Math.sqrt(Math.pow(x2 - x1, 2) + Math.pow(y2 - y1, 2));
-            angle = -Math.atan2(x2 - x1, y2 - y1);
-            gc.save();
-            gc.translate(x1, y1);
-            if (stateTo.getX() - stateFrom.getX() > 0) {
-                gc.rotate(Math.toDegrees(angle + Math.PI / 2));
-                gc.fillText(String.join(", ", symbols), length / 2, -16);
-                gc.strokeLine(length, 0, length - 8, 4);
-                gc.strokeLine(length, 0, length - 8, -4);
-            } else {
-                gc.rotate(Math.toDegrees(angle - Math.PI / 2));
-                gc.fillText(String.join(", ", symbols), -length / 2, bidirectional ? 16 : -16);
-                gc.strokeLine(-length, 0, -length + 8, 4);
-                gc.strokeLine(-length, 0, -length + 8, -4);
+            if (labelled) {
+                gc.save();
+                gc.translate(g.x1, g.y1);
+                gc.rotate(g.rotation);
+                gc.fillText(label, g.labelX, g.labelY);
+                gc.restore();
             }
-            gc.restore();
         }
     }
 
+    private Geometry geometry() {
+        Geometry g = geometry;
+        if (g == null) {
+            g = geometry = new Geometry();
+        } else if (g.fromX == stateFrom.getX() && g.fromY == stateFrom.getY() && g.fromRadius == stateFrom.getRadius()
+                && g.toX == stateTo.getX() && g.toY == stateTo.getY() && g.toRadius == stateTo.getRadius()
+                && g.bidirectional == bidirectional) {
+            return g;
+        }
+        g.fromX = stateFrom.getX();
+        g.fromY = stateFrom.getY();
+        g.fromRadius = stateFrom.getRadius();
+        g.toX = stateTo.getX();
+        g.toY = stateTo.getY();
+        g.toRadius = stateTo.getRadius();
+        g.bidirectional = bidirectional;
+        if (stateFrom.equals(stateTo)) {
+            double radius = g.fromRadius;
+            g.x1 = g.fromX + radius + radius * LOOP_COS;
+            g.y1 = g.fromY + radius + radius * LOOP_SIN;
+            g.x2 = g.x1 + radius;
+            g.y2 = g.y1;
+            g.arrowX1 = g.x2 + LOOP_ARROW[0];
+            g.arrowY1 = g.y2 + LOOP_ARROW[1];
+            g.arrowX2 = g.x2 + LOOP_ARROW[2];
+            g.arrowY2 = g.y2 + LOOP_ARROW[3];
+            g.rotation = 0;
+            g.cos = 1;
+            g.sin = 0;
+            g.labelX = g.x1 + radius / 2;
+            g.labelY = g.y1 - radius / 2 - 12;
+            return g;
+        }
+        double angle = -Math.atan2(g.toX + g.toRadius - g.fromX - g.fromRadius, g.toY + g.toRadius - g.fromY - g.fromRadius);
+        double offset = bidirectional ? Math.PI / 3 : Math.PI / 2;
+        g.x1 = g.fromX + g.fromRadius + g.fromRadius * Math.cos(angle + offset);
+        g.y1 = g.fromY + g.fromRadius + g.fromRadius * Math.sin(angle + offset);
+        g.x2 = g.toX + g.toRadius + g.toRadius * Math.cos(angle - offset);
+        g.y2 = g.toY + g.toRadius + g.toRadius * Math.sin(angle - offset);
+        double dx = g.x2 - g.x1;
+        double dy = g.y2 - g.y1;
+        double length = Math.sqrt(dx * dx + dy * dy);
+        double ux = length > 0 ? dx / length : 1;
+        double uy = length > 0 ? dy / length : 0;
+        g.arrowX1 = g.x2 - 8 * ux - 4 * uy;
+        g.arrowY1 = g.y2 - 8 * uy + 4 * ux;
+        g.arrowX2 = g.x2 - 8 * ux + 4 * uy;
+        g.arrowY2 = g.y2 - 8 * uy - 4 * ux;
+        angle = -Math.atan2(dx, dy);
+        if (g.toX - g.fromX > 0) {
+            g.rotation = Math.toDegrees(angle + Math.PI / 2);
+            g.cos = ux;
+            g.sin = uy;
+            g.labelX = length / 2;
+            g.labelY = -16;
+        } else {
+            g.rotation = Math.toDegrees(angle - Math.PI / 2);
+            g.cos = -ux;
+            g.sin = -uy;
+            g.labelX = -length / 2;
+            g.labelY = bidirectional ? 16 : -16;
+        }
+        return g;
+    }
+
+    public String getLabel() {
+        if (label == null) {
+            label = String.join(", ", getSymbols());
+        }
+        return label;
+    }
+
+    public boolean isLabelMeasured() {
+        return labelMeasured;
+    }
+
+    void setLabelSize(double width, double height) {
+        labelWidth = width;
+        labelHeight = height;
+        labelMeasured = true;
+    }
+
+    public double[] getBounds() {
+        Geometry g = geometry();
+        double minX = Math.min(g.x1, g.x2);
+        double minY = Math.min(g.y1, g.y2);
+        double maxX = Math.max(g.x1, g.x2);
+        double maxY = Math.max(g.y1, g.y2);
+        double labelX;
+        double labelY;
+        if (stateFrom.equals(stateTo)) {
+            minY -= stateFrom.getRadius();
+            labelX = g.labelX;
+            labelY = g.labelY;
+        } else {
+            labelX = g.x1 + g.labelX * g.cos - g.labelY * g.sin;
+            labelY = g.y1 + g.labelX * g.sin + g.labelY * g.cos;
+        }
+        double halfWidth = labelWidth / 2 * Math.abs(g.cos) + labelHeight / 2 * Math.abs(g.sin);
+        double halfHeight = labelWidth / 2 * Math.abs(g.sin) + labelHeight / 2 * Math.abs(g.cos);
+        return new double[]{
+                Math.min(minX - 8, labelX - halfWidth) - 2,
+                Math.min(minY - 8, labelY - halfHeight) - 2,
+                Math.max(maxX + 8, labelX + halfWidth) + 2,
+                Math.max(maxY + 8, labelY + halfHeight) + 2
+        };
+    }
+
+    public boolean intersects(double x, double y) {
+        Geometry g = geometry();
+        if (stateFrom.equals(stateTo)) {
+            return x >= g.x1 && x <= g.x2 && y >= g.y1 - stateFrom.getRadius() && y <= g.y1;
+        }
+        double dx = g.x2 - g.x1;
+        double dy = g.y2 - g.y1;
+        double t = dx == 0 && dy == 0 ? 0 : ((x - g.x1) * dx + (y - g.y1) * dy) / (dx * dx + dy * dy);
+        t = Math.max(0, Math.min(1, t));
+        double distanceX = g.x1 + t * dx - x;
+        double distanceY = g.y1 + t * dy - y;
+        return distanceX * distanceX + distanceY * distanceY <= 16;
+    }
+
     public State getStateFrom() {
         return stateFrom;
     }
@@ -93,8 +214,93 @@ public class Transition implements Drawable, Serializable {
         return stateTo;
     }
 
-    public Set<String> getSymbols() {
-        return symbols;
+    public List<String> getSymbols() {
+        List<String> names = new ArrayList<>();
+        forEachSymbol(symbol -> names.add(table.getSymbol(symbol)));
+        return names;
+    }
+
+    public void forEachSymbol(IntConsumer action) {
+        for (int i = 0; i < symbols.length; ++i) {
+            long word = symbols[i];
+            while (word != 0) {
+                action.accept((i << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    public boolean hasSymbol(int symbol) {
+        return symbol >>> 6 < symbols.length && (symbols[symbol >>> 6] & 1L << symbol) != 0;
+    }
+
+    public int getSymbolCount() {
+        int count = 0;
+        for (long word : symbols) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public boolean hasSymbols() {
+        for (long word : symbols) {
+            if (word != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean addSymbol(int symbol) {
+        if (hasSymbol(symbol)) {
+            return false;
+        }
+        if (symbol >>> 6 >= symbols.length) {
+            symbols = Arrays.copyOf(symbols, (symbol >>> 6) + 1);
+        }
+        symbols[symbol >>> 6] |= 1L << symbol;
+        label = null;
+        labelMeasured = false;
+        return true;
+    }
+
+    boolean removeSymbol(int symbol) {
+        if (!hasSymbol(symbol)) {
+            return false;
+        }
+        symbols[symbol >>> 6] &= ~(1L << symbol);
+        label = null;
+        labelMeasured = false;
+        return true;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("stateFrom", stateFrom);
+        fields.put("stateTo", stateTo);
+        fields.put("symbols", new HashSet<>(getSymbols()));
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        stateFrom = (State) fields.get("stateFrom", null);
+        stateTo = (State) fields.get("stateTo", null);
+        table = new SymbolTable();
+        symbols = new long[1];
+        Set<String> names = (Set<String>) fields.get("symbols", null);
+        if (names != null) {
+            names.forEach(name -> addSymbol(table.intern(name)));
+        }
+    }
+
+    public boolean isBidirectional() {
+        return bidirectional;
+    }
+
+    void setBidirectional(boolean bidirectional) {
+        this.bidirectional = bidirectional;
     }
 
     @Override
@@ -104,6 +310,30 @@ public class Transition implements Drawable, Serializable {
         Transition that = (Transition) o;
         return Objects.equals(stateFrom, that.stateFrom) &&
                 Objects.equals(stateTo, that.stateTo) &&
-                Objects.equals(symbols, that.symbols);
+                getSymbols().equals(that.getSymbols());
+    }
+
+    private static class Geometry {
+
+        private double fromX;
+        private double fromY;
+        private double fromRadius;
+        private double toX;
+        private double toY;
+        private double toRadius;
+        private boolean bidirectional;
+        private double x1;
+        private double y1;
+        private double x2;
+        private double y2;
+        private double arrowX1;
+        private double arrowY1;
+        private double arrowX2;
+        private double arrowY2;
+        private double rotation;
+        private double cos;
+        private double sin;
+        private double labelX;
+        private double labelY;
     }
 }
@@ -0,0 +1,40 @@
+import java.io.*;
+import java.util.*;
+
+public class BatchRunnerTest {
+
+    static void testResultsMatchSequentialSimulation() throws Exception {
+        Random random = new Random(60);
+        for (int round = 0; round < 6; ++round) {
+            boolean deterministic = round % 2 == 0;
+            Machine machine = Tests.randomMachine(random, 1 + random.nextInt(30), 1 + random.nextInt(3), 1.2, 0.2,
+                    deterministic);
+            int count = round < 2 ? 140_000 : random.nextInt(2000);
+            List<int[]> words = new ArrayList<>(count);
+            StringBuilder input = new StringBuilder();
+            for (int i = 0; i < count; ++i) {
+                int[] word = Tests.randomWord(random, machine.getAlphabetSize(), random.nextInt(12));
+                words.add(word);
+                input.append(Tests.spell(machine, word)).append('\n');
+            }
+            StringWriter output = new StringWriter();
+            new BatchRunner(machine, 4).run(new BufferedReader(new StringReader(input.toString())), output);
+            String[] lines = output.toString().split("\n", -1);
+            Tests.checkEquals(count + 1, lines.length, "lines on round " + round);
+            for (int i = 0; i < count; ++i) {
+                String expected = (Tests.simulate(machine, words.get(i)) ? "accept\t" : "reject\t")
+                        + Tests.spell(machine, words.get(i));
+                if (!expected.equals(lines[i])) {
+                    Tests.checkEquals(expected, lines[i], "word " + i + " on round " + round);
+                }
+            }
+        }
+    }
+
+    static void testEmptyInput() throws Exception {
+        StringWriter output = new StringWriter();
+        new BatchRunner(Tests.machine("a", 1, 0, new int[]{0}), 2).run(new BufferedReader(new StringReader("")),
+                output);
+        Tests.checkEquals("", output.toString(), "output for no words");
+    }
+}
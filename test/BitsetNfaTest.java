@@ -0,0 +1,83 @@
+import java.util.*;
+
+public class BitsetNfaTest {
+
+    static void testEpsilonClosure() {
+        Machine machine = Tests.machine("a", 4, 0, new int[]{3}, "0 ε 1", "1 ε 2", "2 a 3", "3 ε 0");
+        BitsetNfa nfa = BitsetNfa.compile(machine);
+        long[] set = nfa.newSet();
+        nfa.start(set);
+        Tests.checkEquals(Arrays.asList(0, 1, 2), members(nfa, set), "start closure");
+        long[] next = nfa.newSet();
+        nfa.step(set, 0, next);
+        Tests.checkEquals(Arrays.asList(0, 1, 2, 3), members(nfa, next), "closure after a");
+        Tests.check(nfa.isAccepting(next), "accepting after a");
+        nfa.step(next, Machine.NO_SYMBOL, set);
+        Tests.check(nfa.isEmpty(set), "no symbol empties the set");
+    }
+
+    static void testAgreesWithSimulation() {
+        Random random = new Random(2);
+        for (int round = 0; round < 200; ++round) {
+            Machine machine = Tests.randomMachine(random, 1 + random.nextInt(150), 1 + random.nextInt(3), 1.3, 0.3,
+                    false);
+            check(machine, random, round);
+        }
+    }
+
+    static void testDenseClosures() {
+        Random random = new Random(3);
+        for (int round = 0; round < 20; ++round) {
+            int stateCount = 200 + random.nextInt(100);
+            Machine base = Tests.randomMachine(random, stateCount, 2, 1.5, 0, false);
+            List<String> edges = new ArrayList<>();
+            for (int edge = 0; edge < base.getEdgeCount(); ++edge) {
+                edges.add(base.getEdgeFrom(edge) + " " + base.getSymbol(base.getEdgeSymbol(edge)) + " "
+                        + base.getEdgeTo(edge));
+            }
+            for (int state = 0; state + 1 < stateCount; ++state) {
+                if (random.nextInt(3) > 0) {
+                    edges.add(state + " ε " + (state + 1));
+                }
+            }
+            int[] accepting = {stateCount - 1, random.nextInt(stateCount)};
+            check(Tests.machine("a,b", stateCount, 0, accepting, edges.toArray(new String[0])), random, round);
+        }
+    }
+
+    static void testLargeDeterministicMachine() {
+        int stateCount = 200000;
+        String[] edges = new String[2 * stateCount];
+        for (int state = 0; state < stateCount; ++state) {
+            edges[2 * state] = state + " a " + (state + 1) % stateCount;
+            edges[2 * state + 1] = state + " b " + (int) (3L * state % stateCount);
+        }
+        Machine machine = Tests.machine("a,b", stateCount, 0, new int[]{4, 6}, edges);
+        BitsetNfa nfa = BitsetNfa.compile(machine);
+        Tests.check(nfa.accepts("aaaa"), "accepts aaaa");
+        Tests.check(nfa.accepts("aab"), "accepts aab");
+        Tests.check(!nfa.accepts("aaa"), "rejects aaa");
+    }
+
+    private static void check(Machine machine, Random random, int round) {
+        BitsetNfa nfa = BitsetNfa.compile(machine);
+        for (int i = 0; i < 40; ++i) {
+            int[] word = Tests.randomWord(random, machine.getAlphabetSize(), random.nextInt(16));
+            boolean expected = Tests.simulate(machine, word);
+            Tests.checkEquals(expected, nfa.accepts(Tests.spell(machine, word)), "accepts(String) on round " + round);
+            Tests.checkEquals(expected, nfa.accepts(word, nfa.newSet(), nfa.newSet()),
+                    "accepts(int[]) on round " + round);
+            Cursor cursor = nfa.cursor();
+            for (int symbol : word) {
+                cursor.step(symbol);
+            }
+            Tests.checkEquals(expected, cursor.isAccepting(), "cursor on round " + round);
+        }
+    }
+
+    private static List<Integer> members(BitsetNfa nfa, long[] set) {
+        List<Integer> members = new ArrayList<>();
+        nfa.forEach(set, members::add);
+        return members;
+    }
+}
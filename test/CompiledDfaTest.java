@@ -0,0 +1,59 @@
+import java.util.Random;
+
+public class CompiledDfaTest {
+
+    static void testTable() {
+        Machine machine = Tests.machine("a,b", 3, 0, new int[]{2},
+                "0 a 1", "0 b 0", "1 a 1", "1 b 2", "2 a 1", "2 b 0");
+        CompiledDfa dfa = CompiledDfa.compile(machine);
+        Tests.check(dfa != null, "deterministic machine compiles");
+        Tests.checkEquals(1, dfa.step(0, 0), "0 --a--> 1");
+        Tests.checkEquals(2, dfa.step(1, 1), "1 --b--> 2");
+        Tests.check(dfa.accepts("ab"), "accepts ab");
+        Tests.check(dfa.accepts("bbaab"), "accepts bbaab");
+        Tests.check(!dfa.accepts(""), "rejects the empty word");
+        Tests.check(!dfa.accepts("aba"), "rejects aba");
+        Tests.check(!dfa.accepts("abc"), "rejects a word outside the alphabet");
+    }
+
+    static void testMissingTransitionIsDead() {
+        Machine machine = Tests.machine("a,b", 2, 0, new int[]{1}, "0 a 1");
+        CompiledDfa dfa = CompiledDfa.compile(machine);
+        Tests.checkEquals(CompiledDfa.DEAD, dfa.step(0, 1), "0 --b--> dead");
+        Tests.check(dfa.accepts("a"), "accepts a");
+        Tests.check(!dfa.accepts("ab"), "rejects ab");
+        Cursor cursor = dfa.cursor();
+        Tests.check(cursor.step(0) && cursor.isAccepting(), "cursor accepts after a");
+        Tests.check(!cursor.step(0), "cursor dies on a second a");
+        Tests.check(!cursor.step(Machine.NO_SYMBOL) && !cursor.isAccepting(), "cursor stays dead");
+        cursor.reset();
+        Tests.check(!cursor.isAccepting(), "cursor resets to the start");
+    }
+
+    static void testRejectsNondeterminism() {
+        Tests.check(CompiledDfa.compile(Tests.machine("a", 3, 0, new int[]{1}, "0 a 1", "0 a 2")) == null,
+                "two targets on one symbol");
+        Tests.check(CompiledDfa.compile(Tests.machine("a", 2, 0, new int[]{1}, "0 ε 1")) == null, "ε-transition");
+    }
+
+    static void testNoStart() {
+        CompiledDfa dfa = CompiledDfa.compile(Tests.machine("a", 1, -1, new int[]{0}, "0 a 0"));
+        Tests.check(!dfa.accepts("") && !dfa.accepts("aa"), "accepts nothing without a start state");
+    }
+
+    static void testAgreesWithSimulation() {
+        Random random = new Random(1);
+        for (int round = 0; round < 200; ++round) {
+            Machine machine = Tests.randomMachine(random, 1 + random.nextInt(40), 1 + random.nextInt(4), 0.9, 0,
+                    true);
+            CompiledDfa dfa = CompiledDfa.compile(machine);
+            for (int i = 0; i < 50; ++i) {
+                int[] word = Tests.randomWord(random, machine.getAlphabetSize(), random.nextInt(20));
+                boolean expected = Tests.simulate(machine, word);
+                Tests.checkEquals(expected, dfa.accepts(word), "accepts(int[]) on round " + round);
+                Tests.checkEquals(expected, dfa.accepts(Tests.spell(machine, word)), "accepts(String) on round "
+                        + round);
+            }
+        }
+    }
+}
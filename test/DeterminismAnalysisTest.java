@@ -0,0 +1,92 @@
+import java.util.*;
+
+public class DeterminismAnalysisTest {
+
+    static void testDiagnosticsMatchEdgeCounts() {
+        Random random = new Random(90);
+        int[][] sizes = {{1, 1}, {20, 3}, {300, 70}, {6000, 5}};
+        for (int[] size : sizes) {
+            Machine machine = randomMachine(random, size[0], size[1]);
+            List<DeterminismAnalysis.Diagnostic> diagnostics = DeterminismAnalysis.analyze(machine);
+            List<String> expected = new ArrayList<>();
+            for (int state = 0; state < machine.getStateCount(); ++state) {
+                int[] counts = new int[machine.getAlphabetSize()];
+                boolean epsilon = false;
+                for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+                    if (machine.getEdgeFrom(edge) == state) {
+                        if (machine.getEdgeSymbol(edge) == Machine.EPSILON) {
+                            epsilon = true;
+                        } else {
+                            ++counts[machine.getEdgeSymbol(edge)];
+                        }
+                    }
+                }
+                List<String> duplicated = new ArrayList<>();
+                List<String> missing = new ArrayList<>();
+                for (int symbol = 0; symbol < counts.length; ++symbol) {
+                    if (counts[symbol] > 1) {
+                        duplicated.add(machine.getSymbol(symbol));
+                    } else if (counts[symbol] == 0) {
+                        missing.add(machine.getSymbol(symbol));
+                    }
+                }
+                if (epsilon || !duplicated.isEmpty() || !missing.isEmpty()) {
+                    expected.add(machine.getName(state) + " " + duplicated + " " + missing + " " + epsilon);
+                }
+            }
+            List<String> actual = new ArrayList<>();
+            for (DeterminismAnalysis.Diagnostic diagnostic : diagnostics) {
+                Tests.checkEquals(machine.getName(diagnostic.getState()), diagnostic.getName(), "diagnostic name");
+                actual.add(diagnostic.getName() + " " + diagnostic.getDuplicated() + " " + diagnostic.getMissing()
+                        + " " + diagnostic.hasEpsilon());
+            }
+            Tests.checkEquals(expected, actual, "diagnostics for " + size[0] + " states and " + size[1] + " symbols");
+        }
+    }
+
+    static void testCompleteDeterministicMachineHasNoDiagnostics() {
+        Machine machine = Tests.machine("a,b", 2, 0, new int[]{1}, "0 a 1", "0 b 0", "1 a 1", "1 b 0");
+        Tests.checkEquals(0, DeterminismAnalysis.analyze(machine).size(), "diagnostics");
+    }
+
+    static void testCancellationStopsChunks() {
+        Machine machine = randomMachine(new Random(91), 10_000, 4);
+        DeterminismAnalysis analysis = new DeterminismAnalysis(machine);
+        Tests.check(analysis.getChunkCount() > 1, "several chunks");
+        int[] chunks = new int[1];
+        analysis.run(diagnostics -> {
+            synchronized (chunks) {
+                ++chunks[0];
+            }
+        }, () -> true);
+        Tests.checkEquals(0, chunks[0], "chunks analyzed after cancellation");
+        analysis.run(diagnostics -> {
+            synchronized (chunks) {
+                ++chunks[0];
+            }
+        }, () -> false);
+        Tests.checkEquals(analysis.getChunkCount(), chunks[0], "chunks analyzed without cancellation");
+    }
+
+    private static Machine randomMachine(Random random, int stateCount, int alphabetSize) {
+        String[] symbols = new String[alphabetSize];
+        for (int i = 0; i < alphabetSize; ++i) {
+            symbols[i] = "s" + (char) ('A' + i / 26) + (char) ('a' + i % 26);
+        }
+        String[] names = new String[stateCount];
+        for (int state = 0; state < stateCount; ++state) {
+            names[state] = "q" + state;
+        }
+        int edgeCount = random.nextInt(stateCount * alphabetSize + 1) + stateCount;
+        int[] from = new int[edgeCount];
+        int[] to = new int[edgeCount];
+        int[] symbol = new int[edgeCount];
+        for (int edge = 0; edge < edgeCount; ++edge) {
+            from[edge] = random.nextInt(stateCount);
+            to[edge] = random.nextInt(stateCount);
+            symbol[edge] = random.nextInt(10) == 0 ? Machine.EPSILON : random.nextInt(alphabetSize);
+        }
+        return new Machine(symbols, names, new double[stateCount], new double[stateCount], new double[stateCount],
+                new boolean[stateCount], 0, from, to, symbol);
+    }
+}
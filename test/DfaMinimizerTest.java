@@ -0,0 +1,131 @@
+import java.util.*;
+import java.util.concurrent.CancellationException;
+
+public class DfaMinimizerTest {
+
+    static void testMergesEquivalentStates() {
+        Machine machine = Tests.machine("a,b", 5, 0, new int[]{2, 4},
+                "0 a 1", "0 b 0", "1 a 3", "1 b 2", "2 a 1", "2 b 0", "3 a 3", "3 b 4", "4 a 1", "4 b 0");
+        CompiledDfa minimal = CompiledDfa.compile(machine).minimize();
+        Tests.checkEquals(3, minimal.getStateCount(), "states of the minimal machine");
+        Tests.check(minimal.accepts("aab") && minimal.accepts("bab") && !minimal.accepts("aba"),
+                "minimal machine keeps the language");
+        for (int state = 0; state < minimal.getStateCount(); ++state) {
+            Tests.checkEquals(machine.isAccepting(minimal.getRepresentative(state)), minimal.isAccepting(state),
+                    "representative of state " + state + " has the same acceptance");
+        }
+    }
+
+    static void testDropsDeadAndUnreachableStates() {
+        Machine machine = Tests.machine("a,b", 4, 0, new int[]{1}, "0 a 1", "0 b 2", "2 a 2", "2 b 2", "3 a 1");
+        CompiledDfa minimal = CompiledDfa.compile(machine).minimize();
+        Tests.checkEquals(2, minimal.getStateCount(), "states of the minimal machine");
+        Tests.checkEquals(CompiledDfa.DEAD, minimal.step(minimal.getStart(), 1), "b leads to the dead state");
+        Tests.checkEquals(0, CompiledDfa.compile(Tests.machine("a", 1, -1, new int[0])).minimize().getStateCount(),
+                "no states without a start state");
+    }
+
+    static void testEmptyLanguageKeepsStartState() {
+        Machine machine = Tests.machine("a,b", 4, 0, new int[]{3}, "0 a 1", "1 b 0", "1 a 2", "3 a 0");
+        CompiledDfa minimal = CompiledDfa.compile(machine).minimize();
+        Tests.checkEquals(1, minimal.getStateCount(), "states of the minimal empty machine");
+        Tests.checkEquals(0, minimal.getStart(), "start state of the minimal empty machine");
+        Tests.check(!minimal.isAccepting(0), "start state does not accept");
+        Tests.checkEquals(0, minimal.getRepresentative(0), "start state represents the original start");
+        Tests.checkEquals(CompiledDfa.DEAD, minimal.step(0, 0), "no transitions in the empty machine");
+        Tests.check(!minimal.accepts("") && !minimal.accepts("ab"), "empty language");
+
+        Machine minimized = DfaMinimizer.minimize(machine, () -> false);
+        Tests.checkEquals(1, minimized.getStateCount(), "states in the minimized machine");
+        Tests.checkEquals("q0", minimized.getName(minimized.getStart()), "starting state after minimizing");
+        Tests.checkEquals(0, minimized.getEdgeCount(), "transitions after minimizing");
+    }
+
+    static void testRandomMachinesAreMinimal() {
+        Random random = new Random(7);
+        for (int round = 0; round < 300; ++round) {
+            Machine machine = Tests.randomMachine(random, 1 + random.nextInt(60), 1 + random.nextInt(3), 0.85, 0,
+                    true);
+            CompiledDfa dfa = CompiledDfa.compile(machine);
+            CompiledDfa minimal = dfa.minimize();
+            Tests.checkEquals(classes(dfa), minimal.getStateCount(), "minimal state count on round " + round);
+            for (int i = 0; i < 50; ++i) {
+                int[] word = Tests.randomWord(random, machine.getAlphabetSize(), random.nextInt(20));
+                Tests.checkEquals(dfa.accepts(word), minimal.accepts(word), "same language on round " + round);
+            }
+        }
+    }
+
+    static void testMinimizesMachines() {
+        Random random = new Random(9);
+        for (int round = 0; round < 100; ++round) {
+            Machine machine = Tests.randomMachine(random, 1 + random.nextInt(30), 1 + random.nextInt(3), 0.85, 0,
+                    true);
+            Machine minimized = DfaMinimizer.minimize(machine, () -> false);
+            CompiledDfa dfa = CompiledDfa.compile(minimized);
+            Tests.check(dfa != null, "minimized machine is deterministic on round " + round);
+            Tests.checkEquals(classes(CompiledDfa.compile(machine)), minimized.getStateCount(),
+                    "minimal state count on round " + round);
+            for (int i = 0; i < 50; ++i) {
+                int[] word = Tests.randomWord(random, machine.getAlphabetSize(), random.nextInt(20));
+                Tests.checkEquals(Tests.simulate(machine, word), dfa.accepts(word), "same language on round " + round);
+            }
+        }
+        Machine nondeterministic = Tests.machine("a", 2, 0, new int[]{1}, "0 a 0", "0 a 1");
+        Tests.checkThrows(IllegalArgumentException.class, () -> DfaMinimizer.minimize(nondeterministic, () -> false),
+                "nondeterministic machine");
+    }
+
+    static void testCancellation() {
+        Machine machine = Tests.randomMachine(new Random(8), 500, 2, 1, 0, true);
+        Tests.checkThrows(CancellationException.class, () -> CompiledDfa.compile(machine).minimize(() -> true),
+                "cancelled minimization");
+    }
+
+    private static int classes(CompiledDfa dfa) {
+        int alphabetSize = dfa.getAlphabetSize();
+        List<Integer> reachable = new ArrayList<>();
+        Map<Integer, Integer> index = new HashMap<>();
+        reachable.add(dfa.getStart());
+        index.put(dfa.getStart(), 0);
+        boolean needsSink = false;
+        for (int i = 0; i < reachable.size(); ++i) {
+            for (int symbol = 0; symbol < alphabetSize; ++symbol) {
+                int target = dfa.step(reachable.get(i), symbol);
+                if (target == CompiledDfa.DEAD) {
+                    needsSink = true;
+                } else if (!index.containsKey(target)) {
+                    index.put(target, reachable.size());
+                    reachable.add(target);
+                }
+            }
+        }
+        int n = reachable.size() + (needsSink ? 1 : 0);
+        int sink = needsSink ? reachable.size() : -1;
+        int[] block = new int[n];
+        for (int state = 0; state < reachable.size(); ++state) {
+            block[state] = dfa.isAccepting(reachable.get(state)) ? 1 : 0;
+        }
+        int count;
+        while (true) {
+            Map<List<Integer>, Integer> signatures = new HashMap<>();
+            int[] next = new int[n];
+            for (int state = 0; state < n; ++state) {
+                List<Integer> signature = new ArrayList<>();
+                signature.add(block[state]);
+                for (int symbol = 0; symbol < alphabetSize; ++symbol) {
+                    int target = state == sink ? CompiledDfa.DEAD : dfa.step(reachable.get(state), symbol);
+                    signature.add(block[target == CompiledDfa.DEAD ? sink : index.get(target)]);
+                }
+                next[state] = signatures.computeIfAbsent(signature, s -> signatures.size());
+            }
+            count = signatures.size();
+            boolean stable = Arrays.equals(block, next);
+            block = next;
+            if (stable) {
+                break;
+            }
+        }
+        return Math.max(1, needsSink ? count - 1 : count);
+    }
+}
@@ -0,0 +1,46 @@
+import java.util.*;
+
+public class DirtyRegionTest {
+
+    private static final double MARGIN = 24;
+    private static final double RADIUS = State.DEFAULT_RADIUS;
+
+    static void testMoveInvalidatesOldAndNewBounds() {
+        Diagram diagram = diagram();
+        diagram.render();
+        checkClean(diagram, "after a full render");
+        diagram.apply(new Edit.MoveState("isolated", 300, 400, 340, 460));
+        double[] dirty = diagram.getDirtyRegion();
+        Tests.checkEquals(300 - MARGIN, dirty[0], "left edge of the dirty region");
+        Tests.checkEquals(400 - MARGIN, dirty[1], "top edge of the dirty region");
+        Tests.checkEquals(340 + 2 * RADIUS + MARGIN, dirty[2], "right edge of the dirty region");
+        Tests.checkEquals(460 + 2 * RADIUS + MARGIN, dirty[3], "bottom edge of the dirty region");
+        diagram.render();
+        checkClean(diagram, "after a partial render");
+    }
+
+    static void testIncidentTransitionsAreInvalidated() {
+        Diagram diagram = diagram();
+        diagram.render();
+        diagram.apply(new Edit.MoveState("to", 500, 100, 500, 140));
+        double[] dirty = diagram.getDirtyRegion();
+        Tests.check(dirty[0] < 100 + 2 * RADIUS, "transition into the moved state invalidated");
+        Tests.check(dirty[1] > 0 && dirty[3] < 140 + 2 * RADIUS + 2 * MARGIN, "dirty region stays near the transition");
+        Tests.check(dirty[3] < 400 - MARGIN, "isolated state left clean");
+    }
+
+    private static Diagram diagram() {
+        Diagram diagram = Tests.diagram();
+        diagram.apply(new Edit.Compound(Arrays.asList(
+                new Edit.AddState("from", 100, 100, RADIUS, false),
+                new Edit.AddState("to", 500, 100, RADIUS, false),
+                new Edit.AddState("isolated", 300, 400, RADIUS, false),
+                new Edit.AddTransition("from", "to", SymbolTable.EPSILON_SYMBOL))));
+        return diagram;
+    }
+
+    private static void checkClean(Diagram diagram, String message) {
+        double[] dirty = diagram.getDirtyRegion();
+        Tests.check(dirty[0] > dirty[2] && dirty[1] > dirty[3], "clean " + message);
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ExecutionServiceTest {
+
+    private static final BlockingQueue<Runnable> callbacks = new LinkedBlockingQueue<>();
+    private static final List<String> events = new ArrayList<>();
+
+    static void testSuccessAndFailureCallbacks() throws Exception {
+        ExecutionService service = service();
+        try {
+            submit(service, execution -> 42, 0);
+            nextCallback().run();
+            submit(service, execution -> {
+                throw new IllegalStateException("broken");
+            }, 0);
+            nextCallback().run();
+            Tests.checkEquals(Arrays.asList("succeeded 42", "failed broken"), events, "callbacks");
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    static void testCancelledExecutionReportsNothing() throws Exception {
+        ExecutionService service = service();
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            ExecutionService.Execution running = submit(service, execution -> {
+                started.countDown();
+                while (true) {
+                    execution.checkCancelled();
+                    Thread.sleep(1);
+                }
+            }, 0);
+            started.await();
+            running.cancel();
+            awaitDone(running);
+            ExecutionService.Execution finished = submit(service, execution -> "result", 0);
+            awaitDone(finished);
+            finished.cancel();
+            Runnable callback;
+            while ((callback = callbacks.poll(50, TimeUnit.MILLISECONDS)) != null) {
+                callback.run();
+            }
+            Tests.check(running.isCancelled() && finished.isCancelled(), "executions cancelled");
+            Tests.checkEquals(Collections.emptyList(), events, "callbacks after cancellation");
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    static void testTimeout() throws Exception {
+        ExecutionService service = service();
+        try {
+            ExecutionService.Execution execution = submit(service, e -> {
+                while (true) {
+                    e.checkCancelled();
+                    Thread.sleep(1);
+                }
+            }, 50);
+            nextCallback().run();
+            Tests.checkEquals(Collections.singletonList("failed Timed out after 50 ms"), events, "timeout callback");
+            Tests.check(execution.isCancelled(), "timed out execution cancelled");
+            submit(service, e -> "quick", 10_000);
+            nextCallback().run();
+            Tests.checkEquals("succeeded quick", events.get(1), "execution finished before its timeout");
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    static void testProgressIsCoalesced() throws Exception {
+        ExecutionService service = service();
+        try {
+            List<Double> progress = new ArrayList<>();
+            ExecutionService.Execution running = service.submit(execution -> {
+                for (int i = 1; i <= 1000; ++i) {
+                    execution.updateProgress(i, 1000);
+                }
+                return null;
+            }, 0, progress::add, result -> events.add("succeeded"), message -> events.add("failed " + message));
+            awaitDone(running);
+            Tests.checkEquals(2, callbacks.size(), "pending callbacks");
+            nextCallback().run();
+            nextCallback().run();
+            Tests.checkEquals(Collections.singletonList(1.0), progress, "coalesced progress");
+            Tests.checkEquals(Collections.singletonList("succeeded"), events, "completion callback");
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static ExecutionService service() {
+        callbacks.clear();
+        events.clear();
+        return new ExecutionService(2, callbacks::add);
+    }
+
+    private static ExecutionService.Execution submit(ExecutionService service, ExecutionService.Job<Object> job,
+                                                     long timeoutMillis) {
+        return service.submit(job, timeoutMillis, progress -> {}, result -> events.add("succeeded " + result),
+                message -> events.add("failed " + message));
+    }
+
+    private static Runnable nextCallback() throws InterruptedException {
+        Runnable callback = callbacks.poll(10, TimeUnit.SECONDS);
+        Tests.check(callback != null, "callback delivered");
+        return callback;
+    }
+
+    private static void awaitDone(ExecutionService.Execution execution) throws InterruptedException {
+        for (int i = 0; i < 10_000 && !execution.isDone(); ++i) {
+            Thread.sleep(1);
+        }
+        Tests.check(execution.isDone(), "execution finished");
+    }
+}
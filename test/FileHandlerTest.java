@@ -0,0 +1,118 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+public class FileHandlerTest {
+
+    static void testRoundTrip() throws Exception {
+        Random random = new Random(10);
+        File file = temporaryFile();
+        for (int round = 0; round < 50; ++round) {
+            Machine machine = Tests.randomMachine(random, random.nextInt(80), 1 + random.nextInt(4), 1.2, 0.2, false);
+            FileHandler.save(file, machine);
+            checkSame(machine, FileHandler.load(file), "round " + round);
+        }
+        Machine unicode = Tests.machine("ε̃,→,ab", 2, 1, new int[]{0}, "0 → 1", "1 ab 0", "1 ε 1");
+        FileHandler.save(file, unicode);
+        checkSame(unicode, FileHandler.load(file), "unicode symbols");
+    }
+
+    static void testTruncatedFiles() throws Exception {
+        File file = temporaryFile();
+        FileHandler.save(file, Tests.randomMachine(new Random(11), 6, 2, 1, 0.2, false));
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        for (int length = 0; length < bytes.length; ++length) {
+            Files.write(file.toPath(), Arrays.copyOf(bytes, length));
+            Tests.checkThrows(IOException.class, () -> FileHandler.load(file), "file truncated to " + length);
+        }
+    }
+
+    static void testCorruptedFiles() throws Exception {
+        File file = temporaryFile();
+        FileHandler.save(file, Tests.machine("a", 2, 0, new int[]{1}, "0 a 1"));
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        corrupt(file, bytes, 0, 0x7f, "bad magic");
+        corrupt(file, bytes, 7, 9, "future version");
+        corrupt(file, bytes, bytes.length - 9, 5, "transition from an unknown state");
+        corrupt(file, bytes, bytes.length - 1, 3, "unknown symbol");
+        corrupt(file, bytes, 23, -2, "start state out of range");
+        FileHandler.save(file, Tests.machine("a", 2, 0, new int[0]));
+        bytes = Files.readAllBytes(file.toPath());
+        bytes[bytes.length - 2 * (3 * Double.BYTES + 1) - 1] = '0';
+        Files.write(file.toPath(), bytes);
+        Tests.checkThrows(StreamCorruptedException.class, () -> FileHandler.load(file), "duplicate state names");
+    }
+
+    static void testLegacyFile() throws Exception {
+        SymbolTable table = new SymbolTable();
+        State first = new State("first", 10, 20);
+        State second = new State("second", 30, 40);
+        second.setAccepting(true);
+        second.setRadius(30);
+        Transition forward = new Transition(first, second, table, table.intern("a"));
+        forward.addSymbol(table.intern("b"));
+        Transition loop = new Transition(second, second, table, SymbolTable.EPSILON);
+        File file = temporaryFile();
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
+            out.writeObject("a,b,");
+            out.writeObject(new HashSet<>(Arrays.asList(first, second)));
+            out.writeObject(new HashSet<>(Arrays.asList(forward, loop)));
+            out.writeObject("first");
+        }
+        Machine machine = FileHandler.load(file);
+        Tests.checkEquals(2, machine.getAlphabetSize(), "legacy alphabet size");
+        Tests.checkEquals(2, machine.getStateCount(), "legacy state count");
+        Tests.checkEquals(3, machine.getEdgeCount(), "legacy edge count");
+        Tests.checkEquals("first", machine.getName(machine.getStart()), "legacy start state");
+        BitsetNfa nfa = BitsetNfa.compile(machine);
+        Tests.check(nfa.accepts("a") && nfa.accepts("b") && !nfa.accepts("ab"), "legacy transitions");
+        int accepting = machine.getName(0).equals("second") ? 0 : 1;
+        Tests.check(machine.isAccepting(accepting), "legacy accepting state");
+        Tests.checkEquals(30.0, machine.getRadius(accepting), "legacy radius");
+    }
+
+    static void testLegacyFileRejectsOtherClasses() throws Exception {
+        File file = temporaryFile();
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
+            out.writeObject("a,");
+            out.writeObject(new ArrayList<>(Arrays.asList(1, 2)));
+        }
+        Tests.checkThrows(InvalidClassException.class, () -> FileHandler.load(file), "ArrayList in a legacy file");
+    }
+
+    private static void corrupt(File file, byte[] bytes, int offset, int value, String message) throws IOException {
+        byte[] corrupted = bytes.clone();
+        corrupted[offset] = (byte) value;
+        Files.write(file.toPath(), corrupted);
+        Tests.checkThrows(IOException.class, () -> FileHandler.load(file), message);
+    }
+
+    private static File temporaryFile() throws IOException {
+        File file = File.createTempFile("machine", ".fsm");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void checkSame(Machine expected, Machine actual, String message) {
+        Tests.checkEquals(expected.getAlphabetSize(), actual.getAlphabetSize(), message + " alphabet size");
+        for (int i = 0; i < expected.getAlphabetSize(); ++i) {
+            Tests.checkEquals(expected.getSymbol(i), actual.getSymbol(i), message + " symbol " + i);
+        }
+        Tests.checkEquals(expected.getStateCount(), actual.getStateCount(), message + " state count");
+        for (int i = 0; i < expected.getStateCount(); ++i) {
+            Tests.checkEquals(expected.getName(i), actual.getName(i), message + " name " + i);
+            Tests.checkEquals(expected.getX(i), actual.getX(i), message + " x " + i);
+            Tests.checkEquals(expected.getY(i), actual.getY(i), message + " y " + i);
+            Tests.checkEquals(expected.getRadius(i), actual.getRadius(i), message + " radius " + i);
+            Tests.checkEquals(expected.isAccepting(i), actual.isAccepting(i), message + " accepting " + i);
+        }
+        Tests.checkEquals(expected.getStart(), actual.getStart(), message + " start");
+        Tests.checkEquals(expected.getEdgeCount(), actual.getEdgeCount(), message + " edge count");
+        for (int edge = 0; edge < expected.getEdgeCount(); ++edge) {
+            Tests.checkEquals(expected.getEdgeFrom(edge), actual.getEdgeFrom(edge), message + " edge from " + edge);
+            Tests.checkEquals(expected.getEdgeTo(edge), actual.getEdgeTo(edge), message + " edge to " + edge);
+            Tests.checkEquals(expected.getEdgeSymbol(edge), actual.getEdgeSymbol(edge),
+                    message + " edge symbol " + edge);
+        }
+    }
+}
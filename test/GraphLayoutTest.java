@@ -0,0 +1,76 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+public class GraphLayoutTest {
+
+    static void testLayeredAcyclicMachinesFlowLeftToRight() throws Exception {
+        Random random = new Random(120);
+        for (int round = 0; round < 20; ++round) {
+            int stateCount = 1 + random.nextInt(60);
+            List<String> edges = new ArrayList<>();
+            for (int i = random.nextInt(3 * stateCount); i > 0; --i) {
+                int from = random.nextInt(stateCount);
+                int to = random.nextInt(stateCount);
+                if (from < to) {
+                    edges.add(from + " a " + to);
+                }
+            }
+            Machine machine = Tests.machine("a", stateCount, round % 4 == 0 ? -1 : 0, new int[0],
+                    edges.toArray(new String[0]));
+            double[] positions = layout(machine, true);
+            checkFinite(machine, positions, "layered round " + round);
+            for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+                int from = machine.getEdgeFrom(edge);
+                int to = machine.getEdgeTo(edge);
+                Tests.check(positions[2 * from] < positions[2 * to],
+                        "edge " + from + " -> " + to + " points right on round " + round);
+            }
+        }
+    }
+
+    static void testLayoutsOfCyclicMachines() throws Exception {
+        Random random = new Random(121);
+        for (int round = 0; round < 20; ++round) {
+            Machine machine = Tests.randomMachine(random, 1 + random.nextInt(round < 18 ? 80 : 2000), 3,
+                    random.nextDouble() * 2, 0.2, false);
+            double[] layered = layout(machine, true);
+            checkFinite(machine, layered, "layered round " + round);
+            Set<List<Double>> distinct = new HashSet<>();
+            for (int state = 0; state < machine.getStateCount(); ++state) {
+                distinct.add(Arrays.asList(layered[2 * state], layered[2 * state + 1]));
+            }
+            Tests.checkEquals(machine.getStateCount(), distinct.size(), "distinct layered positions on round " + round);
+            checkFinite(machine, layout(machine, false), "force-directed round " + round);
+        }
+    }
+
+    static void testEmptyMachine() throws Exception {
+        Machine machine = Tests.machine("a", 0, -1, new int[0]);
+        Tests.checkEquals(0, layout(machine, false).length, "force-directed positions");
+        Tests.checkEquals(0, layout(machine, true).length, "layered positions");
+    }
+
+    private static void checkFinite(Machine machine, double[] positions, String message) {
+        Tests.checkEquals(2 * machine.getStateCount(), positions.length, "position count for " + message);
+        for (double position : positions) {
+            Tests.check(Double.isFinite(position) && position >= 0, "finite position for " + message);
+        }
+    }
+
+    private static double[] layout(Machine machine, boolean layered) throws Exception {
+        ExecutionService service = new ExecutionService(1, Runnable::run);
+        try {
+            BlockingQueue<Object> result = new LinkedBlockingQueue<>();
+            service.submit(execution -> {
+                GraphLayout layout = new GraphLayout(machine);
+                return layered ? layout.layered(execution, positions -> {})
+                        : layout.forceDirected(execution, positions -> {});
+            }, 0, progress -> {}, result::add, result::add);
+            Object positions = result.poll(60, TimeUnit.SECONDS);
+            Tests.check(positions instanceof double[], "layout finished: " + positions);
+            return (double[]) positions;
+        } finally {
+            service.shutdown();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import java.util.*;
+
+public class HistoryTest {
+
+    static void testUndoRedoRestoresDiagram() {
+        Random random = new Random(30);
+        for (int round = 0; round < 20; ++round) {
+            Diagram diagram = Tests.diagram();
+            diagram.load(Tests.randomMachine(random, random.nextInt(6), 2, 1, 0.2, false));
+            History history = new History(Long.MAX_VALUE);
+            List<String> versions = new ArrayList<>();
+            versions.add(Tests.describe(diagram.snapshot()));
+            for (int i = 0; i < 30; ++i) {
+                Edit edit = Tests.randomEdit(random, diagram.snapshot());
+                diagram.apply(edit);
+                history.record(edit);
+                versions.add(Tests.describe(diagram.snapshot()));
+            }
+            for (int i = versions.size() - 2; i >= 0; --i) {
+                Tests.check(history.undo(diagram) != null, "round " + round + " undo " + i);
+                Tests.checkEquals(versions.get(i), Tests.describe(diagram.snapshot()), "round " + round + " undo " + i);
+            }
+            Tests.check(!history.canUndo() && history.undo(diagram) == null, "round " + round + " undo past start");
+            for (int i = 1; i < versions.size(); ++i) {
+                Tests.check(history.redo(diagram) != null, "round " + round + " redo " + i);
+                Tests.checkEquals(versions.get(i), Tests.describe(diagram.snapshot()), "round " + round + " redo " + i);
+            }
+            Tests.check(!history.canRedo() && history.redo(diagram) == null, "round " + round + " redo past end");
+        }
+    }
+
+    static void testRecordClearsRedo() {
+        Diagram diagram = Tests.diagram();
+        History history = new History(Long.MAX_VALUE);
+        Edit first = new Edit.AddState("x", 10, 10, State.DEFAULT_RADIUS, false);
+        Edit second = new Edit.AddState("y", 50, 50, State.DEFAULT_RADIUS, false);
+        diagram.apply(first);
+        history.record(first);
+        diagram.apply(second);
+        history.record(second);
+        history.undo(diagram);
+        Tests.check(history.canRedo(), "redo after undo");
+        long used = history.getMemoryUsed();
+        Edit third = new Edit.SetAccepting("x", true);
+        diagram.apply(third);
+        history.record(third);
+        Tests.check(!history.canRedo(), "redo after a new edit");
+        Tests.checkEquals(used - second.footprint() + third.footprint(), history.getMemoryUsed(), "memory after dropping redo");
+        history.undo(diagram);
+        history.undo(diagram);
+        Tests.checkEquals(0, diagram.snapshot().getStateCount(), "states after undoing everything");
+        history.clear();
+        Tests.check(!history.canUndo() && !history.canRedo(), "history cleared");
+        Tests.checkEquals(0L, history.getMemoryUsed(), "memory after clear");
+    }
+
+    static void testCapacityDropsOldestEdits() {
+        Diagram diagram = Tests.diagram();
+        Edit sample = new Edit.AddState("s10", 0, 0, State.DEFAULT_RADIUS, false);
+        History history = new History(10 * sample.footprint());
+        for (int i = 0; i < 25; ++i) {
+            Edit edit = new Edit.AddState("s" + i, 20 * i, 0, State.DEFAULT_RADIUS, false);
+            diagram.apply(edit);
+            history.record(edit);
+            Tests.check(history.getMemoryUsed() <= history.getCapacity(), "memory within capacity after " + i);
+        }
+        int undone = 0;
+        while (history.undo(diagram) != null) {
+            ++undone;
+        }
+        Tests.checkEquals(10, undone, "edits kept within capacity");
+        Machine machine = diagram.snapshot();
+        Tests.checkEquals(15, machine.getStateCount(), "states left after undoing the kept edits");
+        for (int state = 0; state < machine.getStateCount(); ++state) {
+            Tests.check(Integer.parseInt(machine.getName(state).substring(1)) < 15, "oldest edits dropped");
+        }
+    }
+}
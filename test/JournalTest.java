@@ -0,0 +1,88 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+public class JournalTest {
+
+    static void testReplayRestoresEdits() throws Exception {
+        Random random = new Random(20);
+        File file = temporaryFile();
+        Diagram diagram = Tests.diagram();
+        diagram.load(Tests.randomMachine(random, 8, 2, 1, 0.2, false));
+        FileHandler.save(file, diagram.snapshot());
+        Journal journal = new Journal(file);
+        journal.reset();
+        List<Edit> appended = new ArrayList<>();
+        for (int batch = 0; batch < 10; ++batch) {
+            List<Edit> edits = new ArrayList<>();
+            for (int i = random.nextInt(8); i >= 0; --i) {
+                Edit edit = Tests.randomEdit(random, diagram.snapshot());
+                diagram.apply(edit);
+                edits.add(edit);
+            }
+            journal.append(edits);
+            appended.addAll(edits);
+        }
+        List<Edit> replayed = new Journal(file).replay();
+        Tests.checkEquals(appended.size(), replayed.size(), "replayed edit count");
+        for (int i = 0; i < appended.size(); ++i) {
+            Tests.check(Arrays.equals(bytes(appended.get(i)), bytes(replayed.get(i))), "replayed edit " + i);
+        }
+        Diagram reopened = Tests.diagram();
+        reopened.load(FileHandler.load(file));
+        replayed.forEach(reopened::apply);
+        Tests.checkEquals(Tests.describe(diagram.snapshot()), Tests.describe(reopened.snapshot()),
+                "snapshot plus journal");
+        Tests.checkEquals(Tests.describe(diagram.snapshot()), Tests.describe(FileHandler.load(file)),
+                "headless load replays the journal");
+    }
+
+    static void testTornTailIsDropped() throws Exception {
+        File file = temporaryFile();
+        FileHandler.save(file, Tests.machine("a", 1, 0, new int[0]));
+        Journal journal = new Journal(file);
+        journal.reset();
+        journal.append(Arrays.asList(new Edit.AddState("x", 1, 2, 24, false), new Edit.AddState("y", 3, 4, 24, true)));
+        File journalFile = new File(file.getPath() + ".journal");
+        byte[] bytes = Files.readAllBytes(journalFile.toPath());
+        Files.write(journalFile.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+        journal = new Journal(file);
+        Tests.checkEquals(1, journal.replay().size(), "edits before a torn record");
+        journal.append(Collections.singletonList(new Edit.SetAccepting("x", true)));
+        List<Edit> replayed = new Journal(file).replay();
+        Tests.checkEquals(2, replayed.size(), "edits after appending past a torn record");
+        Tests.check(Arrays.equals(bytes(new Edit.SetAccepting("x", true)), bytes(replayed.get(1))),
+                "edit appended past a torn record");
+        bytes = Files.readAllBytes(journalFile.toPath());
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(journalFile.toPath(), bytes);
+        Tests.checkEquals(1, new Journal(file).replay().size(), "edits before a record with a bad checksum");
+    }
+
+    static void testChangedSnapshotReplaysNothing() throws Exception {
+        File file = temporaryFile();
+        FileHandler.save(file, Tests.machine("a", 1, 0, new int[0]));
+        Journal journal = new Journal(file);
+        journal.reset();
+        journal.append(Collections.singletonList(new Edit.AddState("x", 1, 2, 24, false)));
+        Tests.checkEquals(1, new Journal(file).replay().size(), "edits for the matching snapshot");
+        FileHandler.save(file, Tests.machine("a", 2, 0, new int[0]));
+        Tests.checkEquals(0, new Journal(file).replay().size(), "edits for a changed snapshot");
+        journal.reset();
+        Tests.check(!new File(file.getPath() + ".journal").exists(), "journal deleted on reset");
+        Tests.checkEquals(0L, journal.getSize(), "size after reset");
+    }
+
+    private static byte[] bytes(Edit edit) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        edit.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static File temporaryFile() throws IOException {
+        File file = File.createTempFile("machine", ".fsm");
+        file.deleteOnExit();
+        new File(file.getPath() + ".journal").deleteOnExit();
+        return file;
+    }
+}
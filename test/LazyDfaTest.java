@@ -0,0 +1,53 @@
+import java.util.Random;
+
+public class LazyDfaTest {
+
+    static void testAgreesWithSimulation() {
+        Random random = new Random(4);
+        for (LazyDfa.EvictionPolicy policy : LazyDfa.EvictionPolicy.values()) {
+            for (int round = 0; round < 100; ++round) {
+                Machine machine = Tests.randomMachine(random, 1 + random.nextInt(100), 1 + random.nextInt(3), 1.4,
+                        0.2, false);
+                check(machine, new LazyDfa(BitsetNfa.compile(machine), 16 << 20, policy), random, policy + " " + round);
+            }
+        }
+    }
+
+    static void testEvictionKeepsResultsAndLimit() {
+        Random random = new Random(5);
+        for (LazyDfa.EvictionPolicy policy : LazyDfa.EvictionPolicy.values()) {
+            long evictions = 0;
+            for (int round = 0; round < 50; ++round) {
+                Machine machine = Tests.randomMachine(random, 64 + random.nextInt(64), 2, 1.6, 0.1, false);
+                long stateCost = 96 + 8 * ((machine.getStateCount() + 63) / 64) + 8 * machine.getAlphabetSize();
+                LazyDfa dfa = new LazyDfa(BitsetNfa.compile(machine), 4 * stateCost, policy);
+                check(machine, dfa, random, policy + " " + round);
+                Tests.check(dfa.getMemoryUsed() <= dfa.getMemoryLimit(), "memory stays within the limit");
+                Tests.check(dfa.getCachedStates() <= 4, "at most four states cached");
+                evictions += dfa.getEvictions();
+            }
+            Tests.check(evictions > 0, policy + " evicted states");
+        }
+    }
+
+    static void testCachedTransitionsAreReused() {
+        Random random = new Random(6);
+        Machine machine = Tests.randomMachine(random, 50, 2, 1.5, 0.1, false);
+        LazyDfa dfa = new LazyDfa(BitsetNfa.compile(machine), 16 << 20, LazyDfa.EvictionPolicy.LRU);
+        int[] word = Tests.randomWord(random, 2, 1000);
+        boolean first = dfa.accepts(word);
+        long misses = dfa.getMisses();
+        Tests.checkEquals(first, dfa.accepts(word), "same result on the second run");
+        Tests.checkEquals(misses, dfa.getMisses(), "no new misses on the second run");
+        Tests.check(dfa.getHits() >= word.length, "second run is served from the cache");
+    }
+
+    private static void check(Machine machine, LazyDfa dfa, Random random, String round) {
+        for (int i = 0; i < 40; ++i) {
+            int[] word = Tests.randomWord(random, machine.getAlphabetSize(), random.nextInt(30));
+            boolean expected = Tests.simulate(machine, word);
+            Tests.checkEquals(expected, dfa.accepts(word), "accepts(int[]) on " + round);
+            Tests.checkEquals(expected, dfa.accepts(Tests.spell(machine, word)), "accepts(String) on " + round);
+        }
+    }
+}
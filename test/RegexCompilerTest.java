@@ -0,0 +1,154 @@
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+
+public class RegexCompilerTest {
+
+    private static final Set<String> ALPHABET = new HashSet<>(Arrays.asList("a", "b", "c"));
+    private static final ExecutionService SERVICE = new ExecutionService(1, Runnable::run);
+
+    static void testMatchesJavaRegex() throws Exception {
+        Random random = new Random(40);
+        for (int round = 0; round < 300; ++round) {
+            String pattern = randomPattern(random, 0);
+            Pattern expected = Pattern.compile(pattern);
+            BitsetNfa nfa = BitsetNfa.compile(new RegexCompiler(ALPHABET).compile(pattern));
+            CompiledDfa dfa = CompiledDfa.compile(compile(ALPHABET, pattern, true, false));
+            CompiledDfa minimal = CompiledDfa.compile(compile(ALPHABET, pattern, false, true));
+            Tests.check(dfa != null && minimal != null, pattern + " deterministic");
+            Tests.check(minimal.getStateCount() <= dfa.getStateCount(), pattern + " minimized");
+            for (int i = 0; i < 40; ++i) {
+                StringBuilder word = new StringBuilder();
+                for (int length = random.nextInt(8); length > 0; --length) {
+                    word.append("abc".charAt(random.nextInt(3)));
+                }
+                boolean accepted = expected.matcher(word).matches();
+                Tests.checkEquals(accepted, nfa.accepts(word), pattern + " nfa on " + word);
+                Tests.checkEquals(accepted, dfa.accepts(word), pattern + " dfa on " + word);
+                Tests.checkEquals(accepted, minimal.accepts(word), pattern + " minimal dfa on " + word);
+            }
+        }
+    }
+
+    static void testSyntaxErrors() {
+        checkSyntaxError("(", 0);
+        checkSyntaxError("(a|", 0);
+        checkSyntaxError("a)", 1);
+        checkSyntaxError("*a", 0);
+        checkSyntaxError("a|+", 2);
+        checkSyntaxError("[ab", 0);
+        checkSyntaxError("]", 0);
+        checkSyntaxError("a\\", 1);
+        checkSyntaxError("ad", 1);
+        checkSyntaxError("[c-a]", 2);
+        StringBuilder nested = new StringBuilder();
+        for (int i = 0; i < 300; ++i) {
+            nested.append('(');
+        }
+        checkSyntaxError(nested.toString(), 256);
+    }
+
+    static void testEmptyWordAndClasses() throws Exception {
+        BitsetNfa empty = BitsetNfa.compile(new RegexCompiler(ALPHABET).compile("ε|a"));
+        Tests.check(empty.accepts("") && empty.accepts("a") && !empty.accepts("b"), "ε|a");
+        BitsetNfa negated = BitsetNfa.compile(new RegexCompiler(ALPHABET).compile("[^abc]"));
+        Tests.check(!negated.accepts("") && !negated.accepts("a"), "[^abc] matches nothing");
+        BitsetNfa escaped = BitsetNfa.compile(new RegexCompiler(new HashSet<>(Arrays.asList("*", "a")))
+                .compile("a\\*+"));
+        Tests.check(escaped.accepts("a**") && !escaped.accepts("a") && !escaped.accepts("aa"), "escaped operator");
+    }
+
+    static void testMultiCharacterSymbols() throws Exception {
+        Set<String> alphabet = new HashSet<>(Arrays.asList("ab", "a", "b", "(", "if", "i"));
+        BitsetNfa nfa = BitsetNfa.compile(new RegexCompiler(alphabet).compile("(ab|a)\\(if+"));
+        Tests.check(nfa.accepts("ab(ififif"), "ab(ififif");
+        Tests.check(nfa.accepts("a(if"), "a(if");
+        Tests.check(!nfa.accepts("ab(i"), "ab(i");
+        Machine single = new RegexCompiler(alphabet).compile("ab");
+        Tests.checkEquals(1, single.getEdgeCount(), "ab is one symbol");
+        Tests.checkEquals("ab", single.getSymbol(single.getEdgeSymbol(0)), "longest symbol first");
+        Tests.check(!BitsetNfa.compile(new RegexCompiler(alphabet).compile("a(b)")).accepts("ab"),
+                "words split by longest match");
+    }
+
+    static void testDeterminizationLimit() {
+        StringBuilder pattern = new StringBuilder("(a|b)*a");
+        for (int i = 0; i < 16; ++i) {
+            pattern.append("(a|b)");
+        }
+        Tests.checkThrows(IllegalStateException.class, () -> compile(ALPHABET, pattern.toString(), true, false),
+                "more than " + RegexCompiler.MAX_DFA_STATES + " states");
+    }
+
+    static void testReplaceIsOneEdit() throws Exception {
+        Diagram diagram = Tests.diagram();
+        diagram.load(Tests.randomMachine(new Random(41), 5, 2, 1, 0.2, false));
+        History history = new History(Long.MAX_VALUE);
+        diagram.setOnEdit(history::record);
+        String before = Tests.describe(diagram.snapshot());
+        Machine machine = compile(ALPHABET, "(a|bc)*c", false, true);
+        diagram.replace(machine);
+        String after = Tests.describe(diagram.snapshot());
+        Tests.checkEquals(Tests.describe(machine), after, "diagram after replace");
+        history.undo(diagram);
+        Tests.checkEquals(before, Tests.describe(diagram.snapshot()), "diagram after undoing replace");
+        Tests.check(!history.canUndo(), "replace recorded as one edit");
+        history.redo(diagram);
+        Tests.checkEquals(after, Tests.describe(diagram.snapshot()), "diagram after redoing replace");
+    }
+
+    private static void checkSyntaxError(String pattern, int position) {
+        try {
+            new RegexCompiler(ALPHABET).compile(pattern);
+            Tests.check(false, pattern + " rejected");
+        } catch (RegexSyntaxException e) {
+            Tests.checkEquals(position, e.getPosition(), pattern + " error position");
+        }
+    }
+
+    private static Machine compile(Set<String> alphabet, String pattern, boolean determinize, boolean minimize)
+            throws Exception {
+        CompletableFuture<Machine> result = new CompletableFuture<>();
+        SERVICE.submit(execution -> {
+            try {
+                return new RegexCompiler(alphabet).compile(pattern, determinize, minimize, execution);
+            } catch (RegexSyntaxException | RuntimeException e) {
+                result.completeExceptionally(e);
+                throw e;
+            }
+        }, 0, progress -> {
+        }, result::complete, message -> {
+        });
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    private static String randomPattern(Random random, int depth) {
+        switch (depth > 4 ? random.nextInt(2) : random.nextInt(9)) {
+            case 0:
+                return String.valueOf("abc".charAt(random.nextInt(3)));
+            case 1:
+                return ".";
+            case 2:
+                return "[" + (random.nextBoolean() ? "^" : "") + "abc".charAt(random.nextInt(3))
+                        + (random.nextBoolean() ? "-c" : "") + "]";
+            case 3:
+                return randomPattern(random, depth + 1) + randomPattern(random, depth + 1);
+            case 4:
+                return "(" + randomPattern(random, depth + 1) + "|" + randomPattern(random, depth + 1) + ")";
+            case 5:
+                return "(" + randomPattern(random, depth + 1) + ")*";
+            case 6:
+                return "(" + randomPattern(random, depth + 1) + ")+";
+            case 7:
+                return "(" + randomPattern(random, depth + 1) + ")?";
+            default:
+                return "((" + randomPattern(random, depth + 1) + randomPattern(random, depth + 1) + ")"
+                        + "*+?".charAt(random.nextInt(3)) + ")" + "*+?".charAt(random.nextInt(3));
+        }
+    }
+}
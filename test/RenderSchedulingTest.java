@@ -0,0 +1,42 @@
+import java.util.*;
+
+public class RenderSchedulingTest {
+
+    static void testRepaintsCoalesceUntilRender() {
+        Diagram diagram = Tests.diagram();
+        diagram.render();
+        long requested = diagram.getRequestedRenders();
+        long coalesced = diagram.getCoalescedRenders();
+        for (int i = 0; i < 5; ++i) {
+            diagram.update();
+        }
+        Tests.checkEquals(requested + 5, diagram.getRequestedRenders(), "requested renders");
+        Tests.checkEquals(coalesced + 4, diagram.getCoalescedRenders(), "coalesced renders");
+        diagram.render();
+        diagram.update();
+        Tests.checkEquals(requested + 6, diagram.getRequestedRenders(), "requested renders after a frame");
+        Tests.checkEquals(coalesced + 4, diagram.getCoalescedRenders(), "first request after a frame is scheduled");
+    }
+
+    static void testBatchRequestsOneRender() {
+        Diagram diagram = Tests.diagram();
+        diagram.render();
+        List<Edit> edits = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            edits.add(new Edit.AddState("s" + i, 40 * i, 40 * (i % 3), State.DEFAULT_RADIUS, false));
+        }
+        for (int i = 1; i < 20; ++i) {
+            edits.add(new Edit.AddTransition("s" + (i - 1), "s" + i, SymbolTable.EPSILON_SYMBOL));
+        }
+        edits.add(new Edit.SetStarting(null, "s0"));
+        int[] changes = new int[1];
+        diagram.setCancelRunning(() -> ++changes[0]);
+        long requested = diagram.getRequestedRenders();
+        long coalesced = diagram.getCoalescedRenders();
+        diagram.apply(new Edit.Compound(edits));
+        Tests.checkEquals(1, changes[0], "change notifications for one compound edit");
+        Tests.check(diagram.getRequestedRenders() - requested <= 2, "render requests for one compound edit");
+        Tests.checkEquals(1L, diagram.getRequestedRenders() - requested - (diagram.getCoalescedRenders() - coalesced),
+                "frames scheduled for one compound edit");
+    }
+}
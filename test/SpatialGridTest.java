@@ -0,0 +1,82 @@
+import java.util.*;
+
+public class SpatialGridTest {
+
+    private static class Box {
+
+        private double minX;
+        private double minY;
+        private double maxX;
+        private double maxY;
+
+        void place(Random random) {
+            minX = random.nextDouble() * 2000 - 500;
+            minY = random.nextDouble() * 2000 - 500;
+            maxX = minX + random.nextDouble() * 120;
+            maxY = minY + random.nextDouble() * 120;
+        }
+
+        boolean intersects(double minX, double minY, double maxX, double maxY) {
+            return this.minX <= maxX && minX <= this.maxX && this.minY <= maxY && minY <= this.maxY;
+        }
+
+        boolean contains(double x, double y) {
+            return intersects(x, y, x, y);
+        }
+    }
+
+    static void testQueriesAfterMovesAndRemovals() {
+        Random random = new Random(80);
+        SpatialGrid<Box> grid = new SpatialGrid<>(64);
+        List<Box> boxes = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            Box box = new Box();
+            box.place(random);
+            grid.putBox(box, box.minX, box.minY, box.maxX, box.maxY);
+            boxes.add(box);
+        }
+        for (int round = 0; round < 2000; ++round) {
+            Box box = boxes.get(random.nextInt(boxes.size()));
+            if (random.nextInt(10) == 0) {
+                grid.remove(box);
+                boxes.remove(box);
+            } else {
+                box.place(random);
+                grid.putBox(box, box.minX, box.minY, box.maxX, box.maxY);
+            }
+            double minX = random.nextDouble() * 2000 - 500;
+            double minY = random.nextDouble() * 2000 - 500;
+            double maxX = minX + random.nextDouble() * 300;
+            double maxY = minY + random.nextDouble() * 300;
+            Set<Box> found = Collections.newSetFromMap(new IdentityHashMap<>());
+            grid.query(minX, minY, maxX, maxY, b -> Tests.check(found.add(b), "box visited once"));
+            for (Box b : boxes) {
+                if (b.intersects(minX, minY, maxX, maxY)) {
+                    Tests.check(found.contains(b), "intersecting box found on round " + round);
+                }
+            }
+            for (Box b : found) {
+                Tests.check(boxes.contains(b), "removed box not found on round " + round);
+            }
+            double x = random.nextDouble() * 2000 - 500;
+            double y = random.nextDouble() * 2000 - 500;
+            Box hit = grid.find(x, y, b -> b.contains(x, y));
+            Tests.checkEquals(boxes.stream().anyMatch(b -> b.contains(x, y)), hit != null, "hit on round " + round);
+        }
+        boxes.forEach(grid::remove);
+        grid.query(-1000, -1000, 3000, 3000, b -> Tests.check(false, "grid empty after removing every box"));
+    }
+
+    static void testSegments() {
+        SpatialGrid<String> grid = new SpatialGrid<>(32);
+        grid.putSegment("diagonal", 0, 0, 1000, 1000, 5);
+        Tests.checkEquals("diagonal", grid.find(500, 500, s -> true), "midpoint of the segment");
+        Tests.checkEquals("diagonal", grid.find(1002, 1003, s -> true), "end of the segment within the margin");
+        Tests.checkEquals(null, grid.find(900, 100, s -> true), "point away from the segment");
+        grid.putSegment("diagonal", 0, 1000, 1000, 0, 5);
+        Tests.checkEquals(null, grid.find(100, 100, s -> true), "old position after moving the segment");
+        Tests.checkEquals("diagonal", grid.find(100, 900, s -> true), "new position after moving the segment");
+        grid.clear();
+        Tests.checkEquals(null, grid.find(500, 500, s -> true), "cleared grid");
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.*;
+import java.util.function.IntConsumer;
+
+public class StepHistoryTest {
+
+    private static class CountingStepper implements Stepper {
+
+        private final Stepper stepper;
+        private int steps;
+
+        CountingStepper(Stepper stepper) {
+            this.stepper = stepper;
+        }
+
+        @Override
+        public long[] newSet() {
+            return stepper.newSet();
+        }
+
+        @Override
+        public void start(long[] set) {
+            stepper.start(set);
+        }
+
+        @Override
+        public void step(long[] from, int symbol, long[] to) {
+            ++steps;
+            stepper.step(from, symbol, to);
+        }
+
+        @Override
+        public void forEach(long[] set, IntConsumer action) {
+            stepper.forEach(set, action);
+        }
+    }
+
+    static void testSeekMatchesSequentialSteps() {
+        Random random = new Random(50);
+        for (int round = 0; round < 30; ++round) {
+            Machine machine = Tests.randomMachine(random, 1 + random.nextInt(40), 2, 1.3, 0.2, false);
+            BitsetNfa nfa = BitsetNfa.compile(machine);
+            int[] word = Tests.randomWord(random, 2, random.nextInt(300));
+            List<long[]> expected = new ArrayList<>();
+            long[] set = nfa.newSet();
+            nfa.start(set);
+            expected.add(set);
+            for (int symbol : word) {
+                long[] next = nfa.newSet();
+                nfa.step(set, symbol, next);
+                expected.add(next);
+                set = next;
+            }
+            StepHistory history = new StepHistory(nfa, word, 64 * (16 + 8L * set.length));
+            for (int i = 0; i < 100; ++i) {
+                int position = random.nextInt(word.length + 1);
+                Tests.check(Arrays.equals(expected.get(position), history.seek(position)),
+                        "round " + round + " seek " + position);
+            }
+        }
+    }
+
+    static void testSeekStartsFromNearestCheckpoint() {
+        Machine machine = Tests.randomMachine(new Random(51), 20, 2, 1.3, 0.2, false);
+        int[] word = Tests.randomWord(new Random(52), 2, 400);
+        CountingStepper stepper = new CountingStepper(BitsetNfa.compile(machine));
+        StepHistory history = new StepHistory(stepper, word, 8 * (16 + 8L * stepper.newSet().length));
+        int interval = history.getInterval();
+        Tests.check(interval > 4, "interval " + interval);
+        history.seek(word.length);
+        history.seek(2 * interval - 1);
+        stepper.steps = 0;
+        history.seek(2 * interval + 1);
+        Tests.checkEquals(1, stepper.steps, "steps past the nearest checkpoint");
+        stepper.steps = 0;
+        history.seek(2 * interval + 2);
+        Tests.checkEquals(1, stepper.steps, "steps to the next position");
+        stepper.steps = 0;
+        history.seek(3 * interval - 1);
+        Tests.checkEquals(interval - 3, stepper.steps, "steps within one interval");
+    }
+}
@@ -0,0 +1,123 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+public class StreamingRunnerTest {
+
+    private static final String[] SYMBOLS = {"ab", "cde", "€x"};
+
+    static void testChunkBoundaries() throws Exception {
+        Random random = new Random(70);
+        for (int round = 0; round < 6; ++round) {
+            Machine machine = withSymbols(Tests.randomMachine(random, 1 + random.nextInt(20), SYMBOLS.length,
+                    round % 2 == 0 ? 1 : 2, 0.2, round % 2 == 0));
+            int[] word = Tests.randomWord(random, SYMBOLS.length, 60_000 + random.nextInt(60_000));
+            String input = Tests.spell(machine, word);
+            List<Long> expected = new ArrayList<>();
+            boolean accepted = expectedOffsets(machine, word, expected);
+            byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+
+            List<Long> offsets = new ArrayList<>();
+            StreamingRunner runner = new StreamingRunner(machine, StandardCharsets.UTF_8);
+            Tests.checkEquals(accepted, runner.accepts(new ByteArrayInputStream(bytes), offsets::add),
+                    "stream result on round " + round);
+            Tests.checkEquals(expected, offsets, "stream offsets on round " + round);
+
+            offsets.clear();
+            Tests.checkEquals(accepted, runner.accepts(new TrickleInputStream(bytes, random), offsets::add),
+                    "trickled stream result on round " + round);
+            Tests.checkEquals(expected, offsets, "trickled stream offsets on round " + round);
+
+            File file = File.createTempFile("input", ".txt");
+            file.deleteOnExit();
+            Files.write(file.toPath(), bytes);
+            offsets.clear();
+            Tests.checkEquals(accepted, runner.accepts(file.toPath(), offsets::add), "file result on round " + round);
+            Tests.checkEquals(expected, offsets, "file offsets on round " + round);
+        }
+    }
+
+    static void testUntokenizableInput() throws Exception {
+        Machine machine = withSymbols(Tests.randomMachine(new Random(71), 3, SYMBOLS.length, 1, 0, true));
+        int[] word = Tests.randomWord(new Random(72), SYMBOLS.length, 50_000);
+        String prefix = Tests.spell(machine, Arrays.copyOf(word, 40_000));
+        String input = prefix + "c?" + Tests.spell(machine, word);
+        StreamingRunner runner = new StreamingRunner(machine, StandardCharsets.UTF_8);
+        try {
+            runner.accepts(new TrickleInputStream(input.getBytes(StandardCharsets.UTF_8), new Random(73)), null);
+            Tests.check(false, "untokenizable input rejected");
+        } catch (TokenizationException e) {
+            Tests.checkEquals((long) prefix.length(), e.getPosition(), "offset of the untokenizable input");
+        }
+    }
+
+    private static boolean expectedOffsets(Machine machine, int[] word, List<Long> offsets) {
+        Cursor cursor = BitsetNfa.compile(machine).cursor();
+        cursor.reset();
+        boolean accepting = cursor.isAccepting();
+        if (accepting) {
+            offsets.add(0L);
+        }
+        long offset = 0;
+        for (int symbol : word) {
+            if (!cursor.step(symbol)) {
+                return false;
+            }
+            offset += machine.getSymbol(symbol).length();
+            if (cursor.isAccepting() && !accepting) {
+                offsets.add(offset);
+            }
+            accepting = cursor.isAccepting();
+        }
+        return accepting;
+    }
+
+    private static Machine withSymbols(Machine machine) {
+        int stateCount = machine.getStateCount();
+        String[] names = new String[stateCount];
+        boolean[] accepting = new boolean[stateCount];
+        for (int state = 0; state < stateCount; ++state) {
+            names[state] = machine.getName(state);
+            accepting[state] = machine.isAccepting(state);
+        }
+        int[] from = new int[machine.getEdgeCount()];
+        int[] to = new int[machine.getEdgeCount()];
+        int[] symbol = new int[machine.getEdgeCount()];
+        for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+            from[edge] = machine.getEdgeFrom(edge);
+            to[edge] = machine.getEdgeTo(edge);
+            symbol[edge] = machine.getEdgeSymbol(edge);
+        }
+        return new Machine(SYMBOLS.clone(), names, new double[stateCount], new double[stateCount],
+                new double[stateCount], accepting, machine.getStart(), from, to, symbol);
+    }
+
+    private static class TrickleInputStream extends InputStream {
+
+        private final byte[] bytes;
+        private final Random random;
+        private int position;
+
+        TrickleInputStream(byte[] bytes, Random random) {
+            this.bytes = bytes;
+            this.random = random;
+        }
+
+        @Override
+        public int read() {
+            return position < bytes.length ? bytes[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position >= bytes.length) {
+                return -1;
+            }
+            int count = Math.min(Math.min(length, 1 + random.nextInt(13)), bytes.length - position);
+            System.arraycopy(bytes, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.*;
+
+public class SymbolTableTest {
+
+    static void testInterning() {
+        SymbolTable table = new SymbolTable();
+        Tests.checkEquals(SymbolTable.EPSILON, table.getId(SymbolTable.EPSILON_SYMBOL), "ε id");
+        int a = table.intern("a");
+        int b = table.intern("bc");
+        Tests.checkEquals(a, table.intern("a"), "id of a symbol interned twice");
+        Tests.checkEquals(b, table.getId("bc"), "id lookup");
+        Tests.checkEquals("bc", table.getSymbol(b), "symbol lookup");
+        Tests.checkEquals(-1, table.getId("d"), "id of an unknown symbol");
+        Tests.checkEquals(3, table.size(), "table size");
+    }
+
+    static void testAlphabetMembership() {
+        Random random = new Random(100);
+        SymbolTable table = new SymbolTable();
+        for (int round = 0; round < 20; ++round) {
+            for (int i = random.nextInt(100); i > 0; --i) {
+                table.intern("x" + random.nextInt(300));
+            }
+            Set<String> alphabet = new HashSet<>();
+            for (int i = random.nextInt(200); i > 0; --i) {
+                alphabet.add("x" + random.nextInt(300));
+            }
+            table.setAlphabet(alphabet);
+            Tests.checkEquals(alphabet, table.getAlphabet(), "alphabet on round " + round);
+            for (int id = 0; id < table.size() + 130; ++id) {
+                boolean member = id < table.size() && alphabet.contains(table.getSymbol(id));
+                Tests.checkEquals(member, table.isInAlphabet(id), "membership of " + id + " on round " + round);
+            }
+            if (round % 5 == 4) {
+                table.reset();
+                Tests.checkEquals(alphabet.size() + 1, table.size(), "table size after reset");
+                Tests.checkEquals(alphabet, table.getAlphabet(), "alphabet after reset");
+                for (String symbol : alphabet) {
+                    Tests.check(table.isInAlphabet(table.getId(symbol)), symbol + " in the alphabet after reset");
+                }
+            }
+        }
+    }
+
+    static void testTransitionSymbolBitsets() {
+        SymbolTable table = new SymbolTable();
+        for (int i = 0; i < 200; ++i) {
+            table.intern("s" + i);
+        }
+        Transition transition = new Transition(new State("q0", 0, 0), new State("q1", 100, 0), table, 150);
+        Tests.check(transition.hasSymbol(150), "initial symbol");
+        Tests.check(!transition.hasSymbol(86) && !transition.hasSymbol(1000), "symbols not added");
+        Tests.check(transition.addSymbol(3), "symbol added");
+        Tests.check(!transition.addSymbol(3), "symbol added twice");
+        Tests.check(transition.addSymbol(199), "symbol added past the last word");
+        Tests.checkEquals(3, transition.getSymbolCount(), "symbol count");
+        Tests.checkEquals(Arrays.asList("s2", "s149", "s198"), transition.getSymbols(), "symbols in id order");
+        Tests.checkEquals("s2, s149, s198", transition.getLabel(), "label");
+        List<Integer> ids = new ArrayList<>();
+        transition.forEachSymbol(ids::add);
+        Tests.checkEquals(Arrays.asList(3, 150, 199), ids, "symbol ids");
+        Tests.check(transition.removeSymbol(150), "symbol removed");
+        Tests.check(!transition.removeSymbol(150), "symbol removed twice");
+        Tests.checkEquals("s2, s198", transition.getLabel(), "label after removing a symbol");
+        transition.removeSymbol(3);
+        transition.removeSymbol(199);
+        Tests.check(!transition.hasSymbols(), "no symbols left");
+    }
+}
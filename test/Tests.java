@@ -0,0 +1,352 @@
+import javafx.application.Platform;
+import javafx.scene.layout.Pane;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+public class Tests {
+
+    private static final Class<?>[] SUITES = {
+            CompiledDfaTest.class,
+            BitsetNfaTest.class,
+            LazyDfaTest.class,
+            DfaMinimizerTest.class,
+            TokenizerTest.class,
+            FileHandlerTest.class,
+            JournalTest.class,
+            HistoryTest.class,
+            RegexCompilerTest.class,
+            StepHistoryTest.class,
+            RenderSchedulingTest.class,
+            BatchRunnerTest.class,
+            StreamingRunnerTest.class,
+            SpatialGridTest.class,
+            DirtyRegionTest.class,
+            ViewportTest.class,
+            DeterminismAnalysisTest.class,
+            ExecutionServiceTest.class,
+            SymbolTableTest.class,
+            TransitionGeometryTest.class,
+            ZoomTest.class,
+            GraphLayoutTest.class
+    };
+
+    public static void main(String[] args) throws Exception {
+        Set<String> selected = new HashSet<>(Arrays.asList(args));
+        boolean started = false;
+        try {
+            Platform.startup(() -> {
+            });
+            started = true;
+        } catch (RuntimeException e) {
+            System.err.println("JavaFX toolkit not started (" + e.getMessage() + "), diagram tests may fail");
+        }
+        int count = 0;
+        int failures = 0;
+        for (Class<?> suite : SUITES) {
+            if (!selected.isEmpty() && !selected.contains(suite.getName())) {
+                continue;
+            }
+            Method[] methods = suite.getDeclaredMethods();
+            Arrays.sort(methods, Comparator.comparing(Method::getName));
+            for (Method method : methods) {
+                if (!Modifier.isStatic(method.getModifiers()) || !method.getName().startsWith("test")
+                        || method.getParameterCount() != 0) {
+                    continue;
+                }
+                ++count;
+                String name = suite.getName() + "." + method.getName();
+                try {
+                    invoke(method, started);
+                    System.out.println("ok   " + name);
+                } catch (InvocationTargetException e) {
+                    ++failures;
+                    System.out.println("FAIL " + name + ": " + e.getCause());
+                    e.getCause().printStackTrace(System.out);
+                }
+            }
+        }
+        System.out.printf("%d tests, %d failures%n", count, failures);
+        Platform.exit();
+        System.exit(failures > 0 ? 1 : 0);
+    }
+
+    private static void invoke(Method method, boolean onFxThread) throws Exception {
+        if (!onFxThread || Platform.isFxApplicationThread()) {
+            method.invoke(null);
+            return;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        Exception[] failure = new Exception[1];
+        Platform.runLater(() -> {
+            try {
+                method.invoke(null);
+            } catch (Exception e) {
+                failure[0] = e;
+            } finally {
+                done.countDown();
+            }
+        });
+        done.await();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    static void checkEquals(Object expected, Object actual, String message) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    static void checkThrows(Class<? extends Throwable> type, Operation operation, String message) {
+        try {
+            operation.run();
+        } catch (Throwable e) {
+            if (type.isInstance(e)) {
+                return;
+            }
+            throw new AssertionError(message + ": expected " + type.getName() + " but got " + e, e);
+        }
+        throw new AssertionError(message + ": expected " + type.getName());
+    }
+
+    interface Operation {
+
+        void run() throws Exception;
+    }
+
+    static Machine machine(String alphabet, int stateCount, int start, int[] accepting, String... edges) {
+        String[] symbols = alphabet.isEmpty() ? new String[0] : alphabet.split(",");
+        Arrays.sort(symbols);
+        String[] names = new String[stateCount];
+        boolean[] isAccepting = new boolean[stateCount];
+        for (int state = 0; state < stateCount; ++state) {
+            names[state] = "q" + state;
+        }
+        for (int state : accepting) {
+            isAccepting[state] = true;
+        }
+        int[] from = new int[edges.length];
+        int[] to = new int[edges.length];
+        int[] symbol = new int[edges.length];
+        for (int edge = 0; edge < edges.length; ++edge) {
+            String[] parts = edges[edge].split(" ");
+            from[edge] = Integer.parseInt(parts[0]);
+            symbol[edge] = parts[1].equals(SymbolTable.EPSILON_SYMBOL) ? Machine.EPSILON
+                    : Arrays.binarySearch(symbols, parts[1]);
+            to[edge] = Integer.parseInt(parts[2]);
+        }
+        return new Machine(symbols, names, new double[stateCount], new double[stateCount], new double[stateCount],
+                isAccepting, start, from, to, symbol);
+    }
+
+    static Machine randomMachine(Random random, int stateCount, int alphabetSize, double density, double epsilon,
+                                 boolean deterministic) {
+        String[] symbols = new String[alphabetSize];
+        for (int i = 0; i < alphabetSize; ++i) {
+            symbols[i] = String.valueOf((char) ('a' + i));
+        }
+        String[] names = new String[stateCount];
+        boolean[] accepting = new boolean[stateCount];
+        for (int state = 0; state < stateCount; ++state) {
+            names[state] = "q" + state;
+            accepting[state] = random.nextInt(4) == 0;
+        }
+        List<int[]> edges = new ArrayList<>();
+        for (int state = 0; state < stateCount; ++state) {
+            for (int symbol = 0; symbol < alphabetSize; ++symbol) {
+                if (deterministic) {
+                    if (random.nextDouble() < density) {
+                        edges.add(new int[]{state, random.nextInt(stateCount), symbol});
+                    }
+                } else {
+                    for (double d = density; d > 0 && random.nextDouble() < d; d -= 1) {
+                        edges.add(new int[]{state, random.nextInt(stateCount), symbol});
+                    }
+                }
+            }
+            if (!deterministic && random.nextDouble() < epsilon) {
+                edges.add(new int[]{state, random.nextInt(stateCount), Machine.EPSILON});
+            }
+        }
+        int[] from = new int[edges.size()];
+        int[] to = new int[edges.size()];
+        int[] symbol = new int[edges.size()];
+        for (int edge = 0; edge < edges.size(); ++edge) {
+            from[edge] = edges.get(edge)[0];
+            to[edge] = edges.get(edge)[1];
+            symbol[edge] = edges.get(edge)[2];
+        }
+        return new Machine(symbols, names, new double[stateCount], new double[stateCount], new double[stateCount],
+                accepting, stateCount > 0 ? 0 : -1, from, to, symbol);
+    }
+
+    static int[] randomWord(Random random, int alphabetSize, int length) {
+        int[] word = new int[length];
+        for (int i = 0; i < length; ++i) {
+            word[i] = random.nextInt(alphabetSize);
+        }
+        return word;
+    }
+
+    static String spell(Machine machine, int[] word) {
+        StringBuilder builder = new StringBuilder();
+        for (int symbol : word) {
+            builder.append(machine.getSymbol(symbol));
+        }
+        return builder.toString();
+    }
+
+    static boolean simulate(Machine machine, int[] word) {
+        if (machine.getStart() < 0) {
+            return false;
+        }
+        boolean[] current = new boolean[machine.getStateCount()];
+        current[machine.getStart()] = true;
+        close(machine, current);
+        for (int symbol : word) {
+            boolean[] next = new boolean[machine.getStateCount()];
+            for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+                if (machine.getEdgeSymbol(edge) == symbol && current[machine.getEdgeFrom(edge)]) {
+                    next[machine.getEdgeTo(edge)] = true;
+                }
+            }
+            close(machine, next);
+            current = next;
+        }
+        for (int state = 0; state < current.length; ++state) {
+            if (current[state] && machine.isAccepting(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Diagram diagram() {
+        Diagram diagram = new Diagram(symbols -> null, () -> null, message -> {
+            throw new AssertionError(message);
+        });
+        diagram.setCancelRunning(() -> {
+        });
+        diagram.setOnTransitionChange(transitions -> {
+        });
+        new Pane(diagram).resize(800, 600);
+        return diagram;
+    }
+
+    static String describe(Machine machine) {
+        List<String> lines = new ArrayList<>();
+        for (int symbol = 0; symbol < machine.getAlphabetSize(); ++symbol) {
+            lines.add("symbol " + machine.getSymbol(symbol));
+        }
+        for (int state = 0; state < machine.getStateCount(); ++state) {
+            lines.add("state " + machine.getName(state) + " " + machine.getX(state) + " " + machine.getY(state) + " "
+                    + machine.getRadius(state) + (machine.isAccepting(state) ? " accepting" : "")
+                    + (state == machine.getStart() ? " start" : ""));
+        }
+        for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+            int symbol = machine.getEdgeSymbol(edge);
+            lines.add("edge " + machine.getName(machine.getEdgeFrom(edge)) + " "
+                    + (symbol == Machine.EPSILON ? SymbolTable.EPSILON_SYMBOL : machine.getSymbol(symbol)) + " "
+                    + machine.getName(machine.getEdgeTo(edge)));
+        }
+        Collections.sort(lines);
+        return String.join("\n", lines);
+    }
+
+    static Edit randomEdit(Random random, Machine machine) {
+        int stateCount = machine.getStateCount();
+        int choice = stateCount == 0 ? 0 : random.nextInt(9);
+        int state = stateCount == 0 ? -1 : random.nextInt(stateCount);
+        String name = state >= 0 ? machine.getName(state) : null;
+        switch (choice) {
+            case 1:
+                return new Edit.MoveState(name, machine.getX(state), machine.getY(state),
+                        random.nextInt(800), random.nextInt(600));
+            case 2:
+                return new Edit.ResizeState(name, machine.getRadius(state), 10 + random.nextInt(30));
+            case 3:
+                return new Edit.SetAccepting(name, !machine.isAccepting(state));
+            case 4:
+                return new Edit.SetStarting(machine.getStart() >= 0 ? machine.getName(machine.getStart()) : null,
+                        name);
+            case 5:
+                return new Edit.RenameState(name, unusedName(random, machine));
+            case 6:
+                int to = random.nextInt(stateCount);
+                int symbol = random.nextInt(machine.getAlphabetSize() + 1) - 1;
+                boolean exists = false;
+                for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+                    exists |= machine.getEdgeFrom(edge) == state && machine.getEdgeTo(edge) == to
+                            && machine.getEdgeSymbol(edge) == symbol;
+                }
+                String symbolName = symbol == Machine.EPSILON ? SymbolTable.EPSILON_SYMBOL : machine.getSymbol(symbol);
+                return exists ? new Edit.DeleteTransition(name, machine.getName(to), symbolName)
+                        : new Edit.AddTransition(name, machine.getName(to), symbolName);
+            case 7:
+                if (machine.getEdgeCount() > 0) {
+                    int edge = random.nextInt(machine.getEdgeCount());
+                    int edgeSymbol = machine.getEdgeSymbol(edge);
+                    return new Edit.DeleteTransition(machine.getName(machine.getEdgeFrom(edge)),
+                            machine.getName(machine.getEdgeTo(edge)),
+                            edgeSymbol == Machine.EPSILON ? SymbolTable.EPSILON_SYMBOL : machine.getSymbol(edgeSymbol));
+                }
+                return new Edit.SetAccepting(name, !machine.isAccepting(state));
+            case 8:
+                List<Edit> edits = new ArrayList<>();
+                for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+                    if (machine.getEdgeFrom(edge) == state || machine.getEdgeTo(edge) == state) {
+                        int edgeSymbol = machine.getEdgeSymbol(edge);
+                        edits.add(new Edit.DeleteTransition(machine.getName(machine.getEdgeFrom(edge)),
+                                machine.getName(machine.getEdgeTo(edge)), edgeSymbol == Machine.EPSILON
+                                ? SymbolTable.EPSILON_SYMBOL : machine.getSymbol(edgeSymbol)));
+                    }
+                }
+                if (state == machine.getStart()) {
+                    edits.add(new Edit.SetStarting(name, null));
+                }
+                edits.add(new Edit.DeleteState(name, machine.getX(state), machine.getY(state),
+                        machine.getRadius(state), machine.isAccepting(state)));
+                return new Edit.Compound(edits);
+            default:
+                return new Edit.AddState(unusedName(random, machine), random.nextInt(800), random.nextInt(600),
+                        State.DEFAULT_RADIUS, random.nextBoolean());
+        }
+    }
+
+    private static String unusedName(Random random, Machine machine) {
+        Set<String> names = new HashSet<>();
+        for (int state = 0; state < machine.getStateCount(); ++state) {
+            names.add(machine.getName(state));
+        }
+        String name;
+        do {
+            name = "s" + random.nextInt(1000);
+        } while (names.contains(name));
+        return name;
+    }
+
+    private static void close(Machine machine, boolean[] states) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int edge = 0; edge < machine.getEdgeCount(); ++edge) {
+                if (machine.getEdgeSymbol(edge) == Machine.EPSILON && states[machine.getEdgeFrom(edge)]
+                        && !states[machine.getEdgeTo(edge)]) {
+                    states[machine.getEdgeTo(edge)] = true;
+                    changed = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+import java.util.*;
+
+public class TokenizerTest {
+
+    static void testLongestMatch() throws Exception {
+        Tokenizer tokenizer = new Tokenizer(new String[]{"a", "aa", "b"});
+        int[] offsets = new int[6];
+        Tests.checkEquals("[1, 0, 2]", Arrays.toString(tokenizer.tokenize("aaab", offsets)), "tokens of aaab");
+        Tests.checkEquals("[0, 2, 3, 4]", Arrays.toString(Arrays.copyOf(offsets, 4)), "offsets of aaab");
+        long match = tokenizer.match("aab", 0);
+        Tests.checkEquals(1, Tokenizer.symbol(match), "longest symbol at 0");
+        Tests.checkEquals(2, Tokenizer.length(match), "length of the longest symbol at 0");
+        Tests.checkEquals(Tokenizer.NO_MATCH, tokenizer.match("c", 0), "no match");
+        Tests.checkEquals(2, tokenizer.getMaxLength(), "longest symbol length");
+    }
+
+    static void testPrefixFree() {
+        Tests.check(new Tokenizer(new String[]{"ab", "b", "cd"}).isPrefixFree(), "{ab, b, cd} is prefix-free");
+        Tests.check(!new Tokenizer(new String[]{"a", "ab"}).isPrefixFree(), "{a, ab} is not prefix-free");
+    }
+
+    static void testBacktracking() throws Exception {
+        Tokenizer tokenizer = new Tokenizer(new String[]{"a", "ab", "bc"});
+        Tests.checkEquals("[0, 2]", Arrays.toString(tokenizer.tokenize("abc", null)), "a bc");
+        Tests.checkEquals("[1, 1]", Arrays.toString(tokenizer.tokenize("abab", null)), "ab ab keeps longest match");
+        int[] offsets = new int[5];
+        tokenizer.tokenize("aabc", offsets);
+        Tests.checkEquals("[0, 1, 2, 4]", Arrays.toString(Arrays.copyOf(offsets, 4)), "offsets of a a bc");
+    }
+
+    static void testErrorPosition() {
+        Tokenizer tokenizer = new Tokenizer(new String[]{"a", "ab", "bc"});
+        try {
+            tokenizer.tokenize("abcc", null);
+            throw new AssertionError("abcc should not tokenize");
+        } catch (TokenizationException e) {
+            Tests.checkEquals(2L, e.getPosition(), "error position");
+        }
+    }
+
+    static void testSplitsAgreeWithRegex() throws Exception {
+        String[] symbols = {"a", "ab", "bab", "ba"};
+        Tokenizer tokenizer = new Tokenizer(symbols);
+        Random random = new Random(9);
+        for (int i = 0; i < 5000; ++i) {
+            char[] word = new char[random.nextInt(12)];
+            for (int j = 0; j < word.length; ++j) {
+                word[j] = random.nextBoolean() ? 'a' : 'b';
+            }
+            String input = new String(word);
+            boolean splits = input.matches("(a|ab|bab|ba)*");
+            try {
+                StringBuilder joined = new StringBuilder();
+                for (int symbol : tokenizer.tokenize(input, null)) {
+                    joined.append(symbols[symbol]);
+                }
+                Tests.check(splits, input + " should not tokenize");
+                Tests.checkEquals(input, joined.toString(), "tokens spell the input");
+            } catch (TokenizationException e) {
+                Tests.check(!splits, input + " should tokenize");
+            }
+        }
+    }
+
+    static void testRunnersBacktrack() {
+        Machine machine = Tests.machine("a,ab,bc", 3, 0, new int[]{2}, "0 a 1", "1 bc 2");
+        BitsetNfa nfa = BitsetNfa.compile(machine);
+        Tests.check(CompiledDfa.compile(machine).accepts("abc"), "compiled table accepts a bc");
+        Tests.check(nfa.accepts("abc"), "bitset simulation accepts a bc");
+        Tests.check(new LazyDfa(nfa, 1 << 20, LazyDfa.EvictionPolicy.LRU).accepts("abc"), "lazy DFA accepts a bc");
+        Tests.check(!nfa.accepts("abcc"), "untokenizable input is rejected");
+    }
+}
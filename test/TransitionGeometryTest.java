@@ -0,0 +1,72 @@
+import java.util.*;
+
+public class TransitionGeometryTest {
+
+    static void testBoundsFollowStates() {
+        Random random = new Random(110);
+        SymbolTable table = new SymbolTable();
+        int symbol = table.intern("a");
+        State from = new State("q0", 0, 0);
+        State to = new State("q1", 200, 50);
+        Transition cached = new Transition(from, to, table, symbol);
+        Transition loop = new Transition(from, from, table, symbol);
+        for (int round = 0; round < 200; ++round) {
+            cached.getBounds();
+            loop.getBounds();
+            State moved = random.nextBoolean() ? from : to;
+            switch (random.nextInt(4)) {
+                case 0:
+                    moved.setX(random.nextDouble() * 1000);
+                    break;
+                case 1:
+                    moved.setY(random.nextDouble() * 1000);
+                    break;
+                case 2:
+                    moved.setRadius(10 + random.nextDouble() * 50);
+                    break;
+                default:
+                    cached.setBidirectional(!cached.isBidirectional());
+            }
+            Transition fresh = new Transition(from, to, table, symbol);
+            fresh.setBidirectional(cached.isBidirectional());
+            Tests.check(Arrays.equals(fresh.getBounds(), cached.getBounds()), "bounds on round " + round);
+            Tests.check(Arrays.equals(new Transition(from, from, table, symbol).getBounds(), loop.getBounds()),
+                    "loop bounds on round " + round);
+        }
+    }
+
+    static void testLabelMeasurement() {
+        SymbolTable table = new SymbolTable();
+        Transition transition = new Transition(new State("q0", 0, 0), new State("q1", 200, 0), table,
+                table.intern("a"));
+        Tests.check(!transition.isLabelMeasured(), "label not measured initially");
+        double[] unlabelled = transition.getBounds();
+        transition.setLabelSize(400, 20);
+        Tests.check(transition.isLabelMeasured(), "label measured");
+        double[] labelled = transition.getBounds();
+        Tests.check(labelled[0] < unlabelled[0] && labelled[2] > unlabelled[2], "bounds include a wide label");
+        transition.addSymbol(table.intern("b"));
+        Tests.check(!transition.isLabelMeasured(), "label measured again after adding a symbol");
+        transition.setLabelSize(400, 20);
+        transition.removeSymbol(table.getId("b"));
+        Tests.check(!transition.isLabelMeasured(), "label measured again after removing a symbol");
+        transition.setLabelSize(400, 20);
+        transition.getStateTo().setX(300);
+        Tests.check(transition.isLabelMeasured(), "label size kept when a state moves");
+    }
+
+    static void testDiagramMeasuresLabels() {
+        Diagram diagram = Tests.diagram();
+        diagram.apply(new Edit.Compound(Arrays.asList(
+                new Edit.AddState("q0", 100, 100, State.DEFAULT_RADIUS, false),
+                new Edit.AddState("q1", 400, 100, State.DEFAULT_RADIUS, false),
+                new Edit.SetAlphabet(Collections.emptySet(), new HashSet<>(Arrays.asList("a", "b"))),
+                new Edit.AddTransition("q0", "q1", "a"))));
+        diagram.render();
+        diagram.apply(new Edit.MoveState("q1", 400, 100, 400, 300));
+        Tests.checkEquals(1, diagram.getTransitions().size(), "transitions");
+        for (Transition transition : diagram.getTransitions()) {
+            Tests.check(transition.isLabelMeasured(), "label measured when the transition is invalidated");
+        }
+    }
+}
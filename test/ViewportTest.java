@@ -0,0 +1,48 @@
+public class ViewportTest {
+
+    private static final double RADIUS = State.DEFAULT_RADIUS;
+
+    static void testCanvasStaysViewportSized() {
+        Diagram diagram = Tests.diagram();
+        diagram.setViewport(0, 0, 400, 300);
+        diagram.apply(new Edit.AddState("far", 20_000, 15_000, RADIUS, false));
+        diagram.render();
+        Tests.checkEquals(400.0, diagram.getWidth(), "canvas width");
+        Tests.checkEquals(300.0, diagram.getHeight(), "canvas height");
+        diagram.setViewport(19_800, 14_800, 400, 300);
+        Tests.checkEquals(400.0, diagram.getWidth(), "canvas width after scrolling");
+    }
+
+    static void testExtentFollowsEdits() {
+        Diagram diagram = Tests.diagram();
+        double[] extent = new double[2];
+        int[] events = new int[1];
+        diagram.setOnExtentChange((width, height) -> {
+            extent[0] = width;
+            extent[1] = height;
+            ++events[0];
+        });
+        diagram.apply(new Edit.AddState("near", 100, 50, RADIUS, false));
+        checkExtent(extent, 100, 50, "one state");
+        diagram.apply(new Edit.AddState("far", 900, 700, RADIUS, false));
+        checkExtent(extent, 900, 700, "state added past the extent");
+        diagram.apply(new Edit.MoveState("far", 900, 700, 1200, 20));
+        checkExtent(extent, 1200, 50, "state moved right and up");
+        diagram.apply(new Edit.MoveState("far", 1200, 20, 10, 10));
+        checkExtent(extent, 100, 50, "farthest state moved back");
+        diagram.apply(new Edit.MoveState("far", 10, 10, 300, 400));
+        diagram.apply(new Edit.DeleteState("far", 300, 400, RADIUS, false));
+        checkExtent(extent, 100, 50, "farthest state deleted");
+        int before = events[0];
+        diagram.apply(new Edit.AddState("inside", 20, 20, RADIUS, false));
+        diagram.render();
+        diagram.update();
+        diagram.render();
+        Tests.checkEquals(before, events[0], "extent events for edits inside the extent and renders");
+    }
+
+    private static void checkExtent(double[] extent, double x, double y, String message) {
+        Tests.checkEquals(x + 2 * RADIUS + 1, extent[0], "extent width with " + message);
+        Tests.checkEquals(y + 2 * RADIUS + 1, extent[1], "extent height with " + message);
+    }
+}
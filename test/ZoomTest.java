@@ -0,0 +1,82 @@
+import java.util.*;
+
+public class ZoomTest {
+
+    static void testZoomIsClamped() {
+        Diagram diagram = diagram();
+        diagram.zoom(1000, 0, 0);
+        Tests.checkEquals(Diagram.MAX_ZOOM, diagram.getZoom(), "zoom after zooming far in");
+        diagram.zoomIn();
+        Tests.checkEquals(Diagram.MAX_ZOOM, diagram.getZoom(), "zoom in past the maximum");
+        diagram.zoom(1e-9, 0, 0);
+        Tests.checkEquals(Diagram.MIN_ZOOM, diagram.getZoom(), "zoom after zooming far out");
+        diagram.resetZoom();
+        Tests.checkEquals(1.0, diagram.getZoom(), "zoom after a reset");
+    }
+
+    static void testZoomKeepsPivotFixed() {
+        Diagram diagram = diagram();
+        double[] view = new double[2];
+        diagram.setOnScrollRequest((x, y) -> {
+            view[0] = x;
+            view[1] = y;
+        });
+        diagram.setViewport(1000, 800, 400, 300);
+        view[0] = 1000;
+        view[1] = 800;
+        double[] pivots = {100, 50, 0, 0, 400, 300, 250, 10};
+        for (int i = 0; i < pivots.length; i += 2) {
+            double zoom = diagram.getZoom();
+            double worldX = (view[0] + pivots[i]) / zoom;
+            double worldY = (view[1] + pivots[i + 1]) / zoom;
+            diagram.zoom(i % 4 == 0 ? 2 : 0.75, pivots[i], pivots[i + 1]);
+            Tests.check(Math.abs(worldX - (view[0] + pivots[i]) / diagram.getZoom()) < 1e-9, "pivot x " + i / 2);
+            Tests.check(Math.abs(worldY - (view[1] + pivots[i + 1]) / diagram.getZoom()) < 1e-9, "pivot y " + i / 2);
+        }
+    }
+
+    static void testFitToWindow() {
+        Diagram diagram = diagram();
+        double[] view = {-1, -1};
+        diagram.setOnScrollRequest((x, y) -> {
+            view[0] = x;
+            view[1] = y;
+        });
+        diagram.setViewport(0, 0, 400, 300);
+        diagram.fitToWindow();
+        double extentWidth = 4000 + 2 * State.DEFAULT_RADIUS + 1;
+        double extentHeight = 2000 + 2 * State.DEFAULT_RADIUS + 1;
+        Tests.check(Math.abs(Math.min(400 / extentWidth, 300 / extentHeight) - diagram.getZoom()) < 1e-12,
+                "fitted zoom");
+        Tests.checkEquals(0.0, view[0], "scroll x after fitting");
+        Tests.checkEquals(0.0, view[1], "scroll y after fitting");
+    }
+
+    static void testLevelOfDetailThresholds() {
+        Diagram diagram = diagram();
+        State state = diagram.getState("near");
+        Tests.check(diagram.isLabelled() && diagram.hasArrowheads() && !diagram.isPoint(state), "full detail at 1x");
+        diagram.zoom(0.5, 0, 0);
+        Tests.check(diagram.isLabelled() && !diagram.hasArrowheads() && !diagram.isPoint(state),
+                "labels without arrowheads at 0.5x");
+        diagram.zoom(0.25, 0, 0);
+        Tests.check(!diagram.isLabelled() && !diagram.hasArrowheads() && !diagram.isPoint(state),
+                "outlines only at 0.125x");
+        diagram.zoom(0.5, 0, 0);
+        Tests.check(diagram.isPoint(state), "states drawn as points at 0.0625x");
+        diagram.setLevelOfDetailSize(1);
+        Tests.check(diagram.isLabelled() && !diagram.isPoint(state), "smaller level-of-detail size");
+        diagram.setLevelOfDetailSize(0);
+        diagram.zoom(1e-9, 0, 0);
+        Tests.check(diagram.isLabelled() && diagram.hasArrowheads() && !diagram.isPoint(state),
+                "level of detail disabled");
+    }
+
+    private static Diagram diagram() {
+        Diagram diagram = Tests.diagram();
+        diagram.apply(new Edit.Compound(Arrays.asList(
+                new Edit.AddState("near", 0, 0, State.DEFAULT_RADIUS, false),
+                new Edit.AddState("far", 4000, 2000, State.DEFAULT_RADIUS, false))));
+        return diagram;
+    }
+}